@@ -1,6 +1,7 @@
 package org.mapfish.print;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -23,7 +24,7 @@ public final class ImageUtils {
      * @param output a <code>File</code> to be written to.
      * @throws IOException if an error occurs during writing.
      */
-    public static void writeImage(final BufferedImage im, final String formatName, final File output) throws IOException {
+    public static void writeImage(final RenderedImage im, final String formatName, final File output) throws IOException {
         if (!ImageIO.write(im, formatName, output)) {
             throw new RuntimeException("Image format not supported: " + formatName);
         }
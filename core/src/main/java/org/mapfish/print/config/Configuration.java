@@ -2,6 +2,8 @@ package org.mapfish.print.config;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -57,6 +59,7 @@ import javax.annotation.PostConstruct;
  */
 public class Configuration implements ConfigurationObject {
     private static final Map<String, String> GEOMETRY_NAME_ALIASES;
+    private static final int MAX_PARSED_STYLES = 200;
 
     static {
         HashMap<String, String> map = new HashMap<String, String>();
@@ -98,6 +101,10 @@ public class Configuration implements ConfigurationObject {
     private boolean defaultToSvg = false;
     private Set<String> jdbcDrivers = Sets.newHashSet();
     private Map<String, Style> namedStyles = Maps.newHashMap();
+    private final Cache<String, Optional<? extends Style>> parsedStyles = CacheBuilder.newBuilder()
+            .maximumSize(MAX_PARSED_STYLES)
+            .softValues()
+            .build();
 
     /**
      * The color used to draw the WMS tiles error default: transparent pink.
@@ -352,6 +359,18 @@ public class Configuration implements ConfigurationObject {
 
     }
 
+    /**
+     * The styles parsed by the {@link StyleParser} for this configuration, by style string. A new configuration
+     * object is created when the configuration file is reloaded so the cache doesn't need any invalidation.
+     * <p></p>
+     * The inline styles of the requests are cached too, so the cache is bounded and its styles can be collected
+     * when the memory is low. The cached styles must not be modified, use {@link StyleParser#loadStyle} to get a
+     * copy.
+     */
+    public final Cache<String, Optional<? extends Style>> getParsedStyles() {
+        return this.parsedStyles;
+    }
+
     /**
      * Get a default style.  If null a simple black line style will be returned.
      *
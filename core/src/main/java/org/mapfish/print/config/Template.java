@@ -56,6 +56,7 @@ public class Template implements ConfigurationObject, HasConfiguration {
     private PDFConfig pdfConfig = new PDFConfig();
     private String tableDataKey;
     private String outputFilename;
+    private boolean cacheResult = true;
 
     /**
      * The default output file name of the report (takes precedence over
@@ -252,13 +253,14 @@ public class Template implements ConfigurationObject, HasConfiguration {
     @Nonnull
     public final Optional<Style> getStyle(final String styleName) {
         final String styleRef = this.styles.get(styleName);
-        Optional<Style> style;
         if (styleRef != null) {
-            style = (Optional<Style>) this.styleParser.loadStyle(getConfiguration(), this.httpRequestFactory, styleRef);
-        } else {
-            style = Optional.absent();
+            final Optional<Style> style = (Optional<Style>) this.styleParser.loadStyle(
+                    getConfiguration(), this.httpRequestFactory, styleRef);
+            if (style.isPresent()) {
+                return style;
+            }
         }
-        return style.or(this.configuration.getStyle(styleName));
+        return (Optional<Style>) this.configuration.getStyle(styleName);
     }
 
     @Override
@@ -359,6 +361,21 @@ public class Template implements ConfigurationObject, HasConfiguration {
         return this.accessAssertion;
     }
 
+    /**
+     * If the print result cache is enabled, the report of an identical request can be reused instead of
+     * printing it again. Set to false for the templates whose content depends on the time (current date,
+     * live data, ...).  Default is true.
+     *
+     * @param cacheResult false to always print the reports of this template
+     */
+    public final void setCacheResult(final boolean cacheResult) {
+        this.cacheResult = cacheResult;
+    }
+
+    public final boolean isCacheResult() {
+        return this.cacheResult;
+    }
+
     public final boolean isMapExport() {
         return this.mapExport;
     }
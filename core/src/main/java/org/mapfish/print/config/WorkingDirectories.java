@@ -93,6 +93,15 @@ public class WorkingDirectories {
         return this.reports;
     }
 
+    /**
+     * Get the directory where the responses of the shared HTTP cache are written to.
+     */
+    public final File getHttpCache() {
+        final File httpCache = new File(this.working, "http-cache");
+        createIfMissing(httpCache, "HTTP cache");
+        return httpCache;
+    }
+
     /**
      * Creates and returns a temporary directory for a printing task.
      */
@@ -1,8 +1,11 @@
 package org.mapfish.print.http;
 
 import com.google.common.collect.Lists;
+import com.google.common.io.CountingInputStream;
 import com.vividsolutions.jts.util.Assert;
 import org.mapfish.print.config.Configuration;
+import org.mapfish.print.trace.JobTrace;
+import org.mapfish.print.trace.JobTraces;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -99,10 +102,17 @@ public final class ConfigFileResolvingHttpRequestFactory implements MfClientHttp
             if (noJobId) {  // that can be called from threads that don't belong to MFP, so we have to be careful
                 MDC.put("job_id", ConfigFileResolvingHttpRequestFactory.this.jobId);
             }
+            // the file:, servlet: and classpath: URIs have no host
+            final JobTrace.Span span = JobTraces.span(ConfigFileResolvingHttpRequestFactory.this.jobId, "http",
+                    this.httpMethod + " " + (this.uri.getHost() != null ? this.uri.getHost() : this.uri.getScheme()));
+            span.setAttribute("uri", this.uri.toString());
+            boolean traced = false;
             try {
                 if (this.request != null) {
                     LOGGER.debug("Executing http request: " + this.request.getURI());
-                    return executeCallbacksAndRequest(this.request);
+                    final ClientHttpResponse response = executeCallbacksAndRequest(this.request);
+                    traced = true;
+                    return TracedHttpResponse.wrap(response, span);
                 }
                 if (this.httpMethod == HttpMethod.GET) {
                     final String uriString = this.uri.toString();
@@ -113,6 +123,7 @@ public final class ConfigFileResolvingHttpRequestFactory implements MfClientHttp
                                 new ConfigFileResolverHttpResponse(bytes, headers);
                         LOGGER.debug(String.format(
                                 "Resolved request: %s using mapfish print config file loaders.", uriString));
+                        span.setAttribute("configFile", true).setAttribute("bytes", bytes.length);
                         return response;
                     } catch (NoSuchElementException e) {
                         // cannot be loaded by configuration so try http
@@ -120,8 +131,13 @@ public final class ConfigFileResolvingHttpRequestFactory implements MfClientHttp
                 }
 
                 LOGGER.debug("Executing http request: " + this.getURI());
-                return executeCallbacksAndRequest(createRequestFromWrapped(headers));
+                final ClientHttpResponse response = executeCallbacksAndRequest(createRequestFromWrapped(headers));
+                traced = true;
+                return TracedHttpResponse.wrap(response, span);
             } finally {
+                if (!traced) {
+                    span.end();
+                }
                 if (noJobId) {
                     MDC.remove("job_id");
                 }
@@ -188,4 +204,66 @@ public final class ConfigFileResolvingHttpRequestFactory implements MfClientHttp
             }
         }
     }
+
+    /**
+     * Records the status and the size of a response in the trace of the job when it is closed.
+     */
+    private static final class TracedHttpResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final JobTrace.Span span;
+        private CountingInputStream body = null;
+
+        private TracedHttpResponse(final ClientHttpResponse response, final JobTrace.Span span) {
+            this.response = response;
+            this.span = span;
+        }
+
+        static ClientHttpResponse wrap(final ClientHttpResponse response, final JobTrace.Span span) {
+            return span == JobTrace.NOOP_SPAN ? response : new TracedHttpResponse(response, span);
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return this.response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return this.response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return this.response.getStatusText();
+        }
+
+        @Override
+        public synchronized InputStream getBody() throws IOException {
+            if (this.body == null) {
+                this.body = new CountingInputStream(this.response.getBody());
+            }
+            return this.body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return this.response.getHeaders();
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.span.setAttribute("status", this.response.getRawStatusCode());
+            } catch (IOException e) {
+                this.span.setAttribute("error", e.toString());
+            }
+            synchronized (this) {
+                if (this.body != null) {
+                    this.span.setAttribute("bytes", this.body.getCount());
+                }
+            }
+            this.span.end();
+            this.response.close();
+        }
+    }
 }
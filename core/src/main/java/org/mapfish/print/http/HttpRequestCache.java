@@ -2,7 +2,8 @@ package org.mapfish.print.http;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,69 +21,86 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
 
 /**
  *
  * Creates tasks for caching Http Requests that can be run simultaneously.
+ * <p>
+ * The requests are deduplicated: registering the same request twice returns the same handle, and when
+ * a request with the same scope is already being downloaded by another cache (another map of the same job
+ * or another job), its result is reused instead of downloading it again. The wait for the other download is
+ * bounded since it holds a thread of the request pool: after the timeout, the request is downloaded again.
+ * </p>
  *
  */
 public final class HttpRequestCache {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpRequestCache.class);
 
-    private final List<CachedClientHttpRequest> requests = new ArrayList<>();
+    private static final long DEFAULT_IN_FLIGHT_TIMEOUT = 10000L;
+
+    /**
+     * The requests currently being downloaded by all the caches.
+     */
+    private static final Map<InFlightKey, CompletableFuture<CachedClientHttpRequest>> IN_FLIGHT =
+            new ConcurrentHashMap<>();
+
+    private final Map<String, CachedClientHttpRequest> requests = Maps.newLinkedHashMap();
 
     private final File temporaryDirectory;
 
     private final MetricRegistry registry;
 
+    private final Object scope;
+
     private boolean cached = false;
 
+    private long inFlightTimeout = DEFAULT_IN_FLIGHT_TIMEOUT;
+
     private class CachedClientHttpResponse extends AbstractClientHttpResponse {
 
-        private final File cachedFile;
-        private final HttpHeaders headers;
-        private final int status;
-        private final String statusText;
+        private final CachedClientHttpRequest request;
         private InputStream body;
 
-        public CachedClientHttpResponse(final ClientHttpResponse originalResponse) throws IOException {
-            this.headers = originalResponse.getHeaders();
-            this.status = originalResponse.getRawStatusCode();
-            this.statusText = originalResponse.getStatusText();
-            this.cachedFile = File.createTempFile("cacheduri", null, HttpRequestCache.this.temporaryDirectory);
-            try (InputStream is = originalResponse.getBody()) {
-                try (OutputStream os = new FileOutputStream(this.cachedFile)) {
-                    IOUtils.copy(is, os);
-                }
-            }
+        public CachedClientHttpResponse(final CachedClientHttpRequest request) {
+            this.request = request;
         }
 
         @Override
         public InputStream getBody() throws IOException {
             if (this.body == null) {
-                this.body = new FileInputStream(this.cachedFile);
+                this.body = new FileInputStream(this.request.cachedFile);
             }
             return this.body;
         }
 
         @Override
         public HttpHeaders getHeaders() {
-            return this.headers;
+            return this.request.headers;
         }
 
         @Override
         public int getRawStatusCode() {
-            return this.status;
+            return this.request.status;
         }
 
         @Override
         public String getStatusText() {
-            return this.statusText;
+            return this.request.statusText;
         }
 
         @Override
@@ -99,10 +117,16 @@ public final class HttpRequestCache {
 
     private class CachedClientHttpRequest implements ClientHttpRequest, Callable<Void> {
         private final ClientHttpRequest originalRequest;
-        private ClientHttpResponse response;
-
-        public CachedClientHttpRequest(final ClientHttpRequest request) {
+        private final String key;
+        private File cachedFile;
+        private HttpHeaders headers;
+        private int status;
+        private String statusText;
+        private boolean failed = false;
+
+        public CachedClientHttpRequest(final ClientHttpRequest request, final String key) {
             this.originalRequest = request;
+            this.key = key;
         }
 
         @Override
@@ -130,50 +154,131 @@ public final class HttpRequestCache {
         public ClientHttpResponse execute() {
             if (!HttpRequestCache.this.cached) {
                 LOGGER.warn("Attempting to load cached URI before actual caching: " + this.originalRequest.getURI());
-            } else if (this.response == null) {
+            } else if (this.failed) {
+                LOGGER.warn("Attempting to load cached URI from failed request: " + this.originalRequest.getURI());
+                return createErrorResponse();
+            } else if (this.cachedFile == null) {
                 LOGGER.warn("Attempting to load cached URI from failed request: " + this.originalRequest.getURI());
             } else {
                 LOGGER.debug("Loading cached URI resource " + this.originalRequest.getURI());
+                // each caller gets its own response since a URI can be used several times
+                return new CachedClientHttpResponse(this);
             }
-            return this.response;
+            return null;
+        }
+
+        private ClientHttpResponse createErrorResponse() {
+            return new AbstractClientHttpResponse() {
+                @Override
+                public HttpHeaders getHeaders() {
+                    return new HttpHeaders();
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return StreamUtils.emptyInput();
+                }
+
+                @Override
+                public int getRawStatusCode() {
+                    return 500;
+                }
+
+                @Override
+                public String getStatusText() {
+                    return CachedClientHttpRequest.this.statusText;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
         }
 
         @Override
         public Void call() throws Exception {
+            if (HttpRequestCache.this.scope == null) {
+                download();
+                return null;
+            }
+
+            final InFlightKey inFlightKey = new InFlightKey(HttpRequestCache.this.scope, this.key);
+            final CompletableFuture<CachedClientHttpRequest> future = new CompletableFuture<>();
+            final CompletableFuture<CachedClientHttpRequest> inFlight = IN_FLIGHT.putIfAbsent(inFlightKey, future);
+            if (inFlight != null && copyFrom(inFlight)) {
+                return null;
+            }
+            try {
+                download();
+                future.complete(this);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                if (inFlight == null) {
+                    IN_FLIGHT.remove(inFlightKey, future);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Wait for the same request made by another cache and copy its result.
+         *
+         * @return false if the other request has failed or is too slow.
+         */
+        private boolean copyFrom(final CompletableFuture<CachedClientHttpRequest> inFlight) {
+            final CachedClientHttpRequest other;
+            try {
+                other = inFlight.get(HttpRequestCache.this.inFlightTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                return false;
+            } catch (TimeoutException e) {
+                LOGGER.debug("The in-flight request for URI resource " + getURI() + " is too slow, downloading it");
+                HttpRequestCache.this.registry.counter(HttpRequestCache.class.getName() + ".coalesceTimeout").inc();
+                return false;
+            }
+            try {
+                final File file = File.createTempFile("cacheduri", null, HttpRequestCache.this.temporaryDirectory);
+                // the file of the other cache may be deleted with its task directory
+                Files.copy(other.cachedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                this.headers = other.headers;
+                this.status = other.status;
+                this.statusText = other.statusText;
+                this.cachedFile = file;
+            } catch (IOException e) {
+                LOGGER.debug("Unable to copy the cached URI resource " + getURI(), e);
+                return false;
+            }
+            LOGGER.debug("Reusing the in-flight request for URI resource " + getURI());
+            HttpRequestCache.this.registry.counter(HttpRequestCache.class.getName() + ".coalesced").inc();
+            return true;
+        }
+
+        private void download() throws IOException {
             final String baseMetricName = HttpRequestCache.class.getName() + ".read." + getURI().getHost();
             final Timer.Context timerDownload = HttpRequestCache.this.registry.timer(baseMetricName).time();
             ClientHttpResponse originalResponse = null;
             try {
                 originalResponse = this.originalRequest.execute();
                 LOGGER.debug("Caching URI resource " + this.originalRequest.getURI());
-                this.response = new CachedClientHttpResponse(originalResponse);
+                final File file = File.createTempFile("cacheduri", null, HttpRequestCache.this.temporaryDirectory);
+                try (InputStream is = originalResponse.getBody()) {
+                    try (OutputStream os = new FileOutputStream(file)) {
+                        IOUtils.copy(is, os);
+                    }
+                }
+                this.headers = originalResponse.getHeaders();
+                this.status = originalResponse.getRawStatusCode();
+                this.statusText = originalResponse.getStatusText();
+                this.cachedFile = file;
             } catch (IOException e) {
                 LOGGER.error("Request failed " + this.originalRequest.getURI(), e);
-                this.response = new AbstractClientHttpResponse() {
-                    @Override
-                    public HttpHeaders getHeaders() {
-                        return new HttpHeaders();
-                    }
-
-                    @Override
-                    public InputStream getBody() {
-                        return StreamUtils.emptyInput();
-                    }
-
-                    @Override
-                    public int getRawStatusCode() {
-                        return 500;
-                    }
-
-                    @Override
-                    public String getStatusText() {
-                        return e.getMessage();
-                    }
-
-                    @Override
-                    public void close() {
-                    }
-                };
+                this.failed = true;
+                this.statusText = e.getMessage();
                 HttpRequestCache.this.registry.counter(baseMetricName + ".error").inc();
                 throw e;
             } finally {
@@ -182,7 +287,6 @@ public final class HttpRequestCache {
                 }
                 timerDownload.stop();
             }
-            return null;
         }
     }
 
@@ -193,13 +297,34 @@ public final class HttpRequestCache {
      * @param registry the metric registry
      */
     public HttpRequestCache(final File temporaryDirectory, final MetricRegistry registry) {
+        this(temporaryDirectory, registry, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param temporaryDirectory temporary directory for cached requests
+     * @param registry the metric registry
+     * @param scope the requests of the caches having the same scope (compared by identity) are shared while
+     *              they are downloaded, typically the configuration. If null, nothing is shared.
+     */
+    public HttpRequestCache(final File temporaryDirectory, final MetricRegistry registry,
+                            @Nullable final Object scope) {
         this.temporaryDirectory = temporaryDirectory;
         this.registry = registry;
+        this.scope = scope;
     }
 
-    private CachedClientHttpRequest save(final CachedClientHttpRequest request) {
-        this.requests.add(request);
-        return request;
+    /**
+     * Set the maximum time (in milliseconds) to wait for the same request made by another cache.
+     */
+    @VisibleForTesting
+    void setInFlightTimeout(final long inFlightTimeout) {
+        this.inFlightTimeout = inFlightTimeout;
+    }
+
+    private static String createKey(final ClientHttpRequest request) {
+        return request.getMethod() + " " + request.getURI() + " " + request.getHeaders();
     }
 
     /**
@@ -209,7 +334,16 @@ public final class HttpRequestCache {
      * @return the cached http request
      */
     public ClientHttpRequest register(final ClientHttpRequest originalRequest) {
-        return save(new CachedClientHttpRequest(originalRequest));
+        final String key = createKey(originalRequest);
+        CachedClientHttpRequest request = this.requests.get(key);
+        if (request == null) {
+            request = new CachedClientHttpRequest(originalRequest, key);
+            this.requests.put(key, request);
+        } else {
+            LOGGER.debug("URI resource already registered " + originalRequest.getURI());
+            this.registry.counter(HttpRequestCache.class.getName() + ".duplicate").inc();
+        }
+        return request;
     }
 
     /**
@@ -231,10 +365,64 @@ public final class HttpRequestCache {
      */
     public void cache(final ForkJoinPool requestForkJoinPool) {
         if (!this.cached) {
-            requestForkJoinPool.invokeAll(this.requests);
+            requestForkJoinPool.invokeAll(this.requests.values());
+            this.cached = true;
+        } else {
+            LOGGER.warn("Attempting to cache twice!");
+        }
+    }
+
+    /**
+     * Cache all requests at once, with a bounded number of requests in flight per host.
+     *
+     * @param scheduler the scheduler of the requests
+     */
+    public void cache(final HttpRequestScheduler scheduler) {
+        if (!this.cached) {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>(this.requests.size());
+            for (CachedClientHttpRequest request: this.requests.values()) {
+                futures.add(scheduler.submit(request.getURI().getHost(), request));
+            }
+            for (CompletableFuture<Void> future: futures) {
+                try {
+                    future.join();
+                } catch (CompletionException e) {
+                    // already logged, the request will return an error response
+                }
+            }
             this.cached = true;
         } else {
             LOGGER.warn("Attempting to cache twice!");
         }
     }
+
+    /**
+     * The key of a request in the in-flight requests, the scope is compared by identity.
+     */
+    private static final class InFlightKey {
+        private final Object scope;
+        private final String key;
+
+        private InFlightKey(final Object scope, final String key) {
+            this.scope = scope;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final InFlightKey other = (InFlightKey) o;
+            return this.scope == other.scope && this.key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.scope) + this.key.hashCode();
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package org.mapfish.print.http;
+
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.Nullable;
+import javax.annotation.Resource;
+
+/**
+ * Schedules the downloads of all the print jobs on the request thread pool with a bounded number of
+ * requests in flight per host.
+ * <p>
+ * The requests waiting for their host are queued without holding a thread, so a slow server can only
+ * occupy <code>maxInFlightPerHost</code> threads of the pool and the downloads of the other hosts are not
+ * starved. When a request completes, the thread that ran it directly starts the next one of the same host.
+ * </p>
+ */
+public final class HttpRequestScheduler {
+    private int maxInFlightPerHost = 10;
+
+    @Resource(name = "requestForkJoinPool")
+    private ForkJoinPool requestForkJoinPool;
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+
+    /**
+     * The maximum number of requests running at the same time on a host, for all the jobs.
+     *
+     * @param maxInFlightPerHost the number of requests.
+     */
+    public void setMaxInFlightPerHost(final int maxInFlightPerHost) {
+        this.maxInFlightPerHost = maxInFlightPerHost;
+    }
+
+    /**
+     * Schedule a request.
+     *
+     * @param host the host of the request, null for the non-HTTP URIs.
+     * @param task the task making the request.
+     * @return a future completed once the task has run.
+     */
+    public CompletableFuture<Void> submit(@Nullable final String host, final Callable<Void> task) {
+        final String hostKey = host == null ? "" : host;
+        final ScheduledTask scheduledTask = new ScheduledTask(hostKey, task);
+        final boolean start;
+        synchronized (this.hosts) {
+            HostQueue queue = this.hosts.get(hostKey);
+            if (queue == null) {
+                queue = new HostQueue();
+                this.hosts.put(hostKey, queue);
+            }
+            start = queue.inFlight < this.maxInFlightPerHost;
+            if (start) {
+                queue.inFlight++;
+            } else {
+                queue.waiting.add(scheduledTask);
+            }
+        }
+        if (start) {
+            this.requestForkJoinPool.execute(scheduledTask);
+        } else {
+            this.metricRegistry.counter(HttpRequestScheduler.class.getName() + ".queued").inc();
+        }
+        return scheduledTask.future;
+    }
+
+    /**
+     * Called when a task is done, returns the next task of the host or null if there is none.
+     */
+    private ScheduledTask next(final String host) {
+        synchronized (this.hosts) {
+            final HostQueue queue = this.hosts.get(host);
+            final ScheduledTask next = queue.waiting.poll();
+            if (next == null) {
+                queue.inFlight--;
+                if (queue.inFlight == 0) {
+                    this.hosts.remove(host);
+                }
+            }
+            return next;
+        }
+    }
+
+    private static final class HostQueue {
+        private final Queue<ScheduledTask> waiting = new ArrayDeque<>();
+        private int inFlight = 0;
+    }
+
+    private final class ScheduledTask implements Runnable {
+        private final String host;
+        private final Callable<Void> task;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private ScheduledTask(final String host, final Callable<Void> task) {
+            this.host = host;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            ScheduledTask current = this;
+            while (current != null) {
+                try {
+                    current.task.call();
+                    current.future.complete(null);
+                } catch (Throwable e) {
+                    current.future.completeExceptionally(e);
+                }
+                current = next(this.host);
+            }
+        }
+    }
+}
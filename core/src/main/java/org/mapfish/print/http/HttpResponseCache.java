@@ -0,0 +1,443 @@
+package org.mapfish.print.http;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.WorkingDirectories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+
+/**
+ * A process-wide cache for the responses of the GET requests, shared by all the print jobs.
+ * <p>
+ * Only the successful responses that are explicitly cacheable (<code>Cache-Control: max-age</code>,
+ * <code>s-maxage</code> or <code>Expires</code>) are stored, until they expire. The small responses are
+ * kept in memory and the large ones on the disk, both tiers have a byte budget with LRU eviction. When
+ * a response is evicted from the memory it is moved to the disk.
+ * </p>
+ * <p>
+ * The responses are keyed by the final URI of the request, its headers and the configuration the request
+ * was made for (the credentials and proxies depend on it). A response that varies (<code>Vary</code>) on a header
+ * that is not in the key (a header added by the HTTP client or <code>*</code>) is not stored.
+ * </p>
+ */
+public final class HttpResponseCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpResponseCache.class);
+    private static final String METRIC_NAME = HttpResponseCache.class.getName();
+
+    private boolean enabled = false;
+    private long maxMemoryBytes = 64L * 1024 * 1024;
+    private long maxDiskBytes = 1024L * 1024 * 1024;
+    private int maxMemoryEntryBytes = 256 * 1024;
+
+    @Autowired
+    private WorkingDirectories workingDirectories;
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private File directory;
+    private Cache<String, CachedResponse> memoryCache;
+    private Cache<String, CachedResponse> diskCache;
+    private final AtomicLong memoryBytes = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * The maximum number of bytes of responses kept in memory.
+     *
+     * @param maxMemoryBytes the budget in bytes.
+     */
+    public void setMaxMemoryBytes(final long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * The maximum number of bytes of responses kept on the disk.
+     *
+     * @param maxDiskBytes the budget in bytes.
+     */
+    public void setMaxDiskBytes(final long maxDiskBytes) {
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * The responses larger than this are directly written on the disk.
+     *
+     * @param maxMemoryEntryBytes the size in bytes.
+     */
+    public void setMaxMemoryEntryBytes(final int maxMemoryEntryBytes) {
+        this.maxMemoryEntryBytes = maxMemoryEntryBytes;
+    }
+
+    /**
+     * Called by spring after bean has been created and populated.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (!this.enabled) {
+            return;
+        }
+        this.directory = this.workingDirectories.getHttpCache();
+        // the index of the cache is not persisted, so the files of a previous run are useless
+        FileUtils.cleanDirectory(this.directory);
+
+        final Weigher<String, CachedResponse> weigher = new Weigher<String, CachedResponse>() {
+            @Override
+            public int weigh(final String key, final CachedResponse value) {
+                return (int) Math.min(value.size, Integer.MAX_VALUE);
+            }
+        };
+        // one segment, otherwise the budget is split between the segments and a large response doesn't fit in any
+        this.diskCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(this.maxDiskBytes)
+                .weigher(weigher)
+                .removalListener(new RemovalListener<String, CachedResponse>() {
+                    @Override
+                    public void onRemoval(final RemovalNotification<String, CachedResponse> notification) {
+                        final CachedResponse value = notification.getValue();
+                        HttpResponseCache.this.diskBytes.addAndGet(-value.size);
+                        if (!value.file.delete()) {
+                            LOGGER.warn("Unable to delete the cached response {}", value.file);
+                        }
+                    }
+                })
+                .build();
+        this.memoryCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(this.maxMemoryBytes)
+                .weigher(weigher)
+                .removalListener(new RemovalListener<String, CachedResponse>() {
+                    @Override
+                    public void onRemoval(final RemovalNotification<String, CachedResponse> notification) {
+                        final CachedResponse value = notification.getValue();
+                        HttpResponseCache.this.memoryBytes.addAndGet(-value.size);
+                        if (notification.wasEvicted() && !value.isExpired()) {
+                            demote(notification.getKey(), value);
+                        }
+                    }
+                })
+                .build();
+
+        this.metricRegistry.register(METRIC_NAME + ".memory.bytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return HttpResponseCache.this.memoryBytes.get();
+            }
+        });
+        this.metricRegistry.register(METRIC_NAME + ".disk.bytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return HttpResponseCache.this.diskBytes.get();
+            }
+        });
+    }
+
+    /**
+     * Return true if the response of the request may come from the cache.
+     *
+     * @param request the request, with all its headers.
+     */
+    boolean isCacheable(final HttpRequestBase request) {
+        if (!this.enabled || !"GET".equals(request.getMethod())) {
+            return false;
+        }
+        for (Header header : request.getHeaders("Cache-Control")) {
+            for (HeaderElement element : header.getElements()) {
+                final String name = element.getName().toLowerCase(Locale.ENGLISH);
+                if (name.equals("no-cache") || name.equals("no-store")) {
+                    return false;
+                }
+            }
+        }
+        return request.getFirstHeader("Pragma") == null;
+    }
+
+    /**
+     * Create the key of the request.
+     *
+     * @param request the request, with all its headers.
+     * @param configuration the configuration of the print job.
+     */
+    String createKey(final HttpRequestBase request, @Nullable final Configuration configuration) {
+        final StringBuilder key = new StringBuilder(request.getURI().toString());
+        final Header[] headers = request.getAllHeaders();
+        final String[] headerStrings = new String[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            headerStrings[i] = headers[i].getName().toLowerCase(Locale.ENGLISH) + ':' + headers[i].getValue();
+        }
+        Arrays.sort(headerStrings);
+        for (String header : headerStrings) {
+            key.append('\n').append(header);
+        }
+        if (configuration != null) {
+            key.append('\n').append(configuration.getDirectory().getPath());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get a response from the cache.
+     *
+     * @param key the key of the request.
+     * @return the response or null if it is not in the cache.
+     */
+    @Nullable
+    ClientHttpResponse get(final String key) {
+        CachedResponse cached = this.memoryCache.getIfPresent(key);
+        if (cached == null) {
+            cached = this.diskCache.getIfPresent(key);
+        }
+        if (cached != null && cached.isExpired()) {
+            this.memoryCache.invalidate(key);
+            this.diskCache.invalidate(key);
+            cached = null;
+        }
+        if (cached != null) {
+            try {
+                final ClientHttpResponse response = cached.createResponse();
+                this.metricRegistry.counter(METRIC_NAME + ".hit").inc();
+                this.metricRegistry.counter(METRIC_NAME + ".hit.bytes").inc(cached.size);
+                return response;
+            } catch (IOException e) {
+                // the file has been evicted in the mean time
+                LOGGER.debug("Unable to read the cached response of {}", key, e);
+            }
+        }
+        this.metricRegistry.counter(METRIC_NAME + ".miss").inc();
+        return null;
+    }
+
+    /**
+     * Store the response in the cache if it's cacheable.
+     *
+     * @param key the key of the request.
+     * @param request the request, with the headers used to create the key.
+     * @param httpResponse the raw response, used to get the caching headers.
+     * @param response the response.
+     * @return the response to use instead of the given one.
+     */
+    ClientHttpResponse put(final String key, final HttpRequestBase request, final HttpResponse httpResponse,
+                           final ClientHttpResponse response) throws IOException {
+        final long expires = getExpires(httpResponse, System.currentTimeMillis());
+        if (httpResponse.getStatusLine().getStatusCode() != HttpStatus.OK.value() || expires < 0 ||
+                !isVaryInKey(request, httpResponse)) {
+            return response;
+        }
+
+        final CachedResponse cached;
+        try (InputStream body = response.getBody()) {
+            final byte[] head = ByteStreams.toByteArray(ByteStreams.limit(body, this.maxMemoryEntryBytes + 1));
+            if (head.length <= this.maxMemoryEntryBytes) {
+                cached = new CachedResponse(response, expires, head, null, head.length);
+            } else {
+                final File file = File.createTempFile("response-", null, this.directory);
+                final long size;
+                try (OutputStream out = new FileOutputStream(file)) {
+                    out.write(head);
+                    size = head.length + ByteStreams.copy(body, out);
+                }
+                cached = new CachedResponse(response, expires, null, file, size);
+            }
+        } finally {
+            response.close();
+        }
+
+        if (cached.file == null) {
+            this.memoryBytes.addAndGet(cached.size);
+            this.memoryCache.put(key, cached);
+        } else {
+            this.diskBytes.addAndGet(cached.size);
+            this.diskCache.put(key, cached);
+        }
+        this.metricRegistry.counter(METRIC_NAME + ".stored.bytes").inc(cached.size);
+        return cached.createResponse();
+    }
+
+    private void demote(final String key, final CachedResponse value) {
+        try {
+            final File file = File.createTempFile("response-", null, this.directory);
+            FileUtils.writeByteArrayToFile(file, value.data);
+            this.diskBytes.addAndGet(value.size);
+            this.diskCache.put(key, new CachedResponse(value, file));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to move the cached response of {} to the disk", key, e);
+        }
+    }
+
+    /**
+     * Get the time until the response is fresh according to the Cache-Control and Expires headers.
+     *
+     * @param response the response.
+     * @param now the current time.
+     * @return the expiration time, -1 if the response may not be stored.
+     */
+    static long getExpires(final HttpResponse response, final long now) {
+        Long maxAge = null;
+        for (Header header : response.getHeaders("Cache-Control")) {
+            for (HeaderElement element : header.getElements()) {
+                final String name = element.getName().toLowerCase(Locale.ENGLISH);
+                if (name.equals("no-store") || name.equals("no-cache") || name.equals("private")) {
+                    return -1;
+                } else if (name.equals("s-maxage") || (name.equals("max-age") && maxAge == null)) {
+                    try {
+                        maxAge = Long.parseLong(element.getValue());
+                    } catch (NumberFormatException e) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        if (maxAge != null) {
+            return maxAge > 0 ? now + maxAge * 1000 : -1;
+        }
+
+        final Header expiresHeader = response.getFirstHeader("Expires");
+        if (expiresHeader != null) {
+            final Date expires = DateUtils.parseDate(expiresHeader.getValue());
+            if (expires == null) {
+                return -1;
+            }
+            // use the server clock to compute the freshness lifetime
+            final Header dateHeader = response.getFirstHeader("Date");
+            final Date date = dateHeader != null ? DateUtils.parseDate(dateHeader.getValue()) : null;
+            final long lifetime = expires.getTime() - (date != null ? date.getTime() : now);
+            return lifetime > 0 ? now + lifetime : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Return true if the headers the response varies on are in the key of the request.
+     *
+     * @param request the request, with the headers used to create the key.
+     * @param response the response.
+     */
+    static boolean isVaryInKey(final HttpRequestBase request, final HttpResponse response) {
+        for (Header header : response.getHeaders("Vary")) {
+            for (HeaderElement element : header.getElements()) {
+                final String name = element.getName().trim();
+                if (name.equals("*")) {
+                    return false;
+                }
+                // the HTTP client adds the same Accept-Encoding to all the requests and decodes the response
+                if (!name.equalsIgnoreCase("Accept-Encoding") && request.getFirstHeader(name) == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A response stored in the cache, either in memory or on the disk.
+     */
+    private static final class CachedResponse {
+        private final HttpHeaders headers;
+        private final int status;
+        private final String statusText;
+        private final long expires;
+        private final byte[] data;
+        private final File file;
+        private final long size;
+
+        private CachedResponse(final ClientHttpResponse response, final long expires,
+                               @Nullable final byte[] data, @Nullable final File file, final long size)
+                throws IOException {
+            this.headers = response.getHeaders();
+            this.status = response.getRawStatusCode();
+            this.statusText = response.getStatusText();
+            this.expires = expires;
+            this.data = data;
+            this.file = file;
+            this.size = size;
+        }
+
+        private CachedResponse(final CachedResponse other, final File file) {
+            this.headers = other.headers;
+            this.status = other.status;
+            this.statusText = other.statusText;
+            this.expires = other.expires;
+            this.data = null;
+            this.file = file;
+            this.size = other.size;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > this.expires;
+        }
+
+        private ClientHttpResponse createResponse() throws IOException {
+            final InputStream body = this.data != null ?
+                    new ByteArrayInputStream(this.data) : new FileInputStream(this.file);
+            return new AbstractClientHttpResponse() {
+                @Override
+                public int getRawStatusCode() {
+                    return CachedResponse.this.status;
+                }
+
+                @Override
+                public String getStatusText() {
+                    return CachedResponse.this.statusText;
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return CachedResponse.this.headers;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return body;
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        body.close();
+                    } catch (IOException e) {
+                        LOGGER.debug("Error while closing the cached response", e);
+                    }
+                }
+            };
+        }
+    }
+}
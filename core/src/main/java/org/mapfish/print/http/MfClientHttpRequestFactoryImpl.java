@@ -22,6 +22,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.AbstractClientHttpRequest;
 import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
 import java.io.ByteArrayInputStream;
@@ -52,6 +53,8 @@ public class MfClientHttpRequestFactoryImpl extends HttpComponentsClientHttpRequ
         return CURRENT_CONFIGURATION.get();
     }
 
+    private HttpResponseCache responseCache;
+
     /**
      * Constructor.
      * @param maxConnTotal Maximum total connections.
@@ -73,13 +76,24 @@ public class MfClientHttpRequestFactoryImpl extends HttpComponentsClientHttpRequ
         return httpClientBuilder.build();
     }
 
+    /**
+     * Set the cache shared by all the jobs for the responses of the GET requests.
+     *
+     * @param responseCache the cache.
+     */
+    public final void setResponseCache(final HttpResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
     // allow extension only for testing
     @Override
     public ConfigurableRequest createRequest(
             @Nonnull final URI uri,
             @Nonnull final HttpMethod httpMethod) throws IOException {
         HttpRequestBase httpRequest = (HttpRequestBase) createHttpUriRequest(httpMethod, uri);
-        return new Request(getHttpClient(), httpRequest, createHttpContext(httpMethod, uri));
+        final Request request = new Request(getHttpClient(), httpRequest, createHttpContext(httpMethod, uri));
+        request.responseCache = this.responseCache;
+        return request;
     }
 
     /**
@@ -111,6 +125,7 @@ public class MfClientHttpRequestFactoryImpl extends HttpComponentsClientHttpRequ
         private final HttpContext context;
         private final ByteArrayOutputStream outputStream;
         private Configuration configuration;
+        private HttpResponseCache responseCache;
 
         Request(@Nonnull final HttpClient client,
                 @Nonnull final HttpRequestBase request,
@@ -151,7 +166,7 @@ public class MfClientHttpRequestFactoryImpl extends HttpComponentsClientHttpRequ
         }
 
         @Override
-        protected Response executeInternal(@Nonnull final HttpHeaders headers) throws IOException {
+        protected ClientHttpResponse executeInternal(@Nonnull final HttpHeaders headers) throws IOException {
             CURRENT_CONFIGURATION.set(this.configuration);
 
             LOGGER.debug("Preparing request " + this.getMethod() + " -- " + this.getURI());
@@ -170,9 +185,23 @@ public class MfClientHttpRequestFactoryImpl extends HttpComponentsClientHttpRequ
                 final HttpEntity requestEntity = new ByteArrayEntity(this.outputStream.toByteArray());
                 entityEnclosingRequest.setEntity(requestEntity);
             }
+
+            String cacheKey = null;
+            if (this.responseCache != null && this.responseCache.isCacheable(this.request)) {
+                cacheKey = this.responseCache.createKey(this.request, this.configuration);
+                final ClientHttpResponse cachedResponse = this.responseCache.get(cacheKey);
+                if (cachedResponse != null) {
+                    LOGGER.debug("Response from the cache -- " + this.getURI());
+                    return cachedResponse;
+                }
+            }
+
             HttpResponse response = this.client.execute(this.request, this.context);
             LOGGER.debug("Response: " + response.getStatusLine().getStatusCode() + " -- " + this.getURI());
 
+            if (cacheKey != null) {
+                return this.responseCache.put(cacheKey, this.request, response, new Response(response));
+            }
             return new Response(response);
         }
     }
@@ -1,5 +1,6 @@
 package org.mapfish.print.map.geotools;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Sets;
 import com.vividsolutions.jts.geom.Geometry;
 
@@ -78,9 +79,11 @@ public abstract class AbstractFeatureSourceLayerPlugin<P> implements MapLayerFac
                 }
 
                 final StyleParser styleParser = AbstractFeatureSourceLayerPlugin.this.parser;
-                return template.getStyle(styleRef)
-                        .or(styleParser.loadStyle(template.getConfiguration(), requestFactory, styleRef))
-                        .or(template.getConfiguration().getDefaultStyle(geomType));
+                Optional<? extends Style> style = template.getStyle(styleRef);
+                if (!style.isPresent()) {
+                    style = styleParser.loadStyle(template.getConfiguration(), requestFactory, styleRef);
+                }
+                return style.isPresent() ? style.get() : template.getConfiguration().getDefaultStyle(geomType);
             }
         };
     }
@@ -1,5 +1,6 @@
 package org.mapfish.print.map.geotools;
 
+import com.google.common.base.Optional;
 import org.geotools.styling.Style;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
@@ -29,9 +30,11 @@ public abstract class AbstractGridCoverageLayerPlugin {
             public Style load(final MfClientHttpRequestFactory requestFactory,
                               final T featureSource) {
                 final StyleParser parser = AbstractGridCoverageLayerPlugin.this.styleParser;
-                return template.getStyle(styleRef)
-                        .or(parser.loadStyle(template.getConfiguration(), requestFactory, styleRef))
-                        .or(template.getConfiguration().getDefaultStyle(NAME));
+                Optional<? extends Style> style = template.getStyle(styleRef);
+                if (!style.isPresent()) {
+                    style = parser.loadStyle(template.getConfiguration(), requestFactory, styleRef);
+                }
+                return style.isPresent() ? style.get() : template.getConfiguration().getDefaultStyle(NAME);
             }
         };
     }
@@ -1,5 +1,6 @@
 package org.mapfish.print.map.geotools;
 
+import com.google.common.base.Optional;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.collection.CollectionFeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -113,11 +114,11 @@ public final class FeatureLayer extends AbstractFeatureSourceLayer {
                             styleRef = geomType;
                         }
                     }
-                    return template.getStyle(styleRef)
-                            .or(Plugin.this.parser.loadStyle(
-                                    template.getConfiguration(),
-                                    requestFactory, styleRef))
-                            .or(template.getConfiguration().getDefaultStyle(styleRef));
+                    Optional<? extends Style> style = template.getStyle(styleRef);
+                    if (!style.isPresent()) {
+                        style = Plugin.this.parser.loadStyle(template.getConfiguration(), requestFactory, styleRef);
+                    }
+                    return style.isPresent() ? style.get() : template.getConfiguration().getDefaultStyle(styleRef);
                 }
             };
         }
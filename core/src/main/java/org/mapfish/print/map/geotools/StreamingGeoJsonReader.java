@@ -0,0 +1,371 @@
+package org.mapfish.print.map.geotools;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.json.JSONObject;
+import org.mapfish.print.PrintException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a GeoJSON feature collection (or an array of features) in a single streaming pass.
+ * <p></p>
+ * The features are read into lightweight intermediate objects while the schema (the union of the property
+ * names and the common geometry type) is inferred, the simple features are then built without parsing the
+ * document a second time.
+ */
+final class StreamingGeoJsonReader {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String GEOMETRY_ATTRIBUTE = "geometry";
+    private static final String POSITIONS_TYPE = "Positions";
+
+    /**
+     * Resolves the CRS of the collection.
+     */
+    interface CrsResolver {
+        /**
+         * Get the CRS of the collection.
+         *
+         * @param geojson the collection, containing only the <code>crs</code> member if present.
+         */
+        CoordinateReferenceSystem resolve(JSONObject geojson);
+    }
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+    private final CrsResolver crsResolver;
+
+    private final List<RawFeature> features = new ArrayList<>();
+    private final Set<String> attributes = new LinkedHashSet<>();
+    private Class<? extends Geometry> geometryType = null;
+    private Map<String, Object> crs = null;
+
+    /**
+     * Constructor.
+     *
+     * @param crsResolver the CRS resolver
+     */
+    StreamingGeoJsonReader(final CrsResolver crsResolver) {
+        this.crsResolver = crsResolver;
+    }
+
+    /**
+     * Read the feature collection.
+     *
+     * @param input the GeoJSON
+     * @return the features
+     */
+    SimpleFeatureCollection read(final Reader input) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            final JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_ARRAY) {
+                readFeatures(parser);
+            } else if (first == JsonToken.START_OBJECT) {
+                readCollection(parser);
+            } else {
+                throw new PrintException("Invalid geoJSON: it must be an object or an array");
+            }
+        } catch (JsonParseException e) {
+            throw new PrintException("Invalid geoJSON: " + e.getMessage(), e);
+        }
+        return buildCollection();
+    }
+
+    /**
+     * Read the top level object, it can be a feature collection or a single feature.
+     */
+    private void readCollection(final JsonParser parser) throws IOException {
+        final RawFeature single = new RawFeature();
+        String type = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (name.equals("type")) {
+                type = parser.getText();
+            } else if (name.equals("features") && token == JsonToken.START_ARRAY) {
+                readFeatures(parser);
+            } else if (name.equals("crs") && token == JsonToken.START_OBJECT) {
+                @SuppressWarnings("unchecked")
+                final Map<String, Object> crsValue = (Map<String, Object>) readValue(parser);
+                this.crs = crsValue;
+            } else {
+                readFeatureMember(parser, name, single);
+            }
+        }
+        if ("Feature".equalsIgnoreCase(type)) {
+            addFeature(single);
+        } else if (!"FeatureCollection".equalsIgnoreCase(type)) {
+            throw new PrintException("Invalid geoJSON: unsupported type " + type);
+        }
+    }
+
+    private void readFeatures(final JsonParser parser) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                throw new PrintException("Invalid geoJSON: the features must be objects");
+            }
+            final RawFeature feature = new RawFeature();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                readFeatureMember(parser, name, feature);
+            }
+            addFeature(feature);
+        }
+    }
+
+    private void addFeature(final RawFeature feature) {
+        this.features.add(feature);
+        this.attributes.addAll(feature.properties.keySet());
+        if (feature.geometry != null && this.geometryType != Geometry.class) {
+            final Class<? extends Geometry> thisType = feature.geometry.getClass();
+            if (this.geometryType == null) {
+                this.geometryType = thisType;
+            } else if (!this.geometryType.equals(thisType)) {
+                this.geometryType = Geometry.class;
+            }
+        }
+    }
+
+    /**
+     * Read a member of a feature object, the parser is on the value.
+     */
+    private void readFeatureMember(final JsonParser parser, final String name, final RawFeature feature)
+            throws IOException {
+        final JsonToken token = parser.getCurrentToken();
+        if (name.equals("id") && token != JsonToken.VALUE_NULL) {
+            feature.id = parser.getText();
+        } else if (name.equals("properties") && token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String property = parser.getCurrentName();
+                parser.nextToken();
+                feature.properties.put(property, readValue(parser));
+            }
+        } else if (name.equals(GEOMETRY_ATTRIBUTE) && token == JsonToken.START_OBJECT) {
+            feature.geometry = readGeometry(parser);
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    private Geometry readGeometry(final JsonParser parser) throws IOException {
+        String type = null;
+        Object coordinates = null;
+        List<Geometry> geometries = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (name.equals("type")) {
+                type = parser.getText();
+            } else if (name.equals("coordinates") && token == JsonToken.START_ARRAY) {
+                coordinates = readCoordinates(parser);
+            } else if (name.equals("geometries") && token == JsonToken.START_ARRAY) {
+                geometries = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    final Geometry geometry = readGeometry(parser);
+                    if (geometry != null) {
+                        geometries.add(geometry);
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (type == null) {
+            throw new PrintException("Invalid geoJSON: geometry without type");
+        }
+        if (type.equalsIgnoreCase(POSITIONS_TYPE)) {
+            // no geometry, but the features can have any type of geometry
+            this.geometryType = Geometry.class;
+            return null;
+        }
+        return createGeometry(type, coordinates, geometries);
+    }
+
+    /**
+     * Read nested arrays of positions, the positions are returned as {@link Coordinate} and the arrays of
+     * arrays as lists.
+     */
+    private Object readCoordinates(final JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            final double[] ordinates = new double[] {Double.NaN, Double.NaN, Double.NaN};
+            int i = 0;
+            while (token != JsonToken.END_ARRAY) {
+                if (i < ordinates.length) {
+                    ordinates[i++] = parser.getDoubleValue();
+                }
+                token = parser.nextToken();
+            }
+            return new Coordinate(ordinates[0], ordinates[1], ordinates[2]);
+        }
+        final List<Object> children = new ArrayList<>();
+        while (token == JsonToken.START_ARRAY) {
+            children.add(readCoordinates(parser));
+            token = parser.nextToken();
+        }
+        return children;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Geometry createGeometry(final String type, final Object coordinates, final List<Geometry> geometries) {
+        final GeometryFactory factory = this.geometryFactory;
+        switch (type) {
+            case "Point":
+                // an empty array of coordinates is an empty point
+                return factory.createPoint(coordinates instanceof Coordinate ? (Coordinate) coordinates : null);
+            case "MultiPoint":
+                return factory.createMultiPoint(toCoordinates((List<Object>) coordinates));
+            case "LineString":
+                return factory.createLineString(toCoordinates((List<Object>) coordinates));
+            case "MultiLineString": {
+                final List<Object> lines = (List<Object>) coordinates;
+                final LineString[] lineStrings = new LineString[lines.size()];
+                for (int i = 0; i < lineStrings.length; i++) {
+                    lineStrings[i] = factory.createLineString(toCoordinates((List<Object>) lines.get(i)));
+                }
+                return factory.createMultiLineString(lineStrings);
+            }
+            case "Polygon":
+                return createPolygon((List<Object>) coordinates);
+            case "MultiPolygon": {
+                final List<Object> polygons = (List<Object>) coordinates;
+                final Polygon[] result = new Polygon[polygons.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = createPolygon((List<Object>) polygons.get(i));
+                }
+                return factory.createMultiPolygon(result);
+            }
+            case "GeometryCollection":
+                return factory.createGeometryCollection(geometries == null ? new Geometry[0] :
+                        geometries.toArray(new Geometry[geometries.size()]));
+            default:
+                throw new PrintException("Unrecognized geometry type in geojson: " + type);
+        }
+    }
+
+    private Polygon createPolygon(final List<Object> rings) {
+        if (rings.isEmpty()) {
+            return this.geometryFactory.createPolygon((LinearRing) null, null);
+        }
+        final LinearRing shell = this.geometryFactory.createLinearRing(toCoordinates(asList(rings.get(0))));
+        final LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = this.geometryFactory.createLinearRing(toCoordinates(asList(rings.get(i + 1))));
+        }
+        return this.geometryFactory.createPolygon(shell, holes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(final Object value) {
+        return (List<Object>) value;
+    }
+
+    private static Coordinate[] toCoordinates(final List<Object> positions) {
+        return positions.toArray(new Coordinate[positions.size()]);
+    }
+
+    /**
+     * Read a JSON value, the objects are returned as maps and the arrays as lists.
+     */
+    private static Object readValue(final JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT: {
+                final Map<String, Object> map = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String name = parser.getCurrentName();
+                    parser.nextToken();
+                    map.put(name, readValue(parser));
+                }
+                return map;
+            }
+            case START_ARRAY: {
+                final List<Object> list = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    list.add(readValue(parser));
+                }
+                return list;
+            }
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER ?
+                        parser.getBigIntegerValue() : (Object) parser.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    private SimpleFeatureCollection buildCollection() {
+        if (this.features.isEmpty()) {
+            // the feature type is unknown without features
+            return new DefaultFeatureCollection(null, null);
+        }
+        final SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("GeosjonFeatureType");
+        for (String attribute: this.attributes) {
+            if (!attribute.equals(GEOMETRY_ATTRIBUTE)) {
+                typeBuilder.add(attribute, Object.class);
+            }
+        }
+        final JSONObject crsJson = new JSONObject();
+        if (this.crs != null) {
+            crsJson.put("crs", this.crs);
+        }
+        typeBuilder.add(GEOMETRY_ATTRIBUTE, this.geometryType != null ? this.geometryType : Geometry.class,
+                this.crsResolver.resolve(crsJson));
+        typeBuilder.setDefaultGeometry(GEOMETRY_ATTRIBUTE);
+        final SimpleFeatureType featureType = typeBuilder.buildFeatureType();
+
+        final List<SimpleFeature> result = new ArrayList<>(this.features.size());
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+        for (RawFeature feature: this.features) {
+            for (Map.Entry<String, Object> property: feature.properties.entrySet()) {
+                if (!property.getKey().equals(GEOMETRY_ATTRIBUTE)) {
+                    builder.set(property.getKey(), property.getValue());
+                }
+            }
+            builder.set(GEOMETRY_ATTRIBUTE, feature.geometry);
+            result.add(builder.buildFeature(feature.id));
+        }
+        this.features.clear();
+        return new ListFeatureCollection(featureType, result);
+    }
+
+    /**
+     * A feature as read from the GeoJSON, before the schema is known.
+     */
+    private static final class RawFeature {
+        private String id;
+        private Geometry geometry;
+        private final Map<String, Object> properties = new LinkedHashMap<>();
+    }
+}
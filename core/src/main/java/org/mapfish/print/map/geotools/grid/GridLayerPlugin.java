@@ -1,5 +1,6 @@
 package org.mapfish.print.map.geotools.grid;
 
+import com.google.common.base.Optional;
 import org.geotools.data.FeatureSource;
 import org.geotools.styling.Style;
 import org.mapfish.print.config.Template;
@@ -56,11 +57,12 @@ public final class GridLayerPlugin extends AbstractFeatureSourceLayerPlugin<Grid
             public Style load(final MfClientHttpRequestFactory requestFactory,
                               final FeatureSource featureSource) {
                 String styleRef = layerData.style;
-                return template.getStyle(styleRef)
-                        .or(GridLayerPlugin.super.parser.loadStyle(
-                                template.getConfiguration(),
-                                requestFactory, styleRef))
-                        .or(layerData.gridType.strategy.defaultStyle(template, layerData));
+                Optional<? extends Style> style = template.getStyle(styleRef);
+                if (!style.isPresent()) {
+                    style = GridLayerPlugin.super.parser.loadStyle(
+                            template.getConfiguration(), requestFactory, styleRef);
+                }
+                return style.isPresent() ? style.get() : layerData.gridType.strategy.defaultStyle(template, layerData);
             }
         };
     }
@@ -1,6 +1,7 @@
 package org.mapfish.print.map.style;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
 import com.google.common.collect.Lists;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.styling.SLDTransformer;
@@ -8,6 +9,7 @@ import org.geotools.styling.Style;
 import org.geotools.styling.StyleFactory;
 import org.geotools.styling.StyledLayerDescriptor;
 import org.geotools.styling.UserLayer;
+import org.geotools.styling.visitor.DuplicatingStyleVisitor;
 import org.mapfish.print.ExceptionUtils;
 import org.mapfish.print.config.Configuration;
 import org.slf4j.Logger;
@@ -20,6 +22,11 @@ import javax.annotation.Nonnull;
 
 /**
  * Parse a style using all the available {@link StyleParserPlugin} registered with the spring application context.
+ * <p></p>
+ * The parsed styles are cached in a bounded cache of the configuration, so they are dropped when the configuration
+ * is reloaded. Since the layers modify the styles (opacity, scaling), a copy of the cached style is returned each
+ * time. The styles loaded from an HTTP URL are not cached since the response can depend on the request (headers,
+ * credentials).
  */
 public final class StyleParser {
     private static final Logger LOGGER = LoggerFactory.getLogger(StyleParser.class);
@@ -35,34 +42,60 @@ public final class StyleParser {
     public Optional<? extends Style> loadStyle(final Configuration configuration,
                                                @Nonnull final ClientHttpRequestFactory clientHttpRequestFactory,
                                                final String styleString) {
-        if (styleString != null) {
-            for (StyleParserPlugin plugin : this.plugins) {
-                try {
-                    final Optional<? extends Style> style = plugin.parseStyle(
-                            configuration, clientHttpRequestFactory, styleString);
-                    if (style.isPresent()) {
-                        if (LOGGER.isDebugEnabled()) {
-                            try {
-                                final SLDTransformer transformer = new SLDTransformer();
-                                final StyleFactory styleFactory = CommonFactoryFinder.getStyleFactory();
-                                final UserLayer userLayer = styleFactory.createUserLayer();
-                                userLayer.addUserStyle(style.get());
-                                final StyledLayerDescriptor sld = styleFactory.createStyledLayerDescriptor();
-                                sld.addStyledLayer(userLayer);
-                                if (LOGGER.isDebugEnabled()) {
-                                    LOGGER.debug("Loaded style from: \n\n '{}': \n\n{}",
-                                            styleString, transformer.transform(sld));
-                                }
-                            } catch (Exception e) {
-                                LOGGER.debug(String.format("Loaded style from: \n\n '%s' \n\n<Unable to " +
-                                        "transform it to xml>: %s", styleString, e), e);
+        if (styleString == null) {
+            return Optional.absent();
+        }
+        if (configuration == null || isRemote(styleString)) {
+            return parseStyle(configuration, clientHttpRequestFactory, styleString);
+        }
+        final Cache<String, Optional<? extends Style>> cache = configuration.getParsedStyles();
+        Optional<? extends Style> style = cache.getIfPresent(styleString);
+        if (style == null) {
+            style = parseStyle(configuration, clientHttpRequestFactory, styleString);
+            cache.put(styleString, style);
+        }
+        if (style.isPresent()) {
+            final DuplicatingStyleVisitor copier = new DuplicatingStyleVisitor();
+            style.get().accept(copier);
+            return Optional.of((Style) copier.getCopy());
+        }
+        return style;
+    }
+
+    private static boolean isRemote(final String styleString) {
+        final String lowerCase = styleString.trim().toLowerCase();
+        return lowerCase.startsWith("http://") || lowerCase.startsWith("https://");
+    }
+
+    private Optional<? extends Style> parseStyle(final Configuration configuration,
+                                                 @Nonnull final ClientHttpRequestFactory clientHttpRequestFactory,
+                                                 @Nonnull final String styleString) {
+        for (StyleParserPlugin plugin : this.plugins) {
+            try {
+                final Optional<? extends Style> style = plugin.parseStyle(
+                        configuration, clientHttpRequestFactory, styleString);
+                if (style.isPresent()) {
+                    if (LOGGER.isDebugEnabled()) {
+                        try {
+                            final SLDTransformer transformer = new SLDTransformer();
+                            final StyleFactory styleFactory = CommonFactoryFinder.getStyleFactory();
+                            final UserLayer userLayer = styleFactory.createUserLayer();
+                            userLayer.addUserStyle(style.get());
+                            final StyledLayerDescriptor sld = styleFactory.createStyledLayerDescriptor();
+                            sld.addStyledLayer(userLayer);
+                            if (LOGGER.isDebugEnabled()) {
+                                LOGGER.debug("Loaded style from: \n\n '{}': \n\n{}",
+                                        styleString, transformer.transform(sld));
                             }
+                        } catch (Exception e) {
+                            LOGGER.debug(String.format("Loaded style from: \n\n '%s' \n\n<Unable to " +
+                                    "transform it to xml>: %s", styleString, e), e);
                         }
-                        return style;
                     }
-                } catch (Throwable t) {
-                    throw ExceptionUtils.getRuntimeException(t);
+                    return style;
                 }
+            } catch (Throwable t) {
+                throw ExceptionUtils.getRuntimeException(t);
             }
         }
         return Optional.absent();
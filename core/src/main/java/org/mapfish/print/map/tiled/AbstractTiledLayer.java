@@ -26,6 +26,7 @@ import javax.annotation.Nullable;
  */
 public abstract class AbstractTiledLayer extends AbstractGeotoolsLayer {
 
+    private final ForkJoinPool requestForkJoinPool;
     private final StyleSupplier<GridCoverage2D> styleSupplier;
     private final MetricRegistry registry;
     private final Configuration configuration;
@@ -40,6 +41,7 @@ public abstract class AbstractTiledLayer extends AbstractGeotoolsLayer {
     /**
      * Constructor.
      * @param forkJoinPool the thread pool for doing the rendering.
+     * @param requestForkJoinPool the thread pool for decoding the tiles.
      * @param styleSupplier strategy for loading the style for this layer.
      * @param params the parameters for this layer.
      * @param registry the metrics registry.
@@ -47,11 +49,13 @@ public abstract class AbstractTiledLayer extends AbstractGeotoolsLayer {
      */
     protected AbstractTiledLayer(
             @Nullable final ForkJoinPool forkJoinPool,
+            @Nullable final ForkJoinPool requestForkJoinPool,
             @Nullable final StyleSupplier<GridCoverage2D> styleSupplier,
             @Nonnull final AbstractLayerParams params,
             @Nullable final MetricRegistry registry,
             @Nonnull final Configuration configuration) {
         super(forkJoinPool, params);
+        this.requestForkJoinPool = requestForkJoinPool;
         this.styleSupplier = styleSupplier;
         this.registry = registry;
         this.configuration = configuration;
@@ -71,7 +75,8 @@ public abstract class AbstractTiledLayer extends AbstractGeotoolsLayer {
             final MapfishMapContext mapContext, final String jobId) throws Exception {
 
         final CoverageTask task = new CoverageTask(this.tilePreparationInfo,
-                getFailOnError(), this.registry, jobId, this.tileCacheInformation, this.configuration);
+                getFailOnError(), this.registry, jobId, this.tileCacheInformation, this.configuration,
+                this.requestForkJoinPool);
         final GridCoverage2D gridCoverage2D = task.call();
 
         GridCoverageLayer layer = new GridCoverageLayer(
@@ -22,10 +22,16 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.RecursiveTask;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.imageio.ImageIO;
 
 
@@ -42,6 +48,7 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
     private final MetricRegistry registry;
     private final String jobId;
     private final BufferedImage errorImage;
+    private final ForkJoinPool requestForkJoinPool;
 
 
     /**
@@ -52,6 +59,8 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
      * @param jobId the job ID.
      * @param tileCacheInfo the object used to create the tile requests.
      * @param configuration the configuration.
+     * @param requestForkJoinPool the thread pool used to decode the tiles in parallel, if null the tiles
+     *         are decoded in the calling thread.
      */
     public CoverageTask(
             @Nonnull final TilePreparationInfo tilePreparationInfo,
@@ -59,8 +68,10 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
             @Nonnull final MetricRegistry registry,
             @Nonnull final String jobId,
             @Nonnull final TileCacheInformation tileCacheInfo,
-            @Nonnull final Configuration configuration) {
+            @Nonnull final Configuration configuration,
+            @Nullable final ForkJoinPool requestForkJoinPool) {
         this.tilePreparationInfo = tilePreparationInfo;
+        this.requestForkJoinPool = requestForkJoinPool;
         this.jobId = jobId;
         this.tiledLayer = tileCacheInfo;
         this.failOnError = failOnError;
@@ -85,26 +96,42 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
             BufferedImage coverageImage = this.tiledLayer.createBufferedImage(
                     this.tilePreparationInfo.getImageWidth(),
                     this.tilePreparationInfo.getImageHeight());
-            Graphics2D graphics = coverageImage.createGraphics();
-
-            for (SingleTilePreparationInfo tileInfo : this.tilePreparationInfo.getSingleTiles()) {
-                TileTask task;
-                if (tileInfo.getTileRequest() != null) {
-                    task = new SingleTileLoaderTask(
+            // the number of pixels of the coverages, they are the largest images of the tiled layers
+            this.registry.histogram(CoverageTask.class.getName() + ".pixels").update(
+                    (long) coverageImage.getWidth() * coverageImage.getHeight());
+            final Graphics2D graphics = coverageImage.createGraphics();
+            try {
+                final List<TileDrawingTask> tasks = new ArrayList<>();
+                for (SingleTilePreparationInfo tileInfo : this.tilePreparationInfo.getSingleTiles()) {
+                    TileTask task;
+                    if (tileInfo.getTileRequest() != null) {
+                        task = new SingleTileLoaderTask(
                                 tileInfo.getTileRequest(), this.errorImage, tileInfo.getTileIndexX(),
                                 tileInfo.getTileIndexY(), this.failOnError, this.registry, this.jobId);
-                } else {
-                    task = new PlaceHolderImageTask(this.tiledLayer.getMissingTileImage(),
-                            tileInfo.getTileIndexX(), tileInfo.getTileIndexY());
+                    } else {
+                        task = new PlaceHolderImageTask(this.tiledLayer.getMissingTileImage(),
+                                tileInfo.getTileIndexX(), tileInfo.getTileIndexY());
+                    }
+                    tasks.add(new TileDrawingTask(task, graphics));
                 }
-                Tile tile = task.call();
-                if (tile.getImage() != null) {
-                    graphics.drawImage(tile.getImage(),
-                            tile.getxIndex() * this.tiledLayer.getTileSize().width,
-                            tile.getyIndex() * this.tiledLayer.getTileSize().height, null);
+
+                if (this.requestForkJoinPool == null) {
+                    for (TileDrawingTask task : tasks) {
+                        task.call();
+                    }
+                } else {
+                    // the tiles are already downloaded, decode them in parallel
+                    for (Future<Void> future : this.requestForkJoinPool.invokeAll(tasks)) {
+                        try {
+                            future.get();
+                        } catch (ExecutionException e) {
+                            throw ExceptionUtils.getRuntimeException(e.getCause());
+                        }
+                    }
                 }
+            } finally {
+                graphics.dispose();
             }
-            graphics.dispose();
 
             GridCoverageFactory factory = CoverageFactoryFinder.getGridCoverageFactory(null);
             GeneralEnvelope gridEnvelope = new GeneralEnvelope(this.tilePreparationInfo.getMapProjection());
@@ -120,6 +147,33 @@ public final class CoverageTask implements Callable<GridCoverage2D> {
     }
 
 
+    /**
+     * Loads a tile and draws it on the coverage image. The drawing is synchronized on the graphics since
+     * they are shared by all the tiles.
+     */
+    private final class TileDrawingTask implements Callable<Void> {
+        private final TileTask task;
+        private final Graphics2D graphics;
+
+        private TileDrawingTask(final TileTask task, final Graphics2D graphics) {
+            this.task = task;
+            this.graphics = graphics;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            final Tile tile = this.task.call();
+            if (tile.getImage() != null) {
+                final Dimension tileSize = CoverageTask.this.tiledLayer.getTileSize();
+                synchronized (this.graphics) {
+                    this.graphics.drawImage(tile.getImage(),
+                            tile.getxIndex() * tileSize.width, tile.getyIndex() * tileSize.height, null);
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      *
      * Tile Task.
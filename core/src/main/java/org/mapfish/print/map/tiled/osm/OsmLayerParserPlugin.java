@@ -13,6 +13,7 @@ import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Resource;
 
 /**
  * <p>Renders OpenStreetMap or other tiled layers.</p>
@@ -23,6 +24,8 @@ public final class OsmLayerParserPlugin extends AbstractGridCoverageLayerPlugin
         implements MapLayerFactoryPlugin<OsmLayerParam> {
     @Autowired
     private ForkJoinPool forkJoinPool;
+    @Resource(name = "requestForkJoinPool")
+    private ForkJoinPool requestForkJoinPool;
     @Autowired
     private MetricRegistry registry;
 
@@ -44,7 +47,7 @@ public final class OsmLayerParserPlugin extends AbstractGridCoverageLayerPlugin
             @Nonnull final Template template,
             @Nonnull final OsmLayerParam param) {
         String styleRef = param.rasterStyle;
-        return new OsmLayer(this.forkJoinPool,
+        return new OsmLayer(this.forkJoinPool, this.requestForkJoinPool,
                 super.<GridCoverage2D>createStyleSupplier(template, styleRef),
                 param, this.registry, template.getConfiguration());
     }
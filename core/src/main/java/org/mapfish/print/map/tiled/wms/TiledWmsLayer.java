@@ -33,6 +33,7 @@ public final class TiledWmsLayer extends AbstractTiledLayer {
      * Constructor.
      *
      * @param forkJoinPool the thread pool for doing the rendering.
+     * @param requestForkJoinPool the thread pool for decoding the tiles.
      * @param styleSupplier strategy for loading the style for this layer.
      * @param param the information needed to create WMS requests.
      * @param registry the metrics registry.
@@ -40,11 +41,12 @@ public final class TiledWmsLayer extends AbstractTiledLayer {
      */
     public TiledWmsLayer(
             @Nonnull final ForkJoinPool forkJoinPool,
+            @Nonnull final ForkJoinPool requestForkJoinPool,
             @Nonnull final StyleSupplier<GridCoverage2D> styleSupplier,
             @Nonnull final TiledWmsLayerParam param,
             @Nonnull final MetricRegistry registry,
             @Nonnull final Configuration configuration) {
-        super(forkJoinPool, styleSupplier, param, registry, configuration);
+        super(forkJoinPool, requestForkJoinPool, styleSupplier, param, registry, configuration);
         this.param = param;
     }
 
@@ -13,6 +13,7 @@ import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Resource;
 
 /**
  * <p>Renders tiled WMS layers.</p>
@@ -24,6 +25,8 @@ public final class TiledWmsLayerParserPlugin extends AbstractGridCoverageLayerPl
 
     @Autowired
     private ForkJoinPool forkJoinPool;
+    @Resource(name = "requestForkJoinPool")
+    private ForkJoinPool requestForkJoinPool;
     @Autowired
     private MetricRegistry registry;
 
@@ -45,7 +48,7 @@ public final class TiledWmsLayerParserPlugin extends AbstractGridCoverageLayerPl
             @Nonnull final Template template,
             @Nonnull final TiledWmsLayerParam param) {
         String styleRef = param.rasterStyle;
-        return new TiledWmsLayer(this.forkJoinPool,
+        return new TiledWmsLayer(this.forkJoinPool, this.requestForkJoinPool,
                 super.<GridCoverage2D>createStyleSupplier(template, styleRef),
                 param, this.registry, template.getConfiguration());
     }
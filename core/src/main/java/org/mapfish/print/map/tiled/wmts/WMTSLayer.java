@@ -41,6 +41,7 @@ public class WMTSLayer extends AbstractTiledLayer {
      * Constructor.
      *
      * @param forkJoinPool the thread pool for doing the rendering.
+     * @param requestForkJoinPool the thread pool for decoding the tiles.
      * @param styleSupplier strategy for loading the style for this layer
      * @param param the information needed to create WMTS requests.
      * @param registry the metrics registry.
@@ -48,11 +49,12 @@ public class WMTSLayer extends AbstractTiledLayer {
      */
     protected WMTSLayer(
             @Nullable final ForkJoinPool forkJoinPool,
+            @Nullable final ForkJoinPool requestForkJoinPool,
             @Nullable final StyleSupplier<GridCoverage2D> styleSupplier,
             @Nonnull final WMTSLayerParam param,
             @Nullable final MetricRegistry registry,
             @Nonnull final Configuration configuration) {
-        super(forkJoinPool, styleSupplier, param, registry, configuration);
+        super(forkJoinPool, requestForkJoinPool, styleSupplier, param, registry, configuration);
         this.param = param;
     }
 
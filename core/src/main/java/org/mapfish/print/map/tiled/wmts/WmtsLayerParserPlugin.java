@@ -13,6 +13,7 @@ import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Resource;
 
 /**
  * <p>Renders WMTS layers.</p>
@@ -23,6 +24,8 @@ public final class WmtsLayerParserPlugin extends AbstractGridCoverageLayerPlugin
         implements MapLayerFactoryPlugin<WMTSLayerParam> {
     @Autowired
     private ForkJoinPool forkJoinPool;
+    @Resource(name = "requestForkJoinPool")
+    private ForkJoinPool requestForkJoinPool;
     @Autowired
     private MetricRegistry registry;
 
@@ -44,7 +47,7 @@ public final class WmtsLayerParserPlugin extends AbstractGridCoverageLayerPlugin
             @Nonnull final Template template,
             @Nonnull final WMTSLayerParam param) {
         String styleRef = param.rasterStyle;
-        return new WMTSLayer(this.forkJoinPool,
+        return new WMTSLayer(this.forkJoinPool, this.requestForkJoinPool,
                 super.<GridCoverage2D>createStyleSupplier(template, styleRef),
                 param, this.registry, template.getConfiguration());
     }
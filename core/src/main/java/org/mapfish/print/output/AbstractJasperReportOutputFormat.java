@@ -27,15 +27,13 @@ import org.mapfish.print.config.WorkingDirectories;
 import org.mapfish.print.http.MfClientHttpRequestFactoryImpl;
 import org.mapfish.print.processor.http.MfClientHttpRequestFactoryProvider;
 import org.mapfish.print.processor.jasper.JasperReportBuilder;
+import org.mapfish.print.trace.JobTrace;
+import org.mapfish.print.trace.JobTraces;
 import org.mapfish.print.wrapper.json.PJsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -50,13 +48,12 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 
 /**
@@ -74,6 +71,8 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
     @Autowired
     private MfClientHttpRequestFactoryImpl httpRequestFactory;
 
+    private final Map<File, ReportTemplateDeclarations> declarationsCache = new ConcurrentHashMap<>();
+
     /**
      * Export the report to the output stream.
      *
@@ -93,7 +92,12 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
             throw new CancellationException();
         }
 
-        doExport(outputStream, print);
+        final JobTrace.Span span = JobTraces.span(jobId, "jasper", "export");
+        try {
+            doExport(outputStream, print);
+        } finally {
+            span.end();
+        }
     }
 
     private JasperFillManager getJasperFillManager(
@@ -175,8 +179,27 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
                 values.getObject(
                         Values.CLIENT_HTTP_REQUEST_FACTORY_KEY, MfClientHttpRequestFactoryProvider.class));
 
-        checkRequiredValues(config, values, template.getReportTemplate());
+        final ReportTemplateDeclarations declarations =
+                getDeclarations(config, jasperTemplateFile, template.getReportTemplate());
+        checkRequiredValues(declarations, values, template.getReportTemplate());
 
+        final JasperPrint print;
+        final JobTrace.Span span = JobTraces.span(jobId, "jasper", "fill");
+        try {
+            print = fill(template, values, fillManager, declarations, jasperTemplateBuild);
+        } finally {
+            span.end();
+        }
+        print.setProperty(Renderable.PROPERTY_IMAGE_DPI, String.valueOf(Math.round(maxDpi)));
+        return new Print(getLocalJasperReportsContext(
+                values.getObject(
+                    Values.CLIENT_HTTP_REQUEST_FACTORY_KEY, MfClientHttpRequestFactoryProvider.class)),
+                print, values, maxDpi);
+    }
+
+    private JasperPrint fill(final Template template, final Values values, final JasperFillManager fillManager,
+                             final ReportTemplateDeclarations declarations, final File jasperTemplateBuild)
+            throws JRException, SQLException {
         final JasperPrint print;
         if (template.getJdbcUrl() != null) {
             Connection connection;
@@ -215,51 +238,64 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
             } else {
                 dataSource = new JREmptyDataSource();
             }
-            checkRequiredFields(config, dataSource, template.getReportTemplate());
+            checkRequiredFields(declarations, dataSource, template.getReportTemplate());
             print = fillManager.fill(
                     jasperTemplateBuild.getAbsolutePath(),
                     values.asMap(),
                     dataSource);
         }
-        print.setProperty(Renderable.PROPERTY_IMAGE_DPI, String.valueOf(Math.round(maxDpi)));
-        return new Print(getLocalJasperReportsContext(
-                values.getObject(
-                    Values.CLIENT_HTTP_REQUEST_FACTORY_KEY, MfClientHttpRequestFactoryProvider.class)),
-                print, values, maxDpi);
+        return print;
+    }
+
+    /**
+     * Get the parameters and fields declared in the template, the result is cached until the template file
+     * is modified.
+     */
+    private ReportTemplateDeclarations getDeclarations(
+            final Configuration configuration, final File jasperTemplateFile, final String reportTemplate) {
+        final long lastModified = jasperTemplateFile.lastModified();
+        ReportTemplateDeclarations declarations = this.declarationsCache.get(jasperTemplateFile);
+        if (declarations == null || declarations.getLastModified() != lastModified) {
+            try {
+                declarations = ReportTemplateDeclarations.parse(
+                        configuration.loadFile(reportTemplate), lastModified);
+            } catch (Throwable e) {
+                throw ExceptionUtils.getRuntimeException(e);
+            }
+            this.declarationsCache.put(jasperTemplateFile, declarations);
+        }
+        return declarations;
     }
 
     private void checkRequiredFields(
-            final Configuration configuration, final JRDataSource dataSource, final String reportTemplate) {
+            final ReportTemplateDeclarations declarations, final JRDataSource dataSource,
+            final String reportTemplate) {
         if (dataSource instanceof JRRewindableDataSource) {
             JRRewindableDataSource source = (JRRewindableDataSource) dataSource;
             StringBuilder wrongType = new StringBuilder();
+            final List<JRDesignField> fields = new ArrayList<>(declarations.getFields().size());
+            for (ReportTemplateDeclarations.Declaration declaration: declarations.getFields()) {
+                JRDesignField field = new JRDesignField();
+                field.setName(declaration.getName());
+                fields.add(field);
+            }
             try {
                 while (source.next()) {
-                    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                    factory.setValidating(false);
-                    final DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-                    final byte[] bytes = configuration.loadFile(reportTemplate);
-                    final Document document = documentBuilder.parse(new ByteArrayInputStream(bytes));
-                    final NodeList parameters = document.getElementsByTagName("field");
-                    JRDesignField field = new JRDesignField();
-                    for (int i = 0; i < parameters.getLength(); i++) {
-                        final Element param = (Element) parameters.item(i);
-                        final String name = param.getAttribute("name");
-                        field.setName(name);
-                        Object record = dataSource.getFieldValue(field);
+                    for (int i = 0; i < fields.size(); i++) {
+                        final ReportTemplateDeclarations.Declaration declaration = declarations.getFields().get(i);
+                        Object record = dataSource.getFieldValue(fields.get(i));
                         if (record != null) {
-                            final String type = param.getAttribute("class");
-                            Class<?> clazz = Class.forName(type);
-                            if (!clazz.isInstance(record)) {
-                                wrongType.append("\t* ").append(name).append(" : ")
+                            if (!declaration.getType().isInstance(record)) {
+                                wrongType.append("\t* ").append(declaration.getName()).append(" : ")
                                         .append(record.getClass().getName());
-                                wrongType.append(" expected type: ").append(type).append("\n");
+                                wrongType.append(" expected type: ").append(declaration.getType().getName())
+                                        .append("\n");
                             }
                         } else {
                             LOGGER.warn(String.format(
                                     "The field %s in %s is not available in at least one" +
                                     " of the rows in the datasource.  This may not be an error.",
-                                    name, reportTemplate));
+                                    declaration.getName(), reportTemplate));
                         }
                     }
                 }
@@ -286,35 +322,22 @@ public abstract class AbstractJasperReportOutputFormat implements OutputFormat {
     }
 
     private void checkRequiredValues(
-            final Configuration configuration, final Values values, final String reportTemplate) {
+            final ReportTemplateDeclarations declarations, final Values values, final String reportTemplate) {
         StringBuilder missing = new StringBuilder();
         StringBuilder wrongType = new StringBuilder();
-        try {
-            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setValidating(false);
-            final DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-            final byte[] bytes = configuration.loadFile(reportTemplate);
-            final Document document = documentBuilder.parse(new ByteArrayInputStream(bytes));
-            final NodeList parameters = document.getElementsByTagName("parameter");
-            for (int i = 0; i < parameters.getLength(); i++) {
-                final Element param = (Element) parameters.item(i);
-                final String name = param.getAttribute("name");
-                if (!values.containsKey(name)) {
-                    if (param.getElementsByTagName("defaultValueExpression").getLength() == 0) {
-                        missing.append("\t* ").append(name).append("\n");
-                    }
-                } else {
-                    final String type = param.getAttribute("class");
-                    Class<?> clazz = Class.forName(type);
-                    Object value = values.getObject(name, Object.class);
-                    if (!clazz.isInstance(value)) {
-                        wrongType.append("\t* ").append(name).append(" : ").append(value.getClass().getName());
-                        wrongType.append(" expected type: ").append(type).append("\n");
-                    }
+        for (ReportTemplateDeclarations.Declaration declaration: declarations.getParameters()) {
+            final String name = declaration.getName();
+            if (!values.containsKey(name)) {
+                if (!declaration.hasDefault()) {
+                    missing.append("\t* ").append(name).append("\n");
+                }
+            } else {
+                Object value = values.getObject(name, Object.class);
+                if (!declaration.getType().isInstance(value)) {
+                    wrongType.append("\t* ").append(name).append(" : ").append(value.getClass().getName());
+                    wrongType.append(" expected type: ").append(declaration.getType().getName()).append("\n");
                 }
             }
-        } catch (Throwable e) {
-            throw ExceptionUtils.getRuntimeException(e);
         }
 
         StringBuilder finalError = new StringBuilder();
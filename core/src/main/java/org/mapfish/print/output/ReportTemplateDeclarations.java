@@ -0,0 +1,112 @@
+package org.mapfish.print.output;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * The parameters and fields declared in a jasper report template (jrxml), used to validate the values of a
+ * print before filling the report.
+ * <p></p>
+ * The classes of the declarations are resolved when the template is read so the declarations can be checked
+ * for every print (and every row of the table) without touching the XML again.
+ */
+final class ReportTemplateDeclarations {
+    private final long lastModified;
+    private final List<Declaration> parameters;
+    private final List<Declaration> fields;
+
+    private ReportTemplateDeclarations(
+            final long lastModified, final List<Declaration> parameters, final List<Declaration> fields) {
+        this.lastModified = lastModified;
+        this.parameters = parameters;
+        this.fields = fields;
+    }
+
+    /**
+     * Read the declarations of a template.
+     *
+     * @param bytes the content of the jrxml file.
+     * @param lastModified the modification time of the file, used to know if the declarations are still
+     *         valid.
+     */
+    static ReportTemplateDeclarations parse(final byte[] bytes, final long lastModified) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setValidating(false);
+        final DocumentBuilder documentBuilder = factory.newDocumentBuilder();
+        final Document document = documentBuilder.parse(new ByteArrayInputStream(bytes));
+        return new ReportTemplateDeclarations(lastModified,
+                getDeclarations(document, "parameter"), getDeclarations(document, "field"));
+    }
+
+    private static List<Declaration> getDeclarations(final Document document, final String tagName)
+            throws ClassNotFoundException {
+        final NodeList elements = document.getElementsByTagName(tagName);
+        final List<Declaration> result = new ArrayList<>(elements.getLength());
+        for (int i = 0; i < elements.getLength(); i++) {
+            final Element element = (Element) elements.item(i);
+            result.add(new Declaration(element.getAttribute("name"),
+                    Class.forName(element.getAttribute("class")),
+                    element.getElementsByTagName("defaultValueExpression").getLength() > 0));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The modification time of the template file when it was read.
+     */
+    long getLastModified() {
+        return this.lastModified;
+    }
+
+    /**
+     * The declared parameters.
+     */
+    List<Declaration> getParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * The declared fields.
+     */
+    List<Declaration> getFields() {
+        return this.fields;
+    }
+
+    /**
+     * A parameter or a field of the template.
+     */
+    static final class Declaration {
+        private final String name;
+        private final Class<?> type;
+        private final boolean hasDefault;
+
+        private Declaration(final String name, final Class<?> type, final boolean hasDefault) {
+            this.name = name;
+            this.type = type;
+            this.hasDefault = hasDefault;
+        }
+
+        String getName() {
+            return this.name;
+        }
+
+        Class<?> getType() {
+            return this.type;
+        }
+
+        /**
+         * True if the declaration has a default value expression.
+         */
+        boolean hasDefault() {
+            return this.hasDefault;
+        }
+    }
+}
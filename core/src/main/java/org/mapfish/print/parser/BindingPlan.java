@@ -0,0 +1,238 @@
+package org.mapfish.print.parser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * The reflection information needed to bind values to the attributes of a class (see {@link ParserUtils}).
+ * <p></p>
+ * The plans are computed once per class and cached, so the parsing of the requests and the execution of the
+ * processors don't have to inspect the classes again and again.
+ */
+public final class BindingPlan {
+    private static final String POST_CONSTRUCT_METHOD_NAME = "postConstruct";
+    private static final ConcurrentMap<Class<?>, BindingPlan> PLANS = new ConcurrentHashMap<>();
+
+    private final Class<?> type;
+    private final List<Binding> bindings;
+    private final List<Binding> writableBindings;
+    private final List<Binding> oneOfBindings;
+    private final List<Binding> requiresBindings;
+    private final Set<String> allNames;
+    private final Set<String> writableNames;
+    private final Set<String> acceptedKeys;
+    private final Method postConstruct;
+
+    private BindingPlan(final Class<?> type) {
+        this.type = type;
+        final ImmutableList.Builder<Binding> all = ImmutableList.builder();
+        final ImmutableList.Builder<Binding> writable = ImmutableList.builder();
+        final ImmutableList.Builder<Binding> oneOf = ImmutableList.builder();
+        final ImmutableList.Builder<Binding> requires = ImmutableList.builder();
+        final ImmutableSet.Builder<String> allNamesBuilder = ImmutableSet.builder();
+        final ImmutableSet.Builder<String> writableNamesBuilder = ImmutableSet.builder();
+        final ImmutableSet.Builder<String> acceptedKeysBuilder = ImmutableSet.builder();
+        for (Field field : ParserUtils.getAllAttributes(type)) {
+            final Binding binding = new Binding(field);
+            all.add(binding);
+            allNamesBuilder.add(binding.name);
+            if (!binding.isFinal) {
+                writable.add(binding);
+                writableNamesBuilder.add(binding.name);
+                acceptedKeysBuilder.add(binding.lowerCaseName);
+                if (binding.isOneOfChoice) {
+                    oneOf.add(binding);
+                }
+                if (binding.hasRequirements) {
+                    requires.add(binding);
+                }
+            }
+        }
+        this.bindings = all.build();
+        this.writableBindings = writable.build();
+        this.oneOfBindings = oneOf.build();
+        this.requiresBindings = requires.build();
+        this.allNames = allNamesBuilder.build();
+        this.writableNames = writableNamesBuilder.build();
+        this.acceptedKeys = acceptedKeysBuilder.build();
+
+        Method method;
+        try {
+            method = type.getMethod(POST_CONSTRUCT_METHOD_NAME);
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        this.postConstruct = method;
+    }
+
+    /**
+     * Get the (cached) plan of a class.
+     *
+     * @param type the class to inspect
+     */
+    public static BindingPlan of(final Class<?> type) {
+        BindingPlan plan = PLANS.get(type);
+        if (plan == null) {
+            plan = new BindingPlan(type);
+            final BindingPlan previous = PLANS.putIfAbsent(type, plan);
+            if (previous != null) {
+                plan = previous;
+            }
+        }
+        return plan;
+    }
+
+    public Class<?> getType() {
+        return this.type;
+    }
+
+    /**
+     * All the attributes, see {@link ParserUtils#getAllAttributes(Class)}.
+     */
+    public List<Binding> getBindings() {
+        return this.bindings;
+    }
+
+    /**
+     * The non final attributes.
+     */
+    public List<Binding> getWritableBindings() {
+        return this.writableBindings;
+    }
+
+    /**
+     * The non final attributes that are part of a {@link OneOf} group.
+     */
+    public List<Binding> getOneOfBindings() {
+        return this.oneOfBindings;
+    }
+
+    /**
+     * The non final attributes that have {@link Requires} dependencies.
+     */
+    public List<Binding> getRequiresBindings() {
+        return this.requiresBindings;
+    }
+
+    /**
+     * The names of all the attributes.
+     */
+    public Set<String> getAllNames() {
+        return this.allNames;
+    }
+
+    /**
+     * The names of the non final attributes.
+     */
+    public Set<String> getWritableNames() {
+        return this.writableNames;
+    }
+
+    /**
+     * Return true if the key (case insensitive) is the name of a non final attribute.
+     *
+     * @param key the key in the request data
+     */
+    public boolean accepts(final String key) {
+        return this.acceptedKeys.contains(key.toLowerCase());
+    }
+
+    /**
+     * The public postConstruct method of the class or null.
+     */
+    @Nullable
+    public Method getPostConstruct() {
+        return this.postConstruct;
+    }
+
+    @Override
+    public String toString() {
+        return "BindingPlan{" + this.type.getName() + ", " + this.allNames + "}";
+    }
+
+    /**
+     * An attribute of the class.
+     */
+    public static final class Binding {
+        private final Field field;
+        private final String name;
+        private final String lowerCaseName;
+        private final Class<?> type;
+        private final boolean isFinal;
+        private final boolean hasDefaultValue;
+        private final boolean isOneOfChoice;
+        private final boolean isOptional;
+        private final boolean hasRequirements;
+
+        private Binding(final Field field) {
+            this.field = field;
+            this.name = field.getName();
+            this.lowerCaseName = this.name.toLowerCase();
+            this.type = field.getType();
+            this.isFinal = Modifier.isFinal(field.getModifiers());
+            this.hasDefaultValue = field.getAnnotation(HasDefaultValue.class) != null;
+            this.isOneOfChoice = field.getAnnotation(OneOf.class) != null ||
+                    field.getAnnotation(CanSatisfyOneOf.class) != null;
+            this.isOptional = this.hasDefaultValue || this.isOneOfChoice;
+            this.hasRequirements = field.getAnnotation(Requires.class) != null;
+        }
+
+        /**
+         * The field, the values have to be get or set by the caller (the access checks depend on it).
+         */
+        public Field getField() {
+            return this.field;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getLowerCaseName() {
+            return this.lowerCaseName;
+        }
+
+        public Class<?> getType() {
+            return this.type;
+        }
+
+        public boolean isFinal() {
+            return this.isFinal;
+        }
+
+        /**
+         * True if the field is annotated with {@link HasDefaultValue}.
+         */
+        public boolean hasDefaultValue() {
+            return this.hasDefaultValue;
+        }
+
+        /**
+         * True if the field is part of a {@link OneOf} group.
+         */
+        public boolean isOneOfChoice() {
+            return this.isOneOfChoice;
+        }
+
+        /**
+         * True if the field may be missing from the request data (default value or {@link OneOf} choice).
+         */
+        public boolean isOptional() {
+            return this.isOptional;
+        }
+
+        @Override
+        public String toString() {
+            return this.field.toString();
+        }
+    }
+}
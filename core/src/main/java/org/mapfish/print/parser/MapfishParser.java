@@ -13,7 +13,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
@@ -23,10 +22,6 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 
-import static org.mapfish.print.parser.ParserUtils.FILTER_NON_FINAL_FIELDS;
-import static org.mapfish.print.parser.ParserUtils.getAllAttributeNames;
-import static org.mapfish.print.parser.ParserUtils.getAttributeNames;
-
 /**
  * This class parses json parameter objects into the parameter object taken by
  * {@link org.mapfish.print.map.MapLayerFactoryPlugin}
@@ -60,19 +55,28 @@ public final class MapfishParser {
      */
     public static void parse(final boolean errorOnExtraProperties, final PObject requestData, final Object objectToPopulate,
                       final String... extraPropertyToIgnore) {
-        checkForExtraProperties(errorOnExtraProperties, objectToPopulate.getClass(), requestData, extraPropertyToIgnore);
+        final BindingPlan plan = BindingPlan.of(objectToPopulate.getClass());
+        checkForExtraProperties(errorOnExtraProperties, plan, requestData, extraPropertyToIgnore);
 
-        final Collection<Field> allAttributes = ParserUtils.getAttributes(objectToPopulate.getClass(), FILTER_NON_FINAL_FIELDS);
         Map<String, Class<?>> missingProperties = Maps.newHashMap();
 
         final OneOfTracker oneOfTracker = new OneOfTracker();
         final RequiresTracker requiresTracker = new RequiresTracker();
-        for (Field attribute : allAttributes) {
-            oneOfTracker.register(attribute);
-            requiresTracker.register(attribute);
+        for (BindingPlan.Binding attribute : plan.getOneOfBindings()) {
+            oneOfTracker.register(attribute.getField());
+        }
+        for (BindingPlan.Binding attribute : plan.getRequiresBindings()) {
+            requiresTracker.register(attribute.getField());
         }
 
-        for (Field property : allAttributes) {
+        final boolean hasRequirements = !plan.getRequiresBindings().isEmpty();
+        for (BindingPlan.Binding property : plan.getWritableBindings()) {
+            if (!requestData.has(property.getName()) && !requestData.has(property.getLowerCaseName())) {
+                if (!property.isOptional()) {
+                    missingProperties.put(property.getName(), property.getType());
+                }
+                continue;
+            }
             try {
                 Object value;
                 try {
@@ -91,18 +95,19 @@ public final class MapfishParser {
                                                " " +
                                                "parseValue and parseArrayValue in this class and add a test to the test class", e);
                 }
+                if (property.isOneOfChoice()) {
+                    oneOfTracker.markAsVisited(property.getField());
+                }
+                if (hasRequirements) {
+                    requiresTracker.markAsVisited(property.getField());
+                }
                 try {
-                    oneOfTracker.markAsVisited(property);
-                    requiresTracker.markAsVisited(property);
-                    property.set(objectToPopulate, value);
+                    property.getField().set(objectToPopulate, value);
                 } catch (IllegalAccessException e) {
                     throw ExceptionUtils.getRuntimeException(e);
                 }
             } catch (ObjectMissingException e) {
-                final HasDefaultValue hasDefaultValue = property.getAnnotation(HasDefaultValue.class);
-                final OneOf oneOf = property.getAnnotation(OneOf.class);
-                final CanSatisfyOneOf canSatisfyOneOf = property.getAnnotation(CanSatisfyOneOf.class);
-                if (hasDefaultValue == null && oneOf == null && canSatisfyOneOf == null) {
+                if (!property.isOptional()) {
                     missingProperties.put(property.getName(), property.getType());
                 }
             }
@@ -113,15 +118,17 @@ public final class MapfishParser {
 
         if (!missingProperties.isEmpty()) {
             String message = "Request Json is missing some required attributes at: '" + requestData.getCurrentPath() + "': ";
-            throw new MissingPropertyException(message, missingProperties, getAllAttributeNames(objectToPopulate.getClass()));
+            throw new MissingPropertyException(message, missingProperties, plan.getAllNames());
         }
 
+        final Method method = plan.getPostConstruct();
+        if (method == null) {
+            LOGGER.debug("No " + POST_CONSTRUCT_METHOD_NAME + " method on parameter object.");
+            return;
+        }
         try {
-            final Method method = objectToPopulate.getClass().getMethod(POST_CONSTRUCT_METHOD_NAME);
             LOGGER.debug("Executing " + POST_CONSTRUCT_METHOD_NAME + " method on parameter object.");
             method.invoke(objectToPopulate);
-        } catch (NoSuchMethodException e) {
-            LOGGER.debug("No " + POST_CONSTRUCT_METHOD_NAME + " method on parameter object.");
         } catch (InvocationTargetException e) {
             final Throwable targetException = e.getTargetException();
             if (targetException instanceof RuntimeException) {
@@ -135,31 +142,32 @@ public final class MapfishParser {
         }
     }
 
-    private static void checkForExtraProperties(final boolean errorOnExtraProperties, final Class<?> paramClass,
+    private static void checkForExtraProperties(final boolean errorOnExtraProperties, final BindingPlan plan,
                                          final PObject layer, final String[] extraPropertyToIgnore) {
-        final Collection<String> acceptableKeyValues = Sets.newHashSet();
-        for (String name : getAttributeNames(paramClass, FILTER_NON_FINAL_FIELDS)) {
-            acceptableKeyValues.add(name.toLowerCase());
-        }
-        if (extraPropertyToIgnore != null) {
+        Collection<String> extraPropertiesToIgnore = null;
+        if (extraPropertyToIgnore != null && extraPropertyToIgnore.length > 0) {
+            extraPropertiesToIgnore = Sets.newHashSet();
             for (String propName : extraPropertyToIgnore) {
-                acceptableKeyValues.add(propName.toLowerCase());
+                extraPropertiesToIgnore.add(propName.toLowerCase());
             }
         }
 
-        Collection<String> extraProperties = Sets.newHashSet();
+        Collection<String> extraProperties = null;
         @SuppressWarnings("unchecked")
         final Iterator<String> keys = layer.keys();
         while (keys.hasNext()) {
             String next = keys.next();
-            if (!acceptableKeyValues.contains(next.toLowerCase())) {
+            if (!plan.accepts(next) &&
+                    (extraPropertiesToIgnore == null || !extraPropertiesToIgnore.contains(next.toLowerCase()))) {
+                if (extraProperties == null) {
+                    extraProperties = Sets.newHashSet();
+                }
                 extraProperties.add(next);
             }
         }
-        if (!extraProperties.isEmpty()) {
+        if (extraProperties != null) {
             String msg = "Extra properties were found in the request data at: " + layer.getCurrentPath() + ": ";
-            ExtraPropertyException exception = new ExtraPropertyException(msg, extraProperties, getAttributeNames(paramClass,
-                    field -> true));
+            ExtraPropertyException exception = new ExtraPropertyException(msg, extraProperties, plan.getAllNames());
             if (errorOnExtraProperties) {
                 throw exception;
             } else {
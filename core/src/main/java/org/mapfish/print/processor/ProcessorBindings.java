@@ -0,0 +1,78 @@
+package org.mapfish.print.processor;
+
+import com.google.common.collect.BiMap;
+import org.mapfish.print.parser.BindingPlan;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The attributes of the input or output object of a processor, with the names of the corresponding values.
+ * <p></p>
+ * The names depend on the mappers and the prefix of the processor, so they are resolved once and reused for
+ * all the executions of the processor (see {@link ProcessorUtils}). This means the mappers must not be
+ * modified once the processor has been executed.
+ */
+final class ProcessorBindings {
+    private final Class<?> type;
+    private final BindingPlan.Binding[] bindings;
+    private final String[] names;
+
+    private ProcessorBindings(final Class<?> type, final List<BindingPlan.Binding> bindings) {
+        this.type = type;
+        this.bindings = bindings.toArray(new BindingPlan.Binding[bindings.size()]);
+        this.names = new String[this.bindings.length];
+    }
+
+    /**
+     * Resolve the names of the input values.
+     *
+     * @param processor the processor
+     * @param type the type of the input object
+     */
+    static ProcessorBindings forInput(final Processor<?, ?> processor, final Class<?> type) {
+        final ProcessorBindings result = new ProcessorBindings(type, BindingPlan.of(type).getBindings());
+        final BiMap<String, String> inputMapper = processor.getInputMapperBiMap();
+        for (int i = 0; i < result.bindings.length; i++) {
+            result.names[i] = ProcessorUtils.getInputValueName(processor.getOutputPrefix(), inputMapper,
+                    result.bindings[i].getName());
+        }
+        return result;
+    }
+
+    /**
+     * Resolve the names of the output values.
+     *
+     * @param processor the processor
+     * @param type the type of the output object
+     */
+    static ProcessorBindings forOutput(final Processor<?, ?> processor, final Class<?> type) {
+        final ProcessorBindings result = new ProcessorBindings(type, BindingPlan.of(type).getBindings());
+        Map<String, String> outputMapper = processor.getOutputMapperBiMap();
+        if (outputMapper == null) {
+            outputMapper = Collections.emptyMap();
+        }
+        for (int i = 0; i < result.bindings.length; i++) {
+            result.names[i] = ProcessorUtils.getOutputValueName(processor.getOutputPrefix(), outputMapper,
+                    result.bindings[i].getField());
+        }
+        return result;
+    }
+
+    public Class<?> getType() {
+        return this.type;
+    }
+
+    public int size() {
+        return this.bindings.length;
+    }
+
+    public BindingPlan.Binding getBinding(final int index) {
+        return this.bindings[index];
+    }
+
+    public String getName(final int index) {
+        return this.names[index];
+    }
+}
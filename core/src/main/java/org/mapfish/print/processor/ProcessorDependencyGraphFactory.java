@@ -12,6 +12,7 @@ import org.mapfish.print.attribute.HttpRequestHeadersAttribute;
 import org.mapfish.print.config.PDFConfig;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.output.Values;
+import org.mapfish.print.parser.BindingPlan;
 import org.mapfish.print.parser.HasDefaultValue;
 import org.mapfish.print.parser.ParserUtils;
 import org.mapfish.print.processor.http.MfClientHttpRequestFactoryProvider;
@@ -27,8 +28,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
-import static org.mapfish.print.parser.ParserUtils.getAllAttributes;
-
 /**
  * Class for constructing {@link org.mapfish.print.processor.ProcessorDependencyGraph} instances.
  * <p></p>
@@ -196,10 +195,9 @@ public final class ProcessorDependencyGraphFactory {
                     "One or more of the input mapping values of '" + processor + "'  do not match an input" +
                             " parameter.  The bad mappings are");
 
-            final Collection<Field> allProperties = getAllAttributes(inputParameter.getClass());
-            for (Field field : allProperties) {
-                String name = ProcessorUtils.getInputValueName(processor.getInputPrefix(), inputMapper, field.getName());
-                inputs.add(new InputValue(name, field));
+            for (BindingPlan.Binding binding : BindingPlan.of(inputParameter.getClass()).getBindings()) {
+                String name = ProcessorUtils.getInputValueName(processor.getInputPrefix(), inputMapper, binding.getName());
+                inputs.add(new InputValue(name, binding.getField()));
             }
         }
 
@@ -214,8 +212,8 @@ public final class ProcessorDependencyGraphFactory {
         final Class<?> paramType = processor.getOutputType();
         verifyAllMappingsMatchParameter(mappings, paramType, "One or more of the output mapping keys of '"
                 + processor + "' do not match an output parameter.  The bad mappings are: ");
-        final Collection<Field> allProperties = getAllAttributes(paramType);
-        for (Field field : allProperties) {
+        for (BindingPlan.Binding binding : BindingPlan.of(paramType).getBindings()) {
+            final Field field = binding.getField();
             // if the field is annotated with @DebugValue, it can be renamed automatically in a
             // mapping in case of a conflict.
             final boolean canBeRenamed = field.getAnnotation(InternalValue.class) != null;
@@ -9,6 +9,8 @@ import com.google.common.collect.Sets;
 import com.vividsolutions.jts.util.Assert;
 import org.mapfish.print.ExceptionUtils;
 import org.mapfish.print.output.Values;
+import org.mapfish.print.trace.JobTrace;
+import org.mapfish.print.trace.JobTraces;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -191,6 +193,8 @@ public final class ProcessorGraphNode<In, Out> {
             final String name = String.format("%s.compute.%s",
                     ProcessorGraphNode.class.getName(), process.getClass().getName());
             Timer.Context timerContext = registry.timer(name).time();
+            final JobTrace.Span span = JobTraces.span(this.execContext.getJobId(), "processor",
+                    process.getClass().getSimpleName());
             try {
                 final In inputParameter = ProcessorUtils.populateInputParameter(process, values);
 
@@ -214,6 +218,7 @@ public final class ProcessorGraphNode<In, Out> {
                     ProcessorUtils.writeProcessorOutputToValues(output, process, values);
                 }
             } finally {
+                span.end();
                 this.execContext.finished(this.node);
                 final long processorTime = TimeUnit.MILLISECONDS.convert(
                         timerContext.stop(), TimeUnit.NANOSECONDS);
@@ -1,28 +1,39 @@
 package org.mapfish.print.processor;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.BiMap;
+import com.google.common.collect.ImmutableSet;
 
 import org.mapfish.print.ExceptionUtils;
 import org.mapfish.print.output.Values;
-import org.mapfish.print.parser.HasDefaultValue;
+import org.mapfish.print.parser.BindingPlan;
 
 import java.lang.reflect.Field;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import static org.mapfish.print.parser.ParserUtils.getAllAttributes;
-
 /**
  * Shared methods for working with processor.
  */
 public final class ProcessorUtils {
+    private static final Set<String> DEFAULT_VALUE_KEYS = ImmutableSet.of(
+            Values.TASK_DIRECTORY_KEY, Values.CLIENT_HTTP_REQUEST_FACTORY_KEY,
+            Values.TEMPLATE_KEY, Values.PDF_CONFIG_KEY, Values.SUBREPORT_DIR_KEY,
+            Values.OUTPUT_FORMAT_KEY, Values.JOB_ID_KEY);
+
+    // The names only depend on the configuration of the processors, the keys are weak so the bindings go away
+    // with the configuration.
+    private static final Cache<Processor<?, ?>, ProcessorBindings> INPUT_BINDINGS =
+            CacheBuilder.newBuilder().weakKeys().build();
+    private static final Cache<Processor<?, ?>, ProcessorBindings> OUTPUT_BINDINGS =
+            CacheBuilder.newBuilder().weakKeys().build();
+
     private ProcessorUtils() {
         // do nothing
     }
@@ -42,19 +53,19 @@ public final class ProcessorUtils {
             @Nonnull final Values values) {
         In inputObject = processor.createInputParameter();
         if (inputObject != null) {
-            Collection<Field> fields = getAllAttributes(inputObject.getClass());
-            for (Field field : fields) {
-                String name = getInputValueName(processor.getOutputPrefix(),
-                        processor.getInputMapperBiMap(), field.getName());
+            final ProcessorBindings bindings = getBindings(INPUT_BINDINGS, processor, inputObject.getClass(), true);
+            for (int i = 0; i < bindings.size(); i++) {
+                final BindingPlan.Binding field = bindings.getBinding(i);
+                final String name = bindings.getName(i);
                 Object value = values.getObject(name, Object.class);
                 if (value != null) {
                     try {
-                        field.set(inputObject, value);
+                        field.getField().set(inputObject, value);
                     } catch (IllegalAccessException e) {
                         throw ExceptionUtils.getRuntimeException(e);
                     }
                 } else {
-                    if (field.getAnnotation(HasDefaultValue.class) == null) {
+                    if (!field.hasDefaultValue()) {
                         throw new NoSuchElementException(name + " is a required property for " + processor
                                 + " and therefore must be defined in the Request Data or be an output of " +
                                 "one of the other processors. Available values: " +
@@ -76,20 +87,14 @@ public final class ProcessorUtils {
             final Object output,
             final Processor<?, ?> processor,
             final Values values) {
-        Map<String, String> mapper = processor.getOutputMapperBiMap();
-        if (mapper == null) {
-            mapper = Collections.emptyMap();
-        }
-
-        final Collection<Field> fields = getAllAttributes(output.getClass());
-        for (Field field : fields) {
-            String name = getOutputValueName(processor.getOutputPrefix(), mapper, field);
+        final ProcessorBindings bindings = getBindings(OUTPUT_BINDINGS, processor, output.getClass(), false);
+        for (int i = 0; i < bindings.size(); i++) {
             try {
-                final Object value = field.get(output);
+                final Object value = bindings.getBinding(i).getField().get(output);
                 if (value != null) {
-                    values.put(name, value);
+                    values.put(bindings.getName(i), value);
                 } else {
-                    values.remove(name);
+                    values.remove(bindings.getName(i));
                 }
             } catch (IllegalAccessException e) {
                 throw ExceptionUtils.getRuntimeException(e);
@@ -97,6 +102,17 @@ public final class ProcessorUtils {
         }
     }
 
+    private static ProcessorBindings getBindings(
+            final Cache<Processor<?, ?>, ProcessorBindings> cache, final Processor<?, ?> processor,
+            final Class<?> type, final boolean input) {
+        ProcessorBindings bindings = cache.getIfPresent(processor);
+        if (bindings == null || bindings.getType() != type) {
+            bindings = input ? ProcessorBindings.forInput(processor, type) : ProcessorBindings.forOutput(processor, type);
+            cache.put(processor, bindings);
+        }
+        return bindings;
+    }
+
     /**
      * Calculate the name of the input value.
      *
@@ -112,12 +128,7 @@ public final class ProcessorUtils {
             if (inputMapper != null && inputMapper.containsKey(field)) {
                 throw new RuntimeException("field in keys");
             }
-            final String[] defaultValues = {
-                Values.TASK_DIRECTORY_KEY, Values.CLIENT_HTTP_REQUEST_FACTORY_KEY,
-                Values.TEMPLATE_KEY, Values.PDF_CONFIG_KEY, Values.SUBREPORT_DIR_KEY,
-                Values.OUTPUT_FORMAT_KEY, Values.JOB_ID_KEY
-            };
-            if (inputPrefix == null || Arrays.asList(defaultValues).contains(field)) {
+            if (inputPrefix == null || DEFAULT_VALUE_KEYS.contains(field)) {
                 name = field;
             } else {
                 name = inputPrefix.trim() +
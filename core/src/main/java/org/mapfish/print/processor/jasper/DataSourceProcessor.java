@@ -24,9 +24,11 @@ import org.mapfish.print.wrapper.json.PJsonObject;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +69,10 @@ import static org.mapfish.print.attribute.DataSourceAttribute.DataSourceAttribut
  *
  * <p>If reportKey is defined the reportTemplate must also be defined (and vice-versa).</p>
  *
+ * <p>At most maxParallelRows rows are processed at the same time, the next rows are started as the first ones are
+ * done. This limits the memory used by the big datasources (a paging with hundreds of pages for example) and
+ * leaves the thread pool to the other jobs.</p>
+ *
  * <p>See also: <a href="attributes.html#!datasource">!datasource</a> attribute</p>
  * [[examples=verboseExample,datasource_dynamic_tables,datasource_many_dynamictables_legend,
  * datasource_multiple_maps,customDynamicReport,report]]
@@ -75,6 +81,11 @@ public final class DataSourceProcessor
         extends AbstractProcessor<DataSourceProcessor.Input, DataSourceProcessor.Output>
         implements RequireAttributes, CustomDependencies {
 
+    /**
+     * The default maximum number of rows processed at the same time.
+     */
+    public static final int DEFAULT_MAX_PARALLEL_ROWS = Runtime.getRuntime().availableProcessors();
+
     private Map<String, Attribute> internalAttributes = Maps.newHashMap();
     private Map<String, Attribute> allAttributes = Maps.newHashMap();
 
@@ -88,6 +99,7 @@ public final class DataSourceProcessor
 
     private String reportTemplate;
     private String reportKey;
+    private int maxParallelRows = DEFAULT_MAX_PARALLEL_ROWS;
 
     /**
      * Constructor.
@@ -128,6 +140,19 @@ public final class DataSourceProcessor
         this.reportKey = reportKey;
     }
 
+    /**
+     * The maximum number of rows processed at the same time. Default is the number of processors.
+     *
+     * @param maxParallelRows the number of rows
+     */
+    public void setMaxParallelRows(final int maxParallelRows) {
+        this.maxParallelRows = maxParallelRows;
+    }
+
+    public int getMaxParallelRows() {
+        return this.maxParallelRows;
+    }
+
     /**
      * All the processors that will executed for each value retrieved from the
      * {@link org.mapfish.print.output.Values} object with the datasource name.  All output values from the
@@ -213,48 +238,63 @@ public final class DataSourceProcessor
 
     private JRDataSource processInput(@Nonnull final Input input)
             throws JSONException, JRException {
-        List<Values> dataSourceValues = Lists.newArrayList();
-        for (Map<String, Object> o : input.datasource.attributesValues) {
-            // copy only the required values
-            Values rowValues = new Values(input.values);
-            for (String attributeName: this.copyAttributes) {
-                rowValues.put(attributeName, input.values.getObject(attributeName, Object.class));
-            }
-            for (Map.Entry<String, Object> entry : o.entrySet()) {
-                rowValues.put(entry.getKey(), entry.getValue());
-            }
-
-            dataSourceValues.add(rowValues);
+        final Map<String, Object>[] attributesValues = input.datasource.attributesValues;
+        if (attributesValues.length == 0) {
+            return null;
+        }
+        final File reportFile;
+        if (this.reportTemplate != null) {
+            final Configuration configuration = input.template.getConfiguration();
+            final File file = new File(configuration.getDirectory(), this.reportTemplate);
+            reportFile = this.jasperReportBuilder.compileJasperReport(configuration, file);
+        } else {
+            reportFile = null;
         }
 
-        List<ForkJoinTask<Values>> futures = Lists.newArrayList();
-        if (!dataSourceValues.isEmpty()) {
-            for (Values dataSourceValue : dataSourceValues) {
-                addAttributes(input.template, dataSourceValue);
-                final ForkJoinTask<Values> taskFuture = this.processorGraph.createTask(dataSourceValue).fork();
-                futures.add(taskFuture);
+        // the rows are started in order and a new one is started each time the oldest one is done, the tasks
+        // (and their values) of the finished rows are released right away
+        final List<Map<String, ?>> rows = new ArrayList<Map<String, ?>>(attributesValues.length);
+        final Deque<ForkJoinTask<Values>> runningRows = new ArrayDeque<>();
+        try {
+            for (Map<String, Object> o : attributesValues) {
+                if (runningRows.size() >= this.maxParallelRows) {
+                    rows.add(getRow(runningRows.poll(), reportFile));
+                }
+                final Values rowValues = createRowValues(input, o);
+                addAttributes(input.template, rowValues);
+                runningRows.add(this.processorGraph.createTask(rowValues).fork());
             }
-            final File reportFile;
-            if (this.reportTemplate != null) {
-                final Configuration configuration = input.template.getConfiguration();
-                final File file = new File(configuration.getDirectory(), this.reportTemplate);
-                reportFile = this.jasperReportBuilder.compileJasperReport(configuration, file);
-            } else {
-                reportFile = null;
+            while (!runningRows.isEmpty()) {
+                rows.add(getRow(runningRows.poll(), reportFile));
             }
-            List<Map<String, ?>> rows = new ArrayList<Map<String, ?>>();
-
-            for (ForkJoinTask<Values> future : futures) {
-                final Values rowData = future.join();
-                if (reportFile != null) {
-                        rowData.put(this.reportKey, reportFile.getAbsolutePath());
-                }
-                rows.add(rowData.asMap());
+        } finally {
+            // the job failed or was cancelled
+            for (ForkJoinTask<Values> runningRow : runningRows) {
+                runningRow.cancel(true);
             }
+        }
 
-            return new JRMapCollectionDataSource(rows);
+        return new JRMapCollectionDataSource(rows);
+    }
+
+    private Values createRowValues(@Nonnull final Input input, @Nonnull final Map<String, Object> row) {
+        // copy only the required values
+        Values rowValues = new Values(input.values);
+        for (String attributeName: this.copyAttributes) {
+            rowValues.put(attributeName, input.values.getObject(attributeName, Object.class));
         }
-        return null;
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            rowValues.put(entry.getKey(), entry.getValue());
+        }
+        return rowValues;
+    }
+
+    private Map<String, ?> getRow(@Nonnull final ForkJoinTask<Values> task, @Nullable final File reportFile) {
+        final Values rowData = task.join();
+        if (reportFile != null) {
+            rowData.put(this.reportKey, reportFile.getAbsolutePath());
+        }
+        return rowData.asMap();
     }
 
     private void addAttributes(@Nonnull final Template template,
@@ -279,6 +319,10 @@ public final class DataSourceProcessor
                     "both be null or both be non-null.  reportKey: " + this.reportKey + " reportTemplate: "
                     + this.reportTemplate));
         }
+        if (this.maxParallelRows < 1) {
+            validationErrors.add(new ConfigurationException("'maxParallelRows' must be at least 1: " +
+                    this.maxParallelRows));
+        }
 
         for (Attribute attribute : this.internalAttributes.values()) {
             attribute.validate(validationErrors, configuration);
@@ -2,11 +2,14 @@ package org.mapfish.print.processor.jasper;
 
 import com.google.common.annotations.VisibleForTesting;
 import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRParameter;
 import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
 import net.sf.jasperreports.engine.design.JRDesignBand;
 import net.sf.jasperreports.engine.design.JRDesignElement;
 import net.sf.jasperreports.engine.design.JRDesignExpression;
 import net.sf.jasperreports.engine.design.JRDesignImage;
+import net.sf.jasperreports.engine.design.JRDesignParameter;
 import net.sf.jasperreports.engine.design.JasperDesign;
 import net.sf.jasperreports.engine.type.HorizontalImageAlignEnum;
 import net.sf.jasperreports.engine.type.ScaleImageEnum;
@@ -16,6 +19,7 @@ import net.sf.jasperreports.renderers.Renderable;
 import java.awt.Dimension;
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -23,6 +27,15 @@ import java.util.List;
  * be embedded into an another report as sub-report.
  */
 public class ImagesSubReport {
+    /**
+     * The prefix of the names of the parameters holding the graphic paths of a template.
+     */
+    public static final String GRAPHIC_PARAMETER_PREFIX = "graphic";
+    /**
+     * The prefix of the names of the report properties used as default values for the graphic
+     * parameters of a template.
+     */
+    public static final String GRAPHIC_PROPERTY_PREFIX = "org.mapfish.print.graphic.";
 
     private final JasperDesign reportDesign;
 
@@ -34,10 +47,66 @@ public class ImagesSubReport {
      * @param dpi the dpi of the report
      */
     public ImagesSubReport(final List<URI> graphics, final Dimension size, final double dpi) {
-        this.reportDesign = createReport(graphics, size, dpi);
+        final List<String> imageExpressions = new ArrayList<>(graphics.size());
+        for (URI graphicFile : graphics) {
+            imageExpressions.add("\"" + getGraphicPath(graphicFile) + "\"");
+        }
+        this.reportDesign = createReport(imageExpressions, size, dpi);
+    }
+
+    /**
+     * Constructor for a template that doesn't depend on the graphic files. The paths of the graphics are
+     * given by the parameters <code>graphic0</code>, <code>graphic1</code>, ... which default to the
+     * report properties set with {@link #setGraphics(JasperReport, List)}. Like that a compiled template
+     * can be reused for all the reports of the same size, dpi and number of graphics.
+     *
+     * @param nbGraphics The number of graphic files.
+     * @param size The size of the report in pixel.
+     * @param dpi the dpi of the report
+     */
+    public ImagesSubReport(final int nbGraphics, final Dimension size, final double dpi) {
+        final List<String> imageExpressions = new ArrayList<>(nbGraphics);
+        for (int i = 0; i < nbGraphics; i++) {
+            imageExpressions.add("$P{" + GRAPHIC_PARAMETER_PREFIX + i + "}");
+        }
+        this.reportDesign = createReport(imageExpressions, size, dpi);
+        for (int i = 0; i < nbGraphics; i++) {
+            addGraphicParameter(i);
+        }
+    }
+
+    /**
+     * Set the paths of the graphics on a compiled template created with
+     * {@link #ImagesSubReport(int, Dimension, double)}.
+     *
+     * @param report The compiled template, will be modified.
+     * @param graphics A list of graphic files.
+     */
+    public static void setGraphics(final JasperReport report, final List<URI> graphics) {
+        for (int i = 0; i < graphics.size(); i++) {
+            report.getPropertiesMap().setProperty(GRAPHIC_PROPERTY_PREFIX + i, getGraphicPath(graphics.get(i)));
+        }
+    }
+
+    private static String getGraphicPath(final URI graphicFile) {
+        return new File(graphicFile).getAbsolutePath().replace('\\', '/');
+    }
+
+    private void addGraphicParameter(final int index) {
+        final JRDesignParameter parameter = new JRDesignParameter();
+        parameter.setName(GRAPHIC_PARAMETER_PREFIX + index);
+        parameter.setValueClass(String.class);
+        parameter.setDefaultValueExpression(new JRDesignExpression(
+                "$P{" + JRParameter.JASPER_REPORT + "}.getProperty(\"" + GRAPHIC_PROPERTY_PREFIX + index + "\")"));
+        try {
+            this.reportDesign.addParameter(parameter);
+        } catch (JRException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private JasperDesign createReport(final List<URI> graphics, final Dimension size, final double dpi) {
+    private JasperDesign createReport(final List<String> imageExpressions, final Dimension size,
+                                      final double dpi) {
         final JasperDesign design = new JasperDesign();
         design.setName("map");
 
@@ -55,7 +124,9 @@ public class ImagesSubReport {
         band.setHeight(size.height);
 
         // add layer graphics to report
-        addGraphics(graphics, band, size, design);
+        for (String imageExpression : imageExpressions) {
+            band.addElement(getImage(imageExpression, size, design));
+        }
 
         // note that the images are added to the "NoData" band, this ensures
         // that they are displayed even if no data connection is passed to the
@@ -66,15 +137,6 @@ public class ImagesSubReport {
         return design;
     }
 
-    private void addGraphics(final List<URI> graphics, final JRDesignBand band,
-            final Dimension size, final JasperDesign design) {
-        for (URI graphicFile : graphics) {
-            final String fileName = new File(graphicFile).getAbsolutePath().replace('\\', '/');
-            final String imageExpression = "\"" + fileName + "\"";
-            band.addElement(getImage(imageExpression, size, design));
-        }
-    }
-
     private JRDesignElement getImage(final String imageExpression, final Dimension mapSize,
             final JasperDesign design) {
         final JRDesignImage image = new JRDesignImage(design);
@@ -103,6 +165,15 @@ public class ImagesSubReport {
         JasperCompileManager.compileReportToFile(this.reportDesign, compiledReportFile.getAbsolutePath());
     }
 
+    /**
+     * Compiles the report.
+     *
+     * @throws JRException
+     */
+    public final JasperReport compile() throws JRException {
+        return JasperCompileManager.compileReport(this.reportDesign);
+    }
+
     @VisibleForTesting
     protected final JasperDesign getReportDesign() {
         return this.reportDesign;
@@ -0,0 +1,167 @@
+package org.mapfish.print.processor.jasper;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Process-wide cache of compiled {@link ImagesSubReport} templates.
+ * <p>
+ * The compiled sub-report of a map only depends on its size, its dpi and its number of graphics. So the
+ * template is compiled once for each of those combinations and the paths of the graphics are set on a
+ * copy of it for each sub-report.
+ * </p>
+ * <p>
+ * The legend icons have their own instance, so that their templates (one per icon size) don't evict the ones of
+ * the maps.
+ * </p>
+ */
+public final class ImagesSubReportCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImagesSubReportCache.class);
+
+    private final Cache<Key, byte[]> templates;
+    private final String metricName;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    /**
+     * Constructor.
+     *
+     * @param maxTemplates the maximum number of compiled templates to keep in memory.
+     */
+    public ImagesSubReportCache(final int maxTemplates) {
+        this(maxTemplates, ImagesSubReportCache.class.getName());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxTemplates the maximum number of compiled templates to keep in memory.
+     * @param metricName the prefix of the names of the hit and miss metrics.
+     */
+    public ImagesSubReportCache(final int maxTemplates, final String metricName) {
+        this.templates = CacheBuilder.newBuilder().maximumSize(maxTemplates).build();
+        this.metricName = metricName;
+    }
+
+    /**
+     * Create a compiled sub-report containing the overlaid graphics.
+     *
+     * @param directory the directory in which the compiled sub-report is written.
+     * @param graphics the graphic files.
+     * @param size the size of the report in pixel.
+     * @param dpi the dpi of the report.
+     * @return the URI of the compiled sub-report.
+     */
+    public URI createSubReport(
+            final File directory, final List<URI> graphics, final Dimension size, final double dpi)
+            throws IOException, JRException {
+        final JasperReport report = loadTemplate(new Key(graphics.size(), size, dpi));
+        ImagesSubReport.setGraphics(report, graphics);
+
+        final File compiledReport = File.createTempFile("map-",
+                JasperReportBuilder.JASPER_REPORT_COMPILED_FILE_EXT, directory);
+        JRSaver.saveObject(report, compiledReport);
+        return compiledReport.toURI();
+    }
+
+    private JasperReport loadTemplate(final Key key) throws JRException {
+        byte[] template = this.templates.getIfPresent(key);
+        if (template == null) {
+            this.metricRegistry.counter(this.metricName + ".miss").inc();
+            try {
+                template = this.templates.get(key, new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws JRException {
+                        return compile(key);
+                    }
+                });
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof JRException) {
+                    throw (JRException) e.getCause();
+                }
+                throw new JRException(e.getCause());
+            }
+        } else {
+            this.metricRegistry.counter(this.metricName + ".hit").inc();
+        }
+        // each sub-report gets its own copy since the graphics are set on it
+        return (JasperReport) JRLoader.loadObject(new ByteArrayInputStream(template));
+    }
+
+    private byte[] compile(final Key key) throws JRException {
+        LOGGER.debug("Compiling the sub-report template for {}", key);
+        final ImagesSubReport subReport = new ImagesSubReport(key.nbGraphics, key.size, key.dpi);
+        final Timer.Context timer = this.metricRegistry.timer(
+                JasperReportBuilder.class.getName() + ".compile." + getClass().getSimpleName()).time();
+        final JasperReport report;
+        try {
+            report = subReport.compile();
+        } finally {
+            timer.stop();
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JRSaver.saveObject(report, out);
+        return out.toByteArray();
+    }
+
+    private static final class Key {
+        private final int nbGraphics;
+        private final Dimension size;
+        private final double dpi;
+
+        private Key(final int nbGraphics, final Dimension size, final double dpi) {
+            this.nbGraphics = nbGraphics;
+            this.size = new Dimension(size);
+            this.dpi = dpi;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return this.nbGraphics == key.nbGraphics &&
+                    Double.compare(key.dpi, this.dpi) == 0 &&
+                    this.size.equals(key.size);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.nbGraphics;
+            result = 31 * result + this.size.hashCode();
+            final long temp = Double.doubleToLongBits(this.dpi);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d graphics, %dx%d, %s dpi", this.nbGraphics, this.size.width,
+                    this.size.height, this.dpi);
+        }
+    }
+}
@@ -60,6 +60,9 @@ public final class LegendProcessor extends AbstractProcessor<LegendProcessor.Inp
     @Autowired
     private MetricRegistry metricRegistry;
 
+    @Resource(name = "legendSubReportCache")
+    private ImagesSubReportCache legendSubReportCache;
+
     @Resource(name = "requestForkJoinPool")
     private ForkJoinPool requestForkJoinPool;
 
@@ -287,17 +290,12 @@ public final class LegendProcessor extends AbstractProcessor<LegendProcessor.Inp
 
         URI imageFile = writeToFile(image, tempTaskDirectory);
 
-        final ImagesSubReport subReport = new ImagesSubReport(
+        // the compiled template is shared by all the icons of the same size
+        return this.legendSubReportCache.createSubReport(tempTaskDirectory,
                 Lists.newArrayList(imageFile),
                 new Dimension((int) Math.round(image.getWidth() * scaleFactor),
                         (int) Math.round(image.getHeight() * scaleFactor)),
                 this.dpi);
-
-        final File compiledReport = File.createTempFile("legend-report-",
-                JasperReportBuilder.JASPER_REPORT_COMPILED_FILE_EXT, tempTaskDirectory);
-        subReport.compile(compiledReport);
-
-        return compiledReport.toURI();
     }
 
     private BufferedImage cropToMaxWidth(final BufferedImage image, final double scaleFactor) {
@@ -1,14 +1,23 @@
 package org.mapfish.print.processor.jasper;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
 import net.sf.jasperreports.engine.JRBand;
 import net.sf.jasperreports.engine.JRElement;
 import net.sf.jasperreports.engine.JRException;
 import net.sf.jasperreports.engine.JRField;
 import net.sf.jasperreports.engine.JRStyle;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
 import net.sf.jasperreports.engine.data.JRMapCollectionDataSource;
 import net.sf.jasperreports.engine.design.JRDesignBand;
 import net.sf.jasperreports.engine.design.JRDesignElement;
@@ -22,12 +31,11 @@ import net.sf.jasperreports.engine.type.HorizontalImageAlignEnum;
 import net.sf.jasperreports.engine.type.HorizontalTextAlignEnum;
 import net.sf.jasperreports.engine.type.ScaleImageEnum;
 import net.sf.jasperreports.engine.type.StretchTypeEnum;
+import net.sf.jasperreports.engine.util.JRSaver;
 import net.sf.jasperreports.engine.xml.JRXmlLoader;
-import net.sf.jasperreports.engine.xml.JRXmlWriter;
 
 import org.json.JSONObject;
 import org.mapfish.print.Constants;
-import org.mapfish.print.PrintException;
 import org.mapfish.print.attribute.TableAttribute.TableAttributeValue;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.ConfigurationException;
@@ -40,6 +48,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.awt.image.RenderedImage;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -50,9 +59,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import static org.mapfish.print.processor.jasper.JasperReportBuilder.JASPER_REPORT_COMPILED_FILE_EXT;
-import static org.mapfish.print.processor.jasper.JasperReportBuilder.JASPER_REPORT_XML_FILE_EXT;
 
 /**
  * <p>A processor for generating a table.</p>
@@ -63,6 +73,7 @@ public final class TableProcessor extends AbstractProcessor<TableProcessor.Input
 
     private static final int SPACE_BETWEEN_COLS = 0;
     private static final int DEFAULT_MAX_COLUMNS = 9;
+    private static final int MAX_COMPILED_TEMPLATES = 20;
     private Map<String, TableColumnConverter<?>> columnConverterMap = Maps.newHashMap();
     private List<TableColumnConverter<?>> converters = Lists.newArrayList();
     private boolean dynamic = false;
@@ -77,9 +88,12 @@ public final class TableProcessor extends AbstractProcessor<TableProcessor.Input
     private int maxColumns = DEFAULT_MAX_COLUMNS;
     private Set<String> excludeColumns = Sets.newHashSet();
 
-    @Autowired
-    private JasperReportBuilder jasperReportBuilder;
     private boolean defaultTemplate;
+    private final Cache<String, byte[]> compiledTemplates =
+            CacheBuilder.newBuilder().maximumSize(MAX_COMPILED_TEMPLATES).build();
+
+    @Autowired
+    private MetricRegistry metricRegistry;
 
     /**
      * Constructor.
@@ -306,8 +320,65 @@ public final class TableProcessor extends AbstractProcessor<TableProcessor.Input
 
     private String generateSubReport(
             final Input input,
-            final Map<String, Class<?>> columns) throws JRException, ClassNotFoundException, IOException {
-        byte[] bytes = loadJasperTemplate(input.template.getConfiguration());
+            final Map<String, Class<?>> columns) throws JRException, IOException {
+        final byte[] bytes = loadJasperTemplate(input.template.getConfiguration());
+        final String key = createTemplateKey(bytes, columns);
+
+        byte[] compiledReport = this.compiledTemplates.getIfPresent(key);
+        if (compiledReport == null) {
+            this.metricRegistry.counter(getClass().getName() + ".miss").inc();
+            try {
+                compiledReport = this.compiledTemplates.get(key, new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws JRException {
+                        return compile(createSubReportDesign(bytes, columns));
+                    }
+                });
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof JRException) {
+                    throw (JRException) e.getCause();
+                }
+                throw new JRException(e.getCause());
+            }
+        } else {
+            this.metricRegistry.counter(getClass().getName() + ".hit").inc();
+        }
+
+        final File buildFile = File.createTempFile("table-", JASPER_REPORT_COMPILED_FILE_EXT, input.tempTaskDirectory);
+        Files.write(compiledReport, buildFile);
+        return buildFile.getAbsolutePath();
+    }
+
+    /**
+     * The generated sub-report only depends on the template and on the names and types of the columns.
+     */
+    private static String createTemplateKey(final byte[] templateBytes, final Map<String, Class<?>> columns) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putBytes(templateBytes);
+        for (Map.Entry<String, Class<?>> entry: columns.entrySet()) {
+            hasher.putInt(entry.getKey().length()).putString(entry.getKey(), Constants.DEFAULT_CHARSET);
+            final String className = entry.getValue() == null ? "" : entry.getValue().getName();
+            hasher.putInt(className.length()).putString(className, Constants.DEFAULT_CHARSET);
+        }
+        return hasher.hash().toString();
+    }
+
+    private byte[] compile(final JasperDesign design) throws JRException {
+        final Timer.Context timer = this.metricRegistry.timer(
+                JasperReportBuilder.class.getName() + ".compile." + getClass().getSimpleName()).time();
+        final JasperReport report;
+        try {
+            report = JasperCompileManager.compileReport(design);
+        } finally {
+            timer.stop();
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JRSaver.saveObject(report, out);
+        return out.toByteArray();
+    }
+
+    private JasperDesign createSubReportDesign(
+            final byte[] bytes, final Map<String, Class<?>> columns) throws JRException {
         final JasperDesign templateDesign = JRXmlLoader.load(new ByteArrayInputStream(bytes));
 
         if (this.reportWidth != null) {
@@ -429,15 +500,7 @@ public final class TableProcessor extends AbstractProcessor<TableProcessor.Input
             headerPosX = headerPosX + columnWidth + SPACE_BETWEEN_COLS;
             detailPosX = detailPosX + columnWidth + SPACE_BETWEEN_COLS;
         }
-
-        final File jrxmlFile = File.createTempFile("table-", JASPER_REPORT_XML_FILE_EXT, input.tempTaskDirectory);
-        JRXmlWriter.writeReport(templateDesign, jrxmlFile.getAbsolutePath(), Constants.DEFAULT_ENCODING);
-
-        final File buildFile = File.createTempFile("table-", JASPER_REPORT_COMPILED_FILE_EXT, input.tempTaskDirectory);
-        if (!buildFile.delete()) {
-            throw new PrintException("Unable to delete the build file: " + buildFile);
-        }
-        return this.jasperReportBuilder.compileJasperReport(buildFile, jrxmlFile).getAbsolutePath();
+        return templateDesign;
     }
 
     private JRDesignTextField createTextField(final String columnName) {
@@ -27,6 +27,7 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.operation.transform.AffineTransform2D;
 import org.mapfish.print.Constants;
 import org.mapfish.print.ExceptionUtils;
+import org.mapfish.print.FloatingPointUtil;
 import org.mapfish.print.ImageUtils;
 import org.mapfish.print.SvgUtil;
 import org.mapfish.print.attribute.map.AreaOfInterest;
@@ -41,18 +42,22 @@ import org.mapfish.print.attribute.map.ZoomLevelSnapStrategy;
 import org.mapfish.print.attribute.map.ZoomToFeatures.ZoomType;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.http.HttpRequestCache;
+import org.mapfish.print.http.HttpRequestScheduler;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
 import org.mapfish.print.map.Scale;
 import org.mapfish.print.map.geotools.AbstractFeatureSourceLayer;
 import org.mapfish.print.map.geotools.FeatureLayer;
 import org.mapfish.print.map.geotools.grid.GridLayer;
+import org.mapfish.print.map.image.wms.WmsLayer;
+import org.mapfish.print.map.tiled.AbstractTiledLayer;
 import org.mapfish.print.parser.HasDefaultValue;
 import org.mapfish.print.processor.AbstractProcessor;
 import org.mapfish.print.processor.InputOutputValue;
 import org.mapfish.print.processor.InternalValue;
 import org.mapfish.print.processor.http.MfClientHttpRequestFactoryProvider;
-import org.mapfish.print.processor.jasper.ImagesSubReport;
-import org.mapfish.print.processor.jasper.JasperReportBuilder;
+import org.mapfish.print.processor.jasper.ImagesSubReportCache;
+import org.mapfish.print.trace.JobTrace;
+import org.mapfish.print.trace.JobTraces;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 import org.slf4j.Logger;
@@ -81,11 +86,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.Resource;
 import javax.imageio.ImageIO;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -110,8 +113,13 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
     @Autowired
     private MetricRegistry metricRegistry;
 
-    @Resource(name = "requestForkJoinPool")
-    private ForkJoinPool requestForkJoinPool;
+    @Autowired
+    private HttpRequestScheduler httpRequestScheduler;
+
+    @Autowired
+    private ImagesSubReportCache imagesSubReportCache;
+
+    private int stripeHeight = 0;
 
     /**
      * Constructor.
@@ -120,6 +128,24 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
         super(Output.class);
     }
 
+    /**
+     * The height in pixels of the stripes used to render the raster layers (default: 0, disabled).
+     * <p>
+     * If set, the raster graphics higher than this value are rendered and written stripe by stripe. For
+     * each stripe, the WMS and tiled layers request, decode and draw only the area of the stripe, so the
+     * memory needed for a graphic is bounded by the stripe size (plus a row of tiles) instead of the map
+     * size. This is useful for very large maps (for example A0 at a high DPI). The graphics with other
+     * layers (images, vectors, grids) or a rotation are rendered as usual. A tile crossing the limit
+     * between two stripes is downloaded for both, so a multiple of the tile size is a good value.
+     * The striped graphics are always written as PNG.
+     * </p>
+     *
+     * @param stripeHeight the height of the stripes.
+     */
+    public void setStripeHeight(final int stripeHeight) {
+        this.stripeHeight = stripeHeight;
+    }
+
     @Override
     public Input createInputParameter() {
         return new Input();
@@ -223,13 +249,7 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
                                    final Dimension mapSize,
                                    final List<URI> graphics,
                                    final double dpi) throws IOException, JRException {
-        final ImagesSubReport subReport = new ImagesSubReport(graphics, mapSize, dpi);
-
-        final File compiledReport = File.createTempFile("map-",
-                JasperReportBuilder.JASPER_REPORT_COMPILED_FILE_EXT, printDirectory);
-        subReport.compile(compiledReport);
-
-        return compiledReport.toURI();
+        return this.imagesSubReportCache.createSubReport(printDirectory, graphics, mapSize, dpi);
     }
 
     private static RenderType getSupportedRenderType(final RenderType renderType) {
@@ -277,21 +297,42 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
         final String mapKey = UUID.randomUUID().toString();
         final List<URI> graphics = new ArrayList<URI>(layers.size());
 
-        HttpRequestCache cache = new HttpRequestCache(printDirectory, this.metricRegistry);
+        HttpRequestCache cache = new HttpRequestCache(printDirectory, this.metricRegistry,
+                mapValues.getTemplate().getConfiguration());
 
         //prepare layers for rendering
         for (final MapLayer layer : layers) {
             layer.prepareRender(mapContext);
-            final MapfishMapContext transformer = getTransformer(mapContext,
-                    layer.getImageBufferScaling());
-            layer.cacheResources(cache, clientHttpRequestFactory, transformer, jobId);
+        }
+        final List<LayerGroup> layerGroups = LayerGroup.buildGroups(layers);
+
+        // the layers rendered in stripes fetch their resources for each stripe
+        for (LayerGroup layerGroup : layerGroups) {
+            if (useStripes(layerGroup, mapContext)) {
+                continue;
+            }
+            for (MapLayer layer : layerGroup.layers) {
+                final MapfishMapContext transformer = getTransformer(mapContext,
+                        layer.getImageBufferScaling());
+                final JobTrace.Span span = JobTraces.span(jobId, "layer", layer.getClass().getSimpleName() + ".cacheResources");
+                try {
+                    layer.cacheResources(cache, clientHttpRequestFactory, transformer, jobId);
+                } finally {
+                    span.end();
+                }
+            }
         }
 
         //now we download and cache all images at once
-        cache.cache(this.requestForkJoinPool);
+        final JobTrace.Span cacheSpan = JobTraces.span(jobId, "layer", "HttpRequestCache.cache");
+        try {
+            cache.cache(this.httpRequestScheduler);
+        } finally {
+            cacheSpan.end();
+        }
 
         int fileNumber = 0;
-        for (LayerGroup layerGroup: LayerGroup.buildGroups(layers)) {
+        for (LayerGroup layerGroup: layerGroups) {
             if (layerGroup.renderType == RenderType.SVG) {
                 // render layers as SVG
                 for (MapLayer layer: layerGroup.layers) {
@@ -301,7 +342,12 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
                     try {
                         Graphics2D clippedGraphics2D = createClippedGraphics(
                                 mapContext, areaOfInterest, graphics2D);
-                        layer.render(clippedGraphics2D, clientHttpRequestFactory, mapContext, jobId);
+                        final JobTrace.Span span = JobTraces.span(jobId, "layer", layer.getClass().getSimpleName() + ".render");
+                        try {
+                            layer.render(clippedGraphics2D, clientHttpRequestFactory, mapContext, jobId);
+                        } finally {
+                            span.end();
+                        }
 
                         final File path = new File(printDirectory, mapKey + "_layer_" + fileNumber++ + ".svg");
                         saveSvgFile(graphics2D, path);
@@ -312,40 +358,40 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
                 }
             } else {
                 // render layers as raster graphic
-                final BufferedImage bufferedImage = new BufferedImage(
-                        (int) Math.round(mapContext.getMapSize().width * layerGroup.imageBufferScaling),
-                        (int) Math.round(mapContext.getMapSize().height * layerGroup.imageBufferScaling),
-                        layerGroup.opaque ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_4BYTE_ABGR
-                );
-                final Graphics2D graphics2D = createClippedGraphics(
-                        mapContext, areaOfInterest,
-                        bufferedImage.createGraphics()
-                );
-                try {
-                    if (layerGroup.opaque) {
-                        // the image is opaque and therefore needs a white background
-                        final Color prevColor = graphics2D.getColor();
-                        graphics2D.setColor(Color.WHITE);
-                        graphics2D.fillRect(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight());
-                        graphics2D.setColor(prevColor);
-                    }
-
-                    final MapfishMapContext transformer = getTransformer(mapContext, layerGroup.imageBufferScaling);
-                    for (MapLayer cur: layerGroup.layers) {
-                        checkCancelState(context);
-                        warnIfDifferentRenderType(layerGroup.renderType, cur);
-                        cur.render(graphics2D, clientHttpRequestFactory, transformer, jobId);
-                    }
-
-                    // Try to respect the original format of the layer. But if it needs to be transparent,
-                    // no choice, we need PNG.
-                    final String formatName = layerGroup.opaque && layerGroup.renderType == RenderType.JPEG ? "JPEG" : "PNG";
+                final MapfishMapContext transformer = getTransformer(mapContext, layerGroup.imageBufferScaling);
+                final int width = transformer.getMapSize().width;
+                final int height = transformer.getMapSize().height;
+                final int imageType = layerGroup.opaque ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_4BYTE_ABGR;
+                if (useStripes(layerGroup, mapContext)) {
+                    // render and encode the layers stripe by stripe, the PNG encoder reads the image row by row
+                    final StripedImage stripedImage = new StripedImage(width, height, this.stripeHeight, imageType,
+                            new LayerGroupStripeRenderer(layerGroup, mapContext, transformer, areaOfInterest,
+                                    printDirectory, clientHttpRequestFactory, mapValues.getTemplate().getConfiguration(),
+                                    context, jobId));
                     final File path = new File(printDirectory,
-                            String.format("%s_layer_%d.%s", mapKey, fileNumber++, formatName.toLowerCase()));
-                    ImageUtils.writeImage(bufferedImage, formatName, path);
+                            String.format("%s_layer_%d.png", mapKey, fileNumber++));
+                    ImageUtils.writeImage(stripedImage, "PNG", path);
                     graphics.add(path.toURI());
-                } finally {
-                    graphics2D.dispose();
+                } else {
+                    final BufferedImage bufferedImage = new BufferedImage(width, height, imageType);
+                    final Graphics2D graphics2D = createClippedGraphics(
+                            mapContext, areaOfInterest,
+                            bufferedImage.createGraphics()
+                    );
+                    try {
+                        drawLayerGroup(graphics2D, layerGroup, transformer, clientHttpRequestFactory, context, jobId);
+
+                        // Try to respect the original format of the layer. But if it needs to be transparent,
+                        // no choice, we need PNG.
+                        final String formatName =
+                                layerGroup.opaque && layerGroup.renderType == RenderType.JPEG ? "JPEG" : "PNG";
+                        final File path = new File(printDirectory,
+                                String.format("%s_layer_%d.%s", mapKey, fileNumber++, formatName.toLowerCase()));
+                        ImageUtils.writeImage(bufferedImage, formatName, path);
+                        graphics.add(path.toURI());
+                    } finally {
+                        graphics2D.dispose();
+                    }
                 }
             }
         }
@@ -353,6 +399,70 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
         return graphics;
     }
 
+    /**
+     * Tell if a layer group is rendered stripe by stripe: only the layers that can request and draw the area of
+     * a stripe are, and the rotated maps are not.
+     */
+    private boolean useStripes(final LayerGroup layerGroup, final MapfishMapContext mapContext) {
+        if (this.stripeHeight <= 0 || layerGroup.renderType == RenderType.SVG ||
+                !FloatingPointUtil.equals(mapContext.getRotation(), 0.0) ||
+                getTransformer(mapContext, layerGroup.imageBufferScaling).getMapSize().height <= this.stripeHeight) {
+            return false;
+        }
+        for (MapLayer layer : layerGroup.layers) {
+            if (!(layer instanceof WmsLayer) && !(layer instanceof AbstractTiledLayer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the context covering some rows of the map of a context.
+     *
+     * @param transformer the context of the whole map
+     * @param top the first row
+     * @param bottom the row after the last one
+     */
+    private static MapfishMapContext getStripeContext(final MapfishMapContext transformer, final int top,
+                                                      final int bottom) {
+        final Dimension mapSize = transformer.getMapSize();
+        final ReferencedEnvelope envelope = transformer.getBounds().toReferencedEnvelope(new Rectangle(mapSize));
+        final double resolution = envelope.getHeight() / mapSize.height;
+        final MapBounds bounds = new BBoxMapBounds(envelope.getCoordinateReferenceSystem(),
+                envelope.getMinX(), envelope.getMaxY() - bottom * resolution,
+                envelope.getMaxX(), envelope.getMaxY() - top * resolution);
+        return new MapfishMapContext(transformer, bounds, new Dimension(mapSize.width, bottom - top),
+                transformer.getRotation(), transformer.getDPI(), transformer.isForceLongitudeFirst(),
+                transformer.isDpiSensitiveStyle());
+    }
+
+    private void drawLayerGroup(final Graphics2D graphics2D,
+                                final LayerGroup layerGroup,
+                                final MapfishMapContext transformer,
+                                final MfClientHttpRequestFactory clientHttpRequestFactory,
+                                final ExecutionContext context,
+                                final String jobId) {
+        if (layerGroup.opaque) {
+            // the image is opaque and therefore needs a white background
+            final Color prevColor = graphics2D.getColor();
+            graphics2D.setColor(Color.WHITE);
+            graphics2D.fillRect(0, 0, transformer.getMapSize().width, transformer.getMapSize().height);
+            graphics2D.setColor(prevColor);
+        }
+
+        for (MapLayer cur: layerGroup.layers) {
+            checkCancelState(context);
+            warnIfDifferentRenderType(layerGroup.renderType, cur);
+            final JobTrace.Span span = JobTraces.span(jobId, "layer", cur.getClass().getSimpleName() + ".render");
+            try {
+                cur.render(graphics2D, clientHttpRequestFactory, transformer, jobId);
+            } finally {
+                span.end();
+            }
+        }
+    }
+
     /**
      * @param mapValues The map parameters.
      * @return The map context.
@@ -703,6 +813,77 @@ public final class CreateMapProcessor extends AbstractProcessor<CreateMapProcess
         }
     }
 
+    /**
+     * Renders the stripes of a layer group: for each stripe, the layers are prepared for the area of the stripe,
+     * their resources are downloaded and they are drawn.
+     */
+    private final class LayerGroupStripeRenderer implements StripedImage.StripeRenderer {
+        private final LayerGroup layerGroup;
+        private final MapfishMapContext mapContext;
+        private final MapfishMapContext transformer;
+        private final AreaOfInterest areaOfInterest;
+        private final File printDirectory;
+        private final MfClientHttpRequestFactory clientHttpRequestFactory;
+        private final Configuration configuration;
+        private final ExecutionContext context;
+        private final String jobId;
+
+        // CSOFF: ParameterNumber
+        private LayerGroupStripeRenderer(final LayerGroup layerGroup, final MapfishMapContext mapContext,
+                                         final MapfishMapContext transformer,
+                                         @Nullable final AreaOfInterest areaOfInterest, final File printDirectory,
+                                         final MfClientHttpRequestFactory clientHttpRequestFactory,
+                                         final Configuration configuration, final ExecutionContext context,
+                                         final String jobId) {
+            // CSON: ParameterNumber
+            this.layerGroup = layerGroup;
+            this.mapContext = mapContext;
+            this.transformer = transformer;
+            this.areaOfInterest = areaOfInterest;
+            this.printDirectory = printDirectory;
+            this.clientHttpRequestFactory = clientHttpRequestFactory;
+            this.configuration = configuration;
+            this.context = context;
+            this.jobId = jobId;
+        }
+
+        @Override
+        public void render(final Graphics2D graphics2D, final Rectangle stripe) {
+            checkCancelState(this.context);
+            final MapfishMapContext stripeTransformer = getStripeContext(this.transformer, stripe.y,
+                    stripe.y + stripe.height);
+            // the layers are prepared at the resolution of the map (before the scaling of the group), with
+            // whole rows to keep the same resolution
+            final double scaling = this.layerGroup.imageBufferScaling;
+            final int top = (int) Math.floor(stripe.y / scaling);
+            final int bottom = Math.min(this.mapContext.getMapSize().height,
+                    (int) Math.ceil((stripe.y + stripe.height) / scaling));
+            final MapfishMapContext stripeContext = getStripeContext(this.mapContext, top, Math.max(bottom, top + 1));
+
+            final HttpRequestCache cache = new HttpRequestCache(this.printDirectory,
+                    CreateMapProcessor.this.metricRegistry, this.configuration);
+            for (MapLayer layer : this.layerGroup.layers) {
+                layer.prepareRender(stripeContext);
+                final JobTrace.Span span = JobTraces.span(this.jobId, "layer",
+                        layer.getClass().getSimpleName() + ".cacheResources");
+                try {
+                    layer.cacheResources(cache, this.clientHttpRequestFactory, stripeTransformer, this.jobId);
+                } finally {
+                    span.end();
+                }
+            }
+            cache.cache(CreateMapProcessor.this.httpRequestScheduler);
+
+            // the area of interest is in the coordinates of the map
+            graphics2D.translate(0, -stripe.y);
+            final Graphics2D clippedGraphics2D = createClippedGraphics(this.mapContext, this.areaOfInterest,
+                    graphics2D);
+            clippedGraphics2D.translate(0, stripe.y);
+            drawLayerGroup(clippedGraphics2D, this.layerGroup, stripeTransformer, this.clientHttpRequestFactory,
+                    this.context, this.jobId);
+        }
+    }
+
     /**
      * Class that groups together layers that can end up in the same file.
      */
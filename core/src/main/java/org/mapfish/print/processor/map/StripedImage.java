@@ -0,0 +1,214 @@
+package org.mapfish.print.processor.map;
+
+import org.mapfish.print.ExceptionUtils;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+/**
+ * A {@link RenderedImage} that is rendered stripe by stripe when its data is requested.
+ * <p>
+ * Only one stripe is kept in memory and the renderer draws only its content. The image encoders that read
+ * the image row by row (like the PNG one) can then write very large images with a memory usage bounded by
+ * the stripe size. The stripes are the tiles of the image, so a consumer reading it tile by tile renders
+ * each stripe once.
+ * </p>
+ */
+final class StripedImage implements RenderedImage {
+    private final int width;
+    private final int height;
+    private final int stripeHeight;
+    private final int imageType;
+    private final StripeRenderer renderer;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+
+    private BufferedImage currentStripe = null;
+    private int currentStripeIndex = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param width the width of the image.
+     * @param height the height of the image.
+     * @param stripeHeight the height of a stripe.
+     * @param imageType the type of the image, one of the <code>BufferedImage.TYPE_*</code> constants.
+     * @param renderer the renderer called for each stripe.
+     */
+    StripedImage(final int width, final int height, final int stripeHeight, final int imageType,
+                 final StripeRenderer renderer) {
+        this.width = width;
+        this.height = height;
+        this.stripeHeight = stripeHeight;
+        this.imageType = imageType;
+        this.renderer = renderer;
+        final BufferedImage prototype = new BufferedImage(1, 1, imageType);
+        this.colorModel = prototype.getColorModel();
+        this.sampleModel = prototype.getSampleModel().createCompatibleSampleModel(width, stripeHeight);
+    }
+
+    private synchronized BufferedImage getStripe(final int stripeIndex) {
+        if (stripeIndex != this.currentStripeIndex) {
+            // release the previous stripe before allocating the next one
+            this.currentStripe = null;
+            final BufferedImage stripe = new BufferedImage(this.width, this.stripeHeight, this.imageType);
+            final int offsetY = stripeIndex * this.stripeHeight;
+            final Rectangle area = new Rectangle(0, offsetY, this.width,
+                    Math.min(this.stripeHeight, this.height - offsetY));
+            final Graphics2D graphics2D = stripe.createGraphics();
+            try {
+                this.renderer.render(graphics2D, area);
+            } catch (Exception e) {
+                throw ExceptionUtils.getRuntimeException(e);
+            } finally {
+                graphics2D.dispose();
+            }
+            this.currentStripe = stripe;
+            this.currentStripeIndex = stripeIndex;
+        }
+        return this.currentStripe;
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(final String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return this.colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return this.sampleModel;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return (this.height + this.stripeHeight - 1) / this.stripeHeight;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return this.stripeHeight;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+
+    @Override
+    public Raster getTile(final int tileX, final int tileY) {
+        return getStripe(tileY).getRaster().createTranslatedChild(0, tileY * this.stripeHeight);
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, this.width, this.height));
+    }
+
+    @Override
+    public Raster getData(final Rectangle rect) {
+        final WritableRaster raster = this.colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+                .createWritableTranslatedChild(rect.x, rect.y);
+        return copyData(raster);
+    }
+
+    @Override
+    public WritableRaster copyData(final WritableRaster raster) {
+        final WritableRaster target = raster != null ? raster : this.colorModel.createCompatibleWritableRaster(
+                this.width, this.height);
+        final Rectangle bounds = target.getBounds().intersection(new Rectangle(0, 0, this.width, this.height));
+        if (bounds.isEmpty()) {
+            return target;
+        }
+        final int firstStripe = bounds.y / this.stripeHeight;
+        final int lastStripe = (bounds.y + bounds.height - 1) / this.stripeHeight;
+        for (int stripeIndex = firstStripe; stripeIndex <= lastStripe; stripeIndex++) {
+            final Raster stripe = getTile(0, stripeIndex);
+            final Rectangle area = bounds.intersection(stripe.getBounds());
+            target.setRect(stripe.createChild(area.x, area.y, area.width, area.height,
+                    area.x, area.y, null));
+        }
+        return target;
+    }
+
+    /**
+     * Renders the content of the image.
+     */
+    interface StripeRenderer {
+        /**
+         * Render a stripe of the image. The origin of the graphics is the top left corner of the stripe, the
+         * renderers draw only the content of the stripe so that the memory they use is bounded by its size.
+         *
+         * @param graphics2D the graphics of the stripe.
+         * @param stripe the area of the stripe in the image.
+         */
+        void render(Graphics2D graphics2D, Rectangle stripe) throws Exception;
+    }
+}
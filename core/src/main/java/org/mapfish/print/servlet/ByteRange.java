@@ -0,0 +1,98 @@
+package org.mapfish.print.servlet;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * A single byte range of a HTTP Range header (RFC 7233).
+ */
+final class ByteRange {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+    private final long start;
+    private final long end;
+
+    private ByteRange(final long start, final long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parse the value of a Range header.
+     * <p></p>
+     * Only single ranges are supported, for the invalid or multiple ranges null is returned and the whole
+     * content should be sent, as allowed by the RFC.
+     *
+     * @param header the value of the header.
+     * @param length the size of the content.
+     * @return the range, null if the whole content should be sent.
+     * @throws UnsatisfiableRangeException if the range is outside of the content.
+     */
+    @Nullable
+    static ByteRange parse(@Nullable final String header, final long length)
+            throws UnsatisfiableRangeException {
+        if (header == null) {
+            return null;
+        }
+        final Matcher matcher = RANGE_PATTERN.matcher(header.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        final String first = matcher.group(1);
+        final String last = matcher.group(2);
+        try {
+            if (first.isEmpty()) {
+                if (last.isEmpty()) {
+                    return null;
+                }
+                // suffix range: the last N bytes
+                final long suffix = Long.parseLong(last);
+                if (suffix == 0 || length == 0) {
+                    throw new UnsatisfiableRangeException();
+                }
+                return new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            final long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+            if (end < start) {
+                return null;
+            }
+            if (start >= length) {
+                throw new UnsatisfiableRangeException();
+            }
+            end = Math.min(end, length - 1);
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long getStart() {
+        return this.start;
+    }
+
+    long getEnd() {
+        return this.end;
+    }
+
+    long getLength() {
+        return this.end - this.start + 1;
+    }
+
+    /**
+     * The value of the Content-Range header.
+     *
+     * @param length the size of the content.
+     */
+    String toContentRange(final long length) {
+        return "bytes " + this.start + "-" + this.end + "/" + length;
+    }
+
+    /**
+     * Thrown when the range doesn't overlap the content.
+     */
+    static final class UnsatisfiableRangeException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -13,10 +13,14 @@ import org.mapfish.print.ExceptionUtils;
 import org.mapfish.print.MapPrinter;
 import org.mapfish.print.MapPrinterFactory;
 import org.mapfish.print.config.Template;
+import org.mapfish.print.servlet.job.JobCostEstimator;
 import org.mapfish.print.servlet.job.JobManager;
+import org.mapfish.print.servlet.job.JobStatusWatcher;
 import org.mapfish.print.servlet.job.NoSuchReferenceException;
 import org.mapfish.print.servlet.job.PrintJobStatus;
 import org.mapfish.print.servlet.job.impl.PrintJobEntryImpl;
+import org.mapfish.print.servlet.job.loader.RangeReportLoader;
+import org.mapfish.print.servlet.job.loader.ReportInfo;
 import org.mapfish.print.servlet.job.loader.ReportLoader;
 import org.mapfish.print.url.data.Handler;
 import org.mapfish.print.wrapper.json.PJsonObject;
@@ -26,6 +30,8 @@ import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -41,6 +47,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.URI;
@@ -51,10 +58,16 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -155,6 +168,13 @@ public class MapPrinterServlet extends BaseMapServlet {
      * response.
      */
     public static final String JSON_WAITING_TIME = "waitingTime";
+    /**
+     * The estimated memory in bytes needed to print the job (see {@link JobCostEstimator}).
+     * <p></p>
+     * Part of the {@link #getStatus(String, String, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)}
+     * response.
+     */
+    public static final String JSON_ESTIMATED_MEMORY = "estimatedMemory";
     /**
      * The key containing the print job reference ID in the create report response.
      */
@@ -186,6 +206,9 @@ public class MapPrinterServlet extends BaseMapServlet {
      */
     public static final String JSON_REQUEST_HEADERS = "requestHeaders";
 
+    private static final long DEFAULT_MAX_STATUS_WAIT_TIME_IN_SECONDS = 60L;
+    private static final long ASYNC_TIMEOUT_MARGIN = 5000L;
+
     private static final List<String> REQUEST_ID_HEADERS = Arrays.asList(
             "X-Request-ID",
             "X-Correlation-ID",
@@ -206,8 +229,13 @@ public class MapPrinterServlet extends BaseMapServlet {
     private ServletInfo servletInfo;
 
     private long maxCreateAndGetWaitTimeInSeconds;
+    private long maxStatusWaitTimeInSeconds = DEFAULT_MAX_STATUS_WAIT_TIME_IN_SECONDS;
+    @Autowired
+    private JobStatusWatcher jobStatusWatcher;
     @Autowired
     private MapPrinterFactory mapPrinterFactory;
+    @Autowired
+    private JobCostEstimator jobCostEstimator;
 
 
     /**
@@ -257,20 +285,7 @@ public class MapPrinterServlet extends BaseMapServlet {
             writer = statusResponse.getWriter();
 
             appendJsonpCallback(jsonpCallback, writer);
-            JSONWriter json = new JSONWriter(writer);
-            json.object();
-            {
-                json.key(JSON_DONE).value(status.isDone());
-                json.key(JSON_STATUS).value(status.getStatus().toString().toLowerCase());
-                json.key(JSON_ELAPSED_TIME).value(status.getElapsedTime());
-                json.key(JSON_WAITING_TIME).value(status.getWaitingTime());
-                if (!Strings.isNullOrEmpty(status.getError())) {
-                    json.key(JSON_ERROR).value(status.getError());
-                }
-
-                addDownloadLinkToJson(statusRequest, referenceId, json);
-            }
-            json.endObject();
+            writeStatus(new JSONWriter(writer), status, statusRequest, referenceId);
             appendJsonpCallbackEnd(jsonpCallback, writer);
         } catch (JSONException e) {
             LOGGER.error("Error obtaining status", e);
@@ -287,6 +302,185 @@ public class MapPrinterServlet extends BaseMapServlet {
         }
     }
 
+    private void writeStatus(final JSONWriter json, final PrintJobStatus status,
+                             final HttpServletRequest statusRequest, final String referenceId)
+            throws JSONException {
+        json.object();
+        {
+            json.key(JSON_DONE).value(status.isDone());
+            json.key(JSON_STATUS).value(status.getStatus().toString().toLowerCase());
+            json.key(JSON_ELAPSED_TIME).value(status.getElapsedTime());
+            json.key(JSON_WAITING_TIME).value(status.getWaitingTime());
+            json.key(JSON_ESTIMATED_MEMORY).value(status.getEntry().getEstimatedMemory());
+            if (!Strings.isNullOrEmpty(status.getError())) {
+                json.key(JSON_ERROR).value(status.getError());
+            }
+
+            addDownloadLinkToJson(statusRequest, referenceId, json);
+        }
+        json.endObject();
+    }
+
+    /**
+     * Get a status report on a job once its status has changed or after the given time (long-poll). Returns
+     * the same json as {@link #getStatus(String, String, HttpServletRequest, HttpServletResponse)}.
+     *
+     * @param referenceId the job reference
+     * @param jsonpCallback if given the result is returned with a function call wrapped around it
+     * @param wait the maximum time to wait for a change, in seconds (<code>30</code> or <code>30s</code>)
+     * @param statusRequest the request object
+     * @param statusResponse the response object
+     */
+    @RequestMapping(value = "/{appId}" + STATUS_URL + "/{referenceId:\\S+}.json", method = RequestMethod.GET,
+            params = "wait")
+    public final void getStatusSpecificAppId(
+            @PathVariable final String referenceId,
+            @RequestParam(value = "jsonp", defaultValue = "") final String jsonpCallback,
+            @RequestParam(value = "wait") final String wait,
+            final HttpServletRequest statusRequest,
+            final HttpServletResponse statusResponse) {
+        getStatus(referenceId, jsonpCallback, wait, statusRequest, statusResponse);
+    }
+
+    /**
+     * Get a status report on a job once its status has changed or after the given time (long-poll). Returns
+     * the same json as {@link #getStatus(String, String, HttpServletRequest, HttpServletResponse)}.
+     * <p></p>
+     * No container thread is used while waiting.
+     *
+     * @param referenceId the job reference
+     * @param jsonpCallback if given the result is returned with a function call wrapped around it
+     * @param wait the maximum time to wait for a change, in seconds (<code>30</code> or <code>30s</code>)
+     * @param statusRequest the request object
+     * @param statusResponse the response object
+     */
+    @RequestMapping(value = STATUS_URL + "/{referenceId:\\S+}.json", method = RequestMethod.GET, params = "wait")
+    public final void getStatus(
+            @PathVariable final String referenceId,
+            @RequestParam(value = "jsonp", defaultValue = "") final String jsonpCallback,
+            @RequestParam(value = "wait") final String wait,
+            final HttpServletRequest statusRequest,
+            final HttpServletResponse statusResponse) {
+        final long waitTime;
+        try {
+            waitTime = Math.min(TimeUnit.SECONDS.toMillis(Long.parseLong(wait.replaceFirst("s$", ""))),
+                    TimeUnit.SECONDS.toMillis(this.maxStatusWaitTimeInSeconds));
+        } catch (NumberFormatException e) {
+            error(statusResponse, "Invalid wait parameter: " + wait, HttpStatus.BAD_REQUEST);
+            return;
+        }
+
+        final PrintJobStatus status;
+        try {
+            status = this.jobManager.getStatus(referenceId);
+        } catch (NoSuchReferenceException e) {
+            error(statusResponse, e.getMessage(), HttpStatus.NOT_FOUND);
+            return;
+        }
+        if (status.isDone() || waitTime <= 0) {
+            getStatus(referenceId, jsonpCallback, statusRequest, statusResponse);
+            return;
+        }
+
+        setNoCache(statusResponse);
+        setContentType(statusResponse, jsonpCallback);
+        new StatusPusher(referenceId, jsonpCallback, statusRequest, statusResponse, status.getStatus())
+                .start(waitTime);
+    }
+
+    /**
+     * Get the status of a job as server-sent events. An event is sent each time the status of the job
+     * changes and at a regular interval until the job is done, the data of the events is the json
+     * returned by {@link #getStatus(String, String, HttpServletRequest, HttpServletResponse)}.
+     *
+     * @param referenceId the job reference
+     * @param statusRequest the request object
+     * @param statusResponse the response object
+     */
+    @RequestMapping(value = "/{appId}" + STATUS_URL + "/{referenceId:\\S+}.events", method = RequestMethod.GET)
+    public final void getStatusEventsSpecificAppId(
+            @PathVariable final String referenceId,
+            final HttpServletRequest statusRequest,
+            final HttpServletResponse statusResponse) {
+        getStatusEvents(referenceId, statusRequest, statusResponse);
+    }
+
+    /**
+     * Get the status of a job as server-sent events. An event is sent each time the status of the job
+     * changes and at a regular interval until the job is done, the data of the events is the json
+     * returned by {@link #getStatus(String, String, HttpServletRequest, HttpServletResponse)}.
+     * <p></p>
+     * No container thread is used while waiting.
+     *
+     * @param referenceId the job reference
+     * @param statusRequest the request object
+     * @param statusResponse the response object
+     */
+    @RequestMapping(value = STATUS_URL + "/{referenceId:\\S+}.events", method = RequestMethod.GET)
+    public final void getStatusEvents(
+            @PathVariable final String referenceId,
+            final HttpServletRequest statusRequest,
+            final HttpServletResponse statusResponse) {
+        final PrintJobStatus status;
+        try {
+            status = this.jobManager.getStatus(referenceId);
+        } catch (NoSuchReferenceException e) {
+            error(statusResponse, e.getMessage(), HttpStatus.NOT_FOUND);
+            return;
+        }
+
+        setNoCache(statusResponse);
+        statusResponse.setContentType("text/event-stream; charset=utf-8");
+        new StatusPusher(referenceId, null, statusRequest, statusResponse, status.getStatus()).start(0);
+    }
+
+    /**
+     * Get the execution trace of a job, in the Chrome trace event format (can be opened in
+     * <code>chrome://tracing</code> or Perfetto). The trace of a running job contains the spans recorded so far, the
+     * one of a finished job only its longest spans.
+     *
+     * @param referenceId the job reference
+     * @param traceResponse the response object
+     */
+    @RequestMapping(value = "/{appId}" + STATUS_URL + "/{referenceId:\\S+}/trace.json", method = RequestMethod.GET)
+    public final void getTraceSpecificAppId(
+            @PathVariable final String referenceId,
+            final HttpServletResponse traceResponse) {
+        getTrace(referenceId, traceResponse);
+    }
+
+    /**
+     * Get the execution trace of a job, in the Chrome trace event format (can be opened in
+     * <code>chrome://tracing</code> or Perfetto). The trace of a running job contains the spans recorded so far, the
+     * one of a finished job only its longest spans.
+     *
+     * @param referenceId the job reference
+     * @param traceResponse the response object
+     */
+    @RequestMapping(value = STATUS_URL + "/{referenceId:\\S+}/trace.json", method = RequestMethod.GET)
+    public final void getTrace(
+            @PathVariable final String referenceId,
+            final HttpServletResponse traceResponse) {
+        setNoCache(traceResponse);
+        final String trace;
+        try {
+            trace = this.jobManager.getTrace(referenceId);
+        } catch (NoSuchReferenceException e) {
+            error(traceResponse, e.getMessage(), HttpStatus.NOT_FOUND);
+            return;
+        }
+        if (trace == null) {
+            error(traceResponse, "No trace for the job " + referenceId, HttpStatus.NOT_FOUND);
+            return;
+        }
+        traceResponse.setContentType("application/json; charset=utf-8");
+        try (PrintWriter writer = traceResponse.getWriter()) {
+            writer.write(trace);
+        } catch (IOException e) {
+            throw ExceptionUtils.getRuntimeException(e);
+        }
+    }
+
     /**
      * Cancel a job.
      *
@@ -375,25 +569,45 @@ public class MapPrinterServlet extends BaseMapServlet {
      *
      * @param referenceId the path to the file.
      * @param inline whether or not to inline the
+     * @param getReportRequest the request object
      * @param getReportResponse the response object
      */
     @RequestMapping(value = "/{appId}" + REPORT_URL + "/{referenceId:\\S+}", method = RequestMethod.GET)
     public final void getReportSpecificAppId(@PathVariable final String referenceId,
                                 @RequestParam(value = "inline", defaultValue = "false") final boolean inline,
+                                final HttpServletRequest getReportRequest,
+                                final HttpServletResponse getReportResponse)
+            throws IOException, ServletException {
+        getReport(referenceId, inline, getReportRequest, getReportResponse);
+    }
+    /**
+     * To get the PDF created previously.
+     *
+     * @param referenceId the path to the file.
+     * @param inline whether or not to inline the
+     * @param getReportResponse the response object
+     */
+    public final void getReport(final String referenceId, final boolean inline,
                                 final HttpServletResponse getReportResponse)
             throws IOException, ServletException {
-        getReport(referenceId, inline, getReportResponse);
+        getReport(referenceId, inline, null, getReportResponse);
     }
+
     /**
      * To get the PDF created previously.
+     * <p></p>
+     * Single byte ranges (Range and If-Range headers) and conditional requests (If-None-Match header) are
+     * supported if the report loader can read a part of the report.
      *
      * @param referenceId the path to the file.
      * @param inline whether or not to inline the
+     * @param getReportRequest the request object, null to always send the whole report
      * @param getReportResponse the response object
      */
     @RequestMapping(value = REPORT_URL + "/{referenceId:\\S+}", method = RequestMethod.GET)
     public final void getReport(@PathVariable final String referenceId,
                                 @RequestParam(value = "inline", defaultValue = "false") final boolean inline,
+                                final HttpServletRequest getReportRequest,
                                 final HttpServletResponse getReportResponse)
             throws IOException, ServletException {
         setNoCache(getReportResponse);
@@ -414,7 +628,8 @@ public class MapPrinterServlet extends BaseMapServlet {
             @Override
             public Void successfulPrint(final PrintJobStatus successfulPrintResult, final HttpServletResponse httpServletResponse,
                                         final URI reportURI, final ReportLoader loader) throws IOException, ServletException {
-                sendReportFile(successfulPrintResult, httpServletResponse, loader, reportURI, inline);
+                sendReportFile(successfulPrintResult, getReportRequest, httpServletResponse, loader, reportURI,
+                        inline);
                 return null;
             }
 
@@ -475,6 +690,7 @@ public class MapPrinterServlet extends BaseMapServlet {
         String ref = createAndSubmitPrintJob(appId, format, requestData, createReportRequest, createReportResponse);
         if (ref == null) {
             error(createReportResponse, "Failed to create a print job", HttpStatus.INTERNAL_SERVER_ERROR);
+            return;
         }
 
         final HandleReportLoadResult<Boolean> handler = new HandleReportLoadResult<Boolean>() {
@@ -511,13 +727,13 @@ public class MapPrinterServlet extends BaseMapServlet {
             }
         };
 
-
-        boolean isDone = false;
-        long startWaitTime = System.currentTimeMillis();
         final long maxWaitTimeInMillis = TimeUnit.SECONDS.toMillis(this.maxCreateAndGetWaitTimeInSeconds);
-        while (!isDone && System.currentTimeMillis() - startWaitTime < maxWaitTimeInMillis) {
-            Thread.sleep(TimeUnit.SECONDS.toMillis(1));
-            isDone = loadReport(ref, createReportResponse, handler);
+        final ReportSender sender = new ReportSender(ref, createReportRequest, createReportResponse, handler);
+        if (createReportRequest.isAsyncSupported()) {
+            // the report is sent as soon as the job is done, without holding the container thread
+            sender.start(maxWaitTimeInMillis);
+        } else {
+            sender.await(maxWaitTimeInMillis);
         }
     }
 
@@ -799,6 +1015,15 @@ public class MapPrinterServlet extends BaseMapServlet {
         this.maxCreateAndGetWaitTimeInSeconds = maxCreateAndGetWaitTimeInSeconds;
     }
 
+    /**
+     * Maximum time a long-poll status request waits for a change.
+     *
+     * @param maxStatusWaitTimeInSeconds the maximum time in seconds.
+     */
+    public final void setMaxStatusWaitTimeInSeconds(final long maxStatusWaitTimeInSeconds) {
+        this.maxStatusWaitTimeInSeconds = maxStatusWaitTimeInSeconds;
+    }
+
     /**
      * Copy the PDF into the output stream.
      *
@@ -811,6 +1036,51 @@ public class MapPrinterServlet extends BaseMapServlet {
     protected final void sendReportFile(final PrintJobStatus metadata, final HttpServletResponse httpServletResponse,
                                         final ReportLoader reportLoader, final URI reportURI, final boolean inline)
             throws IOException, ServletException {
+        sendReportFile(metadata, null, httpServletResponse, reportLoader, reportURI, inline);
+    }
+
+    /**
+     * Copy the PDF into the output stream, or the requested part of it.
+     *
+     * @param metadata the client request data
+     * @param httpServletRequest the request object, null to always send the whole report
+     * @param httpServletResponse the response object
+     * @param reportLoader the object used for loading the report
+     * @param reportURI the uri of the report
+     * @param inline whether or not to inline the content
+     */
+    protected final void sendReportFile(final PrintJobStatus metadata,
+                                        @Nullable final HttpServletRequest httpServletRequest,
+                                        final HttpServletResponse httpServletResponse,
+                                        final ReportLoader reportLoader, final URI reportURI, final boolean inline)
+            throws IOException, ServletException {
+        ReportInfo info = null;
+        if (reportLoader instanceof RangeReportLoader) {
+            info = ((RangeReportLoader) reportLoader).getReportInfo(reportURI);
+        }
+        ByteRange range = null;
+        if (info != null) {
+            final String eTag = "\"" + info.getETag() + "\"";
+            httpServletResponse.setHeader("ETag", eTag);
+            httpServletResponse.setHeader("Accept-Ranges", "bytes");
+            if (httpServletRequest != null) {
+                final String ifNoneMatch = httpServletRequest.getHeader("If-None-Match");
+                if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(eTag))) {
+                    httpServletResponse.setStatus(HttpStatus.NOT_MODIFIED.value());
+                    return;
+                }
+                final String ifRange = httpServletRequest.getHeader("If-Range");
+                if (ifRange == null || ifRange.trim().equals(eTag)) {
+                    try {
+                        range = ByteRange.parse(httpServletRequest.getHeader("Range"), info.getLength());
+                    } catch (ByteRange.UnsatisfiableRangeException e) {
+                        httpServletResponse.setHeader("Content-Range", "bytes */" + info.getLength());
+                        httpServletResponse.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                        return;
+                    }
+                }
+            }
+        }
 
         final OutputStream response = httpServletResponse.getOutputStream();
         try {
@@ -828,7 +1098,18 @@ public class MapPrinterServlet extends BaseMapServlet {
                 fileName += "." + metadata.getResult().getFileExtension();
                 httpServletResponse.setHeader("Content-disposition", "attachment; filename=" + cleanUpName(fileName));
             }
-            reportLoader.loadReport(reportURI, response);
+            if (range != null) {
+                httpServletResponse.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                httpServletResponse.setHeader("Content-Range", range.toContentRange(info.getLength()));
+                httpServletResponse.setHeader("Content-Length", Long.toString(range.getLength()));
+                ((RangeReportLoader) reportLoader).loadReport(reportURI, range.getStart(), range.getLength(),
+                        response);
+            } else {
+                if (info != null) {
+                    httpServletResponse.setHeader("Content-Length", Long.toString(info.getLength()));
+                }
+                reportLoader.loadReport(reportURI, response);
+            }
         } finally {
             response.close();
         }
@@ -947,6 +1228,7 @@ public class MapPrinterServlet extends BaseMapServlet {
 
         PrintJobEntryImpl jobEntry = new PrintJobEntryImpl(ref, specJson, System.currentTimeMillis());
         jobEntry.configureAccess(template, this.context);
+        jobEntry.setEstimatedMemory(this.jobCostEstimator.estimate(template, specJson));
 
         try {
             this.jobManager.submit(jobEntry);
@@ -1027,4 +1309,297 @@ public class MapPrinterServlet extends BaseMapServlet {
         }
     }
 
+
+    /**
+     * Sends the status of a job asynchronously, once it has changed (long-poll) or as server-sent events.
+     */
+    private final class StatusPusher implements JobStatusWatcher.Listener, AsyncListener {
+        private final String referenceId;
+        private final String jsonpCallback;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final PrintJobStatus.Status initialStatus;
+        private final boolean events;
+        private final SecurityContext securityContext;
+        private AsyncContext asyncContext;
+        private ScheduledFuture<?> timeout;
+        private boolean finished = false;
+
+        /**
+         * Constructor.
+         *
+         * @param referenceId the job reference
+         * @param jsonpCallback the jsonp callback of a long-poll request, null for server-sent events
+         * @param request the request object
+         * @param response the response object
+         * @param initialStatus the status of the job when the request was received
+         */
+        private StatusPusher(final String referenceId, final String jsonpCallback,
+                             final HttpServletRequest request, final HttpServletResponse response,
+                             final PrintJobStatus.Status initialStatus) {
+            this.referenceId = referenceId;
+            this.jsonpCallback = jsonpCallback;
+            this.request = request;
+            this.response = response;
+            this.initialStatus = initialStatus;
+            this.events = jsonpCallback == null;
+            // the status is checked on the threads of the watcher
+            this.securityContext = SecurityContextHolder.getContext();
+        }
+
+        /**
+         * Start the asynchronous processing of the request.
+         *
+         * @param waitTime the maximum time to wait for a change (long-poll only)
+         */
+        private synchronized void start(final long waitTime) {
+            this.asyncContext = this.request.startAsync(this.request, this.response);
+            this.asyncContext.addListener(this);
+            final JobStatusWatcher watcher = MapPrinterServlet.this.jobStatusWatcher;
+            if (this.events) {
+                // the stream is closed when the job is done
+                this.asyncContext.setTimeout(0);
+            } else {
+                this.asyncContext.setTimeout(waitTime + ASYNC_TIMEOUT_MARGIN);
+                this.timeout = watcher.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendStatus(true);
+                    }
+                }, waitTime);
+            }
+            watcher.addListener(this.referenceId, this);
+            // the status may have changed before the listener was added
+            sendStatus(false);
+        }
+
+        @Override
+        public void checkStatus() {
+            sendStatus(false);
+        }
+
+        private synchronized void sendStatus(final boolean timedOut) {
+            if (this.finished) {
+                return;
+            }
+            final SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+            SecurityContextHolder.setContext(this.securityContext);
+            try {
+                // also resets the abandoned timeout of the job
+                final PrintJobStatus status = MapPrinterServlet.this.jobManager.getStatus(this.referenceId);
+                if (this.events) {
+                    final StringWriter data = new StringWriter();
+                    writeStatus(new JSONWriter(data), status, this.request, this.referenceId);
+                    final PrintWriter writer = this.response.getWriter();
+                    writer.write("event: status\ndata: " + data + "\n\n");
+                    writer.flush();
+                    if (writer.checkError()) {
+                        // the client has gone
+                        finish();
+                    } else if (status.isDone()) {
+                        finish();
+                    }
+                } else if (timedOut || status.isDone() || status.getStatus() != this.initialStatus) {
+                    final PrintWriter writer = this.response.getWriter();
+                    appendJsonpCallback(this.jsonpCallback, writer);
+                    writeStatus(new JSONWriter(writer), status, this.request, this.referenceId);
+                    appendJsonpCallbackEnd(this.jsonpCallback, writer);
+                    finish();
+                }
+            } catch (NoSuchReferenceException e) {
+                finish();
+            } catch (JSONException | IOException e) {
+                LOGGER.error("Error sending the status of " + this.referenceId, e);
+                finish();
+            } finally {
+                SecurityContextHolder.setContext(previousSecurityContext);
+            }
+        }
+
+        private synchronized void finish() {
+            if (!this.finished) {
+                cleanUp();
+                this.asyncContext.complete();
+            }
+        }
+
+        private synchronized void cleanUp() {
+            this.finished = true;
+            MapPrinterServlet.this.jobStatusWatcher.removeListener(this.referenceId, this);
+            if (this.timeout != null) {
+                this.timeout.cancel(false);
+            }
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+            cleanUp();
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            sendStatus(true);
+            finish();
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            cleanUp();
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+        }
+    }
+
+    /**
+     * Sends the report of a job once it is done (create and get).
+     * <p></p>
+     * If the request supports it, the processing is asynchronous, otherwise the container thread waits for
+     * the job to be done.
+     */
+    private final class ReportSender implements JobStatusWatcher.Listener, AsyncListener {
+        private final String referenceId;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final HandleReportLoadResult<Boolean> handler;
+        private final SecurityContext securityContext;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private AsyncContext asyncContext;
+        private ScheduledFuture<?> timeout;
+        private boolean finished = false;
+
+        private ReportSender(final String referenceId, final HttpServletRequest request,
+                             final HttpServletResponse response, final HandleReportLoadResult<Boolean> handler) {
+            this.referenceId = referenceId;
+            this.request = request;
+            this.response = response;
+            this.handler = handler;
+            // the status is checked on the threads of the watcher
+            this.securityContext = SecurityContextHolder.getContext();
+        }
+
+        /**
+         * Start the asynchronous processing of the request.
+         *
+         * @param waitTime the maximum time to wait for the report
+         */
+        private synchronized void start(final long waitTime) {
+            this.asyncContext = this.request.startAsync(this.request, this.response);
+            this.asyncContext.setTimeout(waitTime + ASYNC_TIMEOUT_MARGIN);
+            this.asyncContext.addListener(this);
+            final JobStatusWatcher watcher = MapPrinterServlet.this.jobStatusWatcher;
+            this.timeout = watcher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    finish();
+                }
+            }, waitTime);
+            watcher.addListener(this.referenceId, this);
+            // the job may be done before the listener was added
+            checkStatus();
+        }
+
+        /**
+         * Wait on the current thread for the job to be done and send the report.
+         *
+         * @param waitTime the maximum time to wait for the report
+         */
+        private void await(final long waitTime) throws InterruptedException, IOException, ServletException {
+            MapPrinterServlet.this.jobStatusWatcher.addListener(this.referenceId, this);
+            try {
+                checkStatus();
+                if (this.done.await(waitTime, TimeUnit.MILLISECONDS)) {
+                    loadReport(this.referenceId, this.response, this.handler);
+                }
+            } finally {
+                MapPrinterServlet.this.jobStatusWatcher.removeListener(this.referenceId, this);
+            }
+        }
+
+        @Override
+        public void checkStatus() {
+            final SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+            SecurityContextHolder.setContext(this.securityContext);
+            boolean isDone;
+            try {
+                isDone = MapPrinterServlet.this.jobManager.getStatus(this.referenceId).isDone();
+            } catch (NoSuchReferenceException e) {
+                // the handler sends the error
+                isDone = true;
+            } finally {
+                SecurityContextHolder.setContext(previousSecurityContext);
+            }
+            if (isDone) {
+                onJobDone();
+            }
+        }
+
+        private synchronized void onJobDone() {
+            if (this.finished || this.done.getCount() == 0) {
+                return;
+            }
+            this.done.countDown();
+            if (this.asyncContext != null) {
+                cleanUp();
+                // the report is written by a container thread, the threads of the watcher must stay available
+                this.asyncContext.start(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendReport();
+                    }
+                });
+            }
+        }
+
+        private void sendReport() {
+            final SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+            SecurityContextHolder.setContext(this.securityContext);
+            try {
+                loadReport(this.referenceId, this.response, this.handler);
+            } catch (IOException | ServletException e) {
+                LOGGER.error("Error sending the report of " + this.referenceId, e);
+            } finally {
+                SecurityContextHolder.setContext(previousSecurityContext);
+                this.asyncContext.complete();
+            }
+        }
+
+        /**
+         * Stop waiting for the report, nothing is sent.
+         */
+        private synchronized void finish() {
+            if (!this.finished) {
+                cleanUp();
+                this.asyncContext.complete();
+            }
+        }
+
+        private synchronized void cleanUp() {
+            this.finished = true;
+            MapPrinterServlet.this.jobStatusWatcher.removeListener(this.referenceId, this);
+            if (this.timeout != null) {
+                this.timeout.cancel(false);
+            }
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+            cleanUp();
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            cleanUp();
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+        }
+    }
 }
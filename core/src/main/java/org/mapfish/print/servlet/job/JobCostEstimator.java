@@ -0,0 +1,237 @@
+package org.mapfish.print.servlet.job;
+
+import com.codahale.metrics.MetricRegistry;
+import org.mapfish.print.Constants;
+import org.mapfish.print.attribute.Attribute;
+import org.mapfish.print.attribute.DataSourceAttribute;
+import org.mapfish.print.attribute.TableAttribute;
+import org.mapfish.print.attribute.map.GenericMapAttribute;
+import org.mapfish.print.attribute.map.PagingAttribute;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.map.DistanceUnit;
+import org.mapfish.print.processor.Processor;
+import org.mapfish.print.processor.jasper.DataSourceProcessor;
+import org.mapfish.print.servlet.MapPrinterServlet;
+import org.mapfish.print.wrapper.PObject;
+import org.mapfish.print.wrapper.json.PJsonArray;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the memory needed to print a job from its request, before the job is started. The estimate is used
+ * by the job manager to admit, queue or reject the jobs against its memory budget.
+ * <p></p>
+ * The estimate is a rough upper bound:
+ * <ul>
+ *     <li>each map needs a full raster (width &times; height at the requested dpi) per layer, plus one for the
+ *     composition;</li>
+ *     <li>the rows of a datasource are printed by windows of maxParallelRows rows (see
+ *     {@link DataSourceProcessor#setMaxParallelRows(int)}), each one costing as much as the biggest row;</li>
+ *     <li>the paging prints the largest map once per page (in the same windows), the number of pages being computed
+ *     from the extent of the map and the scale of the pages;</li>
+ *     <li>each cell of a table costs a fixed amount.</li>
+ * </ul>
+ */
+public class JobCostEstimator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobCostEstimator.class);
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final long DEFAULT_BASE_MEMORY = 16L * MEGABYTE;
+    private static final long DEFAULT_TABLE_CELL_MEMORY = 1024L;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final String DEFAULT_PROJECTION = "EPSG:3857";
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private long baseMemory = DEFAULT_BASE_MEMORY;
+    private long tableCellMemory = DEFAULT_TABLE_CELL_MEMORY;
+
+    /**
+     * The memory needed by any job (the template, the Jasper report, ...), in bytes. Default is 16MB.
+     *
+     * @param baseMemory the memory in bytes
+     */
+    public final void setBaseMemory(final long baseMemory) {
+        this.baseMemory = baseMemory;
+    }
+
+    /**
+     * The memory needed for each cell of a table, in bytes. Default is 1KB.
+     *
+     * @param tableCellMemory the memory in bytes
+     */
+    public final void setTableCellMemory(final long tableCellMemory) {
+        this.tableCellMemory = tableCellMemory;
+    }
+
+    /**
+     * Estimate the memory needed to print a request.
+     *
+     * @param template the template used by the request
+     * @param requestData the request
+     * @return the estimate in bytes
+     */
+    public final long estimate(final Template template, final PJsonObject requestData) {
+        long result;
+        try {
+            result = this.baseMemory + estimate(template.getAttributes(),
+                    requestData.optJSONObject(MapPrinterServlet.JSON_ATTRIBUTES), getMaxParallelRows(template));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to estimate the memory needed by the print job", e);
+            result = this.baseMemory;
+        }
+        this.metricRegistry.histogram(getClass().getName() + ".estimate").update(result);
+        return result;
+    }
+
+    /**
+     * The size of the windows in which the datasource rows are printed.
+     */
+    private int getMaxParallelRows(final Template template) {
+        int result = 0;
+        for (Processor processor : template.getProcessors()) {
+            if (processor instanceof DataSourceProcessor) {
+                result = Math.max(result, ((DataSourceProcessor) processor).getMaxParallelRows());
+            }
+        }
+        return result > 0 ? result : DataSourceProcessor.DEFAULT_MAX_PARALLEL_ROWS;
+    }
+
+    private long estimate(final Map<String, Attribute> attributes, @Nullable final PJsonObject values,
+                          final int maxParallelRows) {
+        if (values == null) {
+            return 0L;
+        }
+        final double defaultDpi = getDefaultDpi(attributes, values);
+        long result = 0L;
+        long largestMap = 0L;
+        GenericMapAttribute largestMapAttribute = null;
+        PJsonObject largestMapValues = null;
+        Double pagingScale = null;
+        for (Map.Entry<String, Attribute> entry : attributes.entrySet()) {
+            final String name = entry.getKey();
+            final Attribute attribute = entry.getValue();
+            if (attribute instanceof GenericMapAttribute) {
+                final GenericMapAttribute mapAttribute = (GenericMapAttribute) attribute;
+                final PJsonObject mapValues = values.optJSONObject(name);
+                final long map = estimateMap(mapAttribute, mapValues, defaultDpi);
+                result += map;
+                if (map > largestMap) {
+                    largestMap = map;
+                    largestMapAttribute = mapAttribute;
+                    largestMapValues = mapValues;
+                }
+            } else if (attribute instanceof DataSourceAttribute) {
+                final PJsonArray rows = values.optJSONArray(name);
+                if (rows != null) {
+                    final Map<String, Attribute> rowAttributes = ((DataSourceAttribute) attribute).getAttributes();
+                    long largestRow = 0L;
+                    for (int i = 0; i < rows.size(); i++) {
+                        largestRow = Math.max(largestRow,
+                                estimate(rowAttributes, rows.getJSONObject(i), maxParallelRows));
+                    }
+                    result += Math.min(rows.size(), maxParallelRows) * largestRow;
+                }
+            } else if (attribute instanceof TableAttribute) {
+                final PJsonObject table = values.optJSONObject(name);
+                if (table != null) {
+                    final PJsonArray columns = table.optJSONArray("columns");
+                    final PJsonArray data = table.optJSONArray("data");
+                    if (columns != null && data != null) {
+                        result += (long) columns.size() * data.size() * this.tableCellMemory;
+                    }
+                }
+            } else if (attribute instanceof PagingAttribute) {
+                pagingScale = getPagingScale((PagingAttribute) attribute, values.optJSONObject(name));
+            }
+        }
+        if (pagingScale != null && pagingScale > 0 && largestMapValues != null) {
+            result += Math.min(getNbPages(largestMapAttribute, largestMapValues, pagingScale), maxParallelRows) *
+                    largestMap;
+        }
+        return result;
+    }
+
+    /**
+     * The dpi used for the maps without one (the overview map uses the dpi of the main map).
+     */
+    private double getDefaultDpi(final Map<String, Attribute> attributes, final PJsonObject values) {
+        double result = Constants.PDF_DPI;
+        for (Map.Entry<String, Attribute> entry : attributes.entrySet()) {
+            if (entry.getValue() instanceof GenericMapAttribute) {
+                final PJsonObject mapValues = values.optJSONObject(entry.getKey());
+                if (mapValues != null && mapValues.optDouble("dpi") != null) {
+                    result = Math.max(result, mapValues.optDouble("dpi"));
+                }
+            }
+        }
+        return result;
+    }
+
+    private long estimateMap(final GenericMapAttribute attribute, @Nullable final PJsonObject mapValues,
+                             final double defaultDpi) {
+        if (attribute.getWidth() == null || attribute.getHeight() == null) {
+            return 0L;
+        }
+        double dpi = defaultDpi;
+        int nbLayers = 0;
+        if (mapValues != null) {
+            if (mapValues.optDouble("dpi") != null) {
+                dpi = mapValues.optDouble("dpi");
+            }
+            final PJsonArray layers = mapValues.optJSONArray("layers");
+            if (layers != null) {
+                nbLayers = layers.size();
+            }
+        }
+        final long width = Math.round(attribute.getWidth() * dpi / Constants.PDF_DPI);
+        final long height = Math.round(attribute.getHeight() * dpi / Constants.PDF_DPI);
+        return width * height * BYTES_PER_PIXEL * (nbLayers + 1);
+    }
+
+    /**
+     * The scale of the pages, from the request or from the default of the attribute.
+     */
+    @Nullable
+    private Double getPagingScale(final PagingAttribute attribute, @Nullable final PJsonObject pagingValues) {
+        if (pagingValues != null && pagingValues.optDouble("scale") != null) {
+            return pagingValues.optDouble("scale");
+        }
+        final PObject defaults = attribute.getDefaultValue();
+        return defaults != null ? defaults.optDouble("scale") : null;
+    }
+
+    /**
+     * The number of pages needed to cover the extent of the map at the scale of the pages.
+     */
+    private long getNbPages(final GenericMapAttribute attribute, final PJsonObject mapValues,
+                            final double pagingScale) {
+        final double pageWidth = attribute.getWidth() / Constants.PDF_DPI * pagingScale;
+        final double pageHeight = attribute.getHeight() / Constants.PDF_DPI * pagingScale;
+        final double mapWidth;
+        final double mapHeight;
+        final PJsonArray bbox = mapValues.optJSONArray("bbox");
+        final Double scale = mapValues.optDouble("scale");
+        if (bbox != null && bbox.size() == 4) {
+            final DistanceUnit unit = DistanceUnit.fromProjection(GenericMapAttribute.parseProjection(
+                    mapValues.optString("projection", DEFAULT_PROJECTION), mapValues.optBool("longitudeFirst")));
+            if (unit == null) {
+                return 1L;
+            }
+            mapWidth = unit.convertTo(bbox.getDouble(2) - bbox.getDouble(0), DistanceUnit.IN);
+            mapHeight = unit.convertTo(bbox.getDouble(3) - bbox.getDouble(1), DistanceUnit.IN);
+        } else if (scale != null) {
+            mapWidth = attribute.getWidth() / Constants.PDF_DPI * scale;
+            mapHeight = attribute.getHeight() / Constants.PDF_DPI * scale;
+        } else {
+            return 1L;
+        }
+        return Math.max(1L, (long) Math.ceil(mapWidth / pageWidth)) *
+                Math.max(1L, (long) Math.ceil(mapHeight / pageHeight));
+    }
+}
@@ -28,4 +28,14 @@ public interface JobManager {
      */
     PrintJobStatus getStatus(String referenceId) throws NoSuchReferenceException;
 
+    /**
+     * Get the execution trace of a job (Chrome trace event format). For a job running on this server, the trace
+     * contains the spans recorded so far.
+     *
+     * @param referenceId The referenceId of the job.
+     * @return the trace or null if there is no trace for the job.
+     * @throws NoSuchReferenceException
+     */
+    String getTrace(String referenceId) throws NoSuchReferenceException;
+
 }
@@ -95,6 +95,24 @@ public interface JobQueue {
      */
     void done(String referenceId, PrintJobResult result) throws NoSuchReferenceException;
 
+    /**
+     * Attach the execution trace to a job.
+     *
+     * @param referenceId reference id to the job.
+     * @param trace the trace (Chrome trace event format)
+     * @throws NoSuchReferenceException
+     */
+    void setTrace(String referenceId, String trace) throws NoSuchReferenceException;
+
+    /**
+     * Get the execution trace of a job.
+     *
+     * @param referenceId reference id to the job.
+     * @return the trace or null if the job has no trace (yet).
+     * @throws NoSuchReferenceException
+     */
+    String getTrace(String referenceId) throws NoSuchReferenceException;
+
     /**
      * Cancel old WAITING tasks.
      *
@@ -0,0 +1,157 @@
+package org.mapfish.print.servlet.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Notifies the clients waiting for the status of a print job (long-poll or server-sent events).
+ * <p></p>
+ * The job manager fires an event each time it changes the status of a job. Since the status can also be
+ * changed by another instance (clustered mode), the listeners are also checked at a regular interval.
+ * The listeners are always called on the threads of this watcher, never on the thread firing the event.
+ */
+public class JobStatusWatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStatusWatcher.class);
+    private static final long DEFAULT_CHECK_INTERVAL_IN_SECONDS = 5L;
+    private static final int NB_THREADS = 2;
+
+    private long checkInterval = DEFAULT_CHECK_INTERVAL_IN_SECONDS;
+
+    private final Map<String, Set<Listener>> listeners = new ConcurrentHashMap<String, Set<Listener>>();
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * The interval (in seconds) at which all the listeners are checked, even without event.
+     *
+     * @param checkInterval the interval
+     */
+    public final void setCheckInterval(final long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Called by spring after constructing the java bean.
+     */
+    @PostConstruct
+    public final void init() {
+        this.executor = Executors.newScheduledThreadPool(NB_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable task) {
+                final Thread thread = new Thread(task, "Job status watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<String, Set<Listener>> entry: JobStatusWatcher.this.listeners.entrySet()) {
+                    for (Listener listener: entry.getValue()) {
+                        check(entry.getKey(), listener);
+                    }
+                }
+            }
+        }, this.checkInterval, this.checkInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Called by spring when application context is being destroyed.
+     */
+    @PreDestroy
+    public final void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Add a listener for the status of a job.
+     *
+     * @param referenceId the job reference
+     * @param listener the listener
+     */
+    public final void addListener(final String referenceId, final Listener listener) {
+        Set<Listener> jobListeners = this.listeners.get(referenceId);
+        if (jobListeners == null) {
+            final Set<Listener> newListeners = ConcurrentHashMap.newKeySet();
+            jobListeners = this.listeners.putIfAbsent(referenceId, newListeners);
+            if (jobListeners == null) {
+                jobListeners = newListeners;
+            }
+        }
+        jobListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param referenceId the job reference
+     * @param listener the listener
+     */
+    public final void removeListener(final String referenceId, final Listener listener) {
+        final Set<Listener> jobListeners = this.listeners.get(referenceId);
+        if (jobListeners != null) {
+            jobListeners.remove(listener);
+            if (jobListeners.isEmpty()) {
+                this.listeners.remove(referenceId, jobListeners);
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners that the status of a job has changed.
+     *
+     * @param referenceId the job reference
+     */
+    public final void fireStatusChanged(final String referenceId) {
+        final Set<Listener> jobListeners = this.listeners.get(referenceId);
+        if (jobListeners != null) {
+            for (final Listener listener: jobListeners) {
+                this.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        check(referenceId, listener);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Run a task after a delay on the threads of the watcher.
+     *
+     * @param task the task
+     * @param delay the delay in milliseconds
+     */
+    public final ScheduledFuture<?> schedule(final Runnable task, final long delay) {
+        return this.executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void check(final String referenceId, final Listener listener) {
+        try {
+            listener.checkStatus();
+        } catch (Throwable t) {
+            LOGGER.error("Error while checking the status of " + referenceId, t);
+        }
+    }
+
+    /**
+     * A client waiting for the status of a job.
+     */
+    public interface Listener {
+        /**
+         * Called when the status of the job may have changed.
+         */
+        void checkStatus();
+    }
+}
@@ -2,14 +2,19 @@ package org.mapfish.print.servlet.job;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.mapfish.print.Constants;
 import org.mapfish.print.MapPrinter;
 import org.mapfish.print.MapPrinterFactory;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.output.OutputFormat;
+import org.mapfish.print.servlet.NoSuchAppException;
 import org.mapfish.print.servlet.job.impl.PrintJobEntryImpl;
 import org.mapfish.print.servlet.job.impl.PrintJobResultImpl;
+import org.mapfish.print.trace.JobTrace;
+import org.mapfish.print.trace.JobTraces;
 import org.mapfish.print.wrapper.json.PJsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +24,8 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.Set;
@@ -31,6 +38,8 @@ import javax.annotation.Nullable;
  */
 public abstract class PrintJob implements Callable<PrintJobResult> {
     private static final Logger LOGGER = LoggerFactory.getLogger(PrintJob.class);
+    private static final int DEFAULT_MAX_TRACE_SPANS = 10000;
+    private static final int DEFAULT_MAX_STORED_TRACE_SPANS = 200;
 
     private PrintJobEntry entry;
 
@@ -38,9 +47,23 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
     private MapPrinterFactory mapPrinterFactory;
     @Autowired
     private MetricRegistry metricRegistry;
+    @Autowired
+    private PrintResultCache printResultCache;
+    @Autowired
+    private JobQueue jobQueue;
 
     private SecurityContext securityContext;
 
+    private boolean traceEnabled = true;
+    private int maxTraceSpans = DEFAULT_MAX_TRACE_SPANS;
+    private int maxStoredTraceSpans = DEFAULT_MAX_STORED_TRACE_SPANS;
+    private File traceDirectory = null;
+    private long deadline = Long.MAX_VALUE;
+
+    private boolean reportClaimed = false;
+    private PrintResultCache.Key cacheKey = null;
+    private ListenableFuture<URI> identicalReport = null;
+
     public final PrintJobEntry getEntry() {
         return this.entry;
     }
@@ -73,22 +96,130 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
         return new PrintJobResultImpl(reportURI, fileName, fileExtension, mimeType, referenceId);
     }
 
+    /**
+     * Record an execution trace of the jobs (default true).
+     *
+     * @param traceEnabled true to trace the jobs
+     */
+    public final void setTraceEnabled(final boolean traceEnabled) {
+        this.traceEnabled = traceEnabled;
+    }
+
+    /**
+     * The maximum number of spans recorded in the trace of a job (default 10000).
+     *
+     * @param maxTraceSpans the number of spans
+     */
+    public final void setMaxTraceSpans(final int maxTraceSpans) {
+        this.maxTraceSpans = maxTraceSpans;
+    }
+
+    /**
+     * The maximum number of spans kept with the status of a finished job, the longest ones (default 200). The full
+     * traces are only written in the trace directory.
+     *
+     * @param maxStoredTraceSpans the number of spans
+     */
+    public final void setMaxStoredTraceSpans(final int maxStoredTraceSpans) {
+        this.maxStoredTraceSpans = maxStoredTraceSpans;
+    }
+
+    /**
+     * If set, the full traces of the jobs are written in this directory (&lt;referenceId&gt;.trace.json).
+     *
+     * @param traceDirectory the directory
+     */
+    public final void setTraceDirectory(final File traceDirectory) {
+        this.traceDirectory = traceDirectory;
+    }
+
+    /**
+     * The time (in milliseconds since the epoch) at which the job is cancelled for timeout, the wait for the report
+     * of an identical job doesn't last longer.
+     *
+     * @param deadline the time
+     */
+    public final void setDeadline(final long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Look for the report of an identical job (done or in progress), if there is none this job claims the printing
+     * of the report, so that the identical jobs submitted later use it. The job manager calls it when the job is
+     * submitted, otherwise it is done when the job starts.
+     *
+     * @return the future report of the identical job, or null if this job prints its report.
+     */
+    @Nullable
+    public final synchronized ListenableFuture<URI> claimReport() {
+        if (!this.reportClaimed) {
+            this.reportClaimed = true;
+            if (this.printResultCache != null) {
+                try {
+                    final MapPrinter mapPrinter = this.mapPrinterFactory.create(this.entry.getAppId());
+                    this.cacheKey = mapPrinter == null ? null : this.printResultCache.createKey(
+                            mapPrinter.getConfiguration(), this.entry.getRequestData(), this.entry.getAccess());
+                    if (this.cacheKey != null) {
+                        this.identicalReport = this.printResultCache.claim(this.cacheKey);
+                    }
+                } catch (NoSuchAppException | RuntimeException e) {
+                    // the job will fail when it starts
+                    LOGGER.debug("Unable to look for an identical print job", e);
+                }
+            }
+        }
+        return this.identicalReport;
+    }
+
+    /**
+     * Called when the job is done: if it claimed the printing of its report without printing it (it failed or was
+     * cancelled before running), the identical jobs waiting for it are released.
+     */
+    public final synchronized void releaseReport() {
+        if (this.cacheKey != null) {
+            this.printResultCache.failed(this.cacheKey);
+        }
+    }
+
     @Override
     public final PrintJobResult call() throws Exception {
         SecurityContextHolder.setContext(this.securityContext);
         Timer.Context timer = this.metricRegistry.timer(getClass().getName() + ".call").time();
+        if (this.traceEnabled) {
+            JobTraces.start(this.entry.getReferenceId(), this.maxTraceSpans);
+        }
+        final JobTrace.Span span = JobTraces.span(this.entry.getReferenceId(), "job", getClass().getSimpleName());
         try {
             MDC.put("job_id", this.entry.getReferenceId());
             LOGGER.info("Starting print job {}", this.entry.getReferenceId());
             final PJsonObject spec = this.entry.getRequestData();
             final MapPrinter mapPrinter = PrintJob.this.mapPrinterFactory.create(this.entry.getAppId());
-            URI reportURI = withOpenOutputStream(new PrintAction() {
-                @Override
-                public void run(final OutputStream outputStream) throws Exception {
-                    mapPrinter.print(PrintJob.this.entry.getReferenceId(),
-                            PrintJob.this.entry.getRequestData(), outputStream);
+            final ListenableFuture<URI> identical = claimReport();
+            URI reportURI = null;
+            if (identical != null) {
+                reportURI = copyIdenticalReport(identical);
+            }
+            if (reportURI == null) {
+                boolean printed = false;
+                try {
+                    reportURI = withOpenOutputStream(new PrintAction() {
+                        @Override
+                        public void run(final OutputStream outputStream) throws Exception {
+                            mapPrinter.print(PrintJob.this.entry.getReferenceId(),
+                                    PrintJob.this.entry.getRequestData(), outputStream);
+                        }
+                    });
+                    printed = true;
+                } finally {
+                    if (this.cacheKey != null) {
+                        if (printed) {
+                            this.printResultCache.done(this.cacheKey, reportURI);
+                        } else {
+                            this.printResultCache.failed(this.cacheKey);
+                        }
+                    }
                 }
-            });
+            }
 
             LOGGER.info("Successfully completed print job {}", this.entry.getReferenceId());
             LOGGER.debug("Job {}\n{}", this.entry.getReferenceId(), this.entry.getRequestData());
@@ -115,6 +246,57 @@ public abstract class PrintJob implements Callable<PrintJobResult> {
         } finally {
             final long stop = TimeUnit.MILLISECONDS.convert(timer.stop(), TimeUnit.NANOSECONDS);
             LOGGER.debug("Print Job {} completed in {}ms", this.entry.getReferenceId(), stop);
+            span.end();
+            saveTrace();
+        }
+    }
+
+    /**
+     * Attach a summary of the trace to the status of the job (the statuses are kept in memory for a while) and
+     * write the full trace to the trace directory.
+     */
+    private void saveTrace() {
+        final JobTrace trace = JobTraces.finish(this.entry.getReferenceId());
+        if (trace == null) {
+            return;
+        }
+        try {
+            if (this.jobQueue != null) {
+                this.jobQueue.setTrace(this.entry.getReferenceId(), trace.toSummaryJson(this.maxStoredTraceSpans));
+            }
+            if (this.traceDirectory != null) {
+                Files.write(trace.toJson(), new File(this.traceDirectory, this.entry.getReferenceId() + ".trace.json"),
+                        Constants.DEFAULT_CHARSET);
+            }
+        } catch (NoSuchReferenceException | IOException | RuntimeException e) {
+            LOGGER.warn("Unable to save the trace of the job " + this.entry.getReferenceId(), e);
+        }
+    }
+
+    /**
+     * Wait for the report of an identical print job (at most until the deadline of this job) and copy it.
+     *
+     * @param identical the report of the identical job
+     * @return the URI of the copy or null if the report has to be printed.
+     */
+    @Nullable
+    private URI copyIdenticalReport(final ListenableFuture<URI> identical) throws Exception {
+        final URI source = PrintResultCache.waitForReport(identical, this.deadline - System.currentTimeMillis());
+        if (source == null) {
+            return null;
+        }
+        try {
+            final URI result = withOpenOutputStream(new PrintAction() {
+                @Override
+                public void run(final OutputStream outputStream) throws Exception {
+                    PrintJob.this.printResultCache.copyReport(source, outputStream);
+                }
+            });
+            LOGGER.info("Print job {} reused the report {}", this.entry.getReferenceId(), source);
+            return result;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to copy the report " + source + ", printing it again", e);
+            return null;
         }
     }
 
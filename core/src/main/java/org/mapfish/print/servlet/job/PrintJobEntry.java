@@ -46,6 +46,11 @@ public interface PrintJobEntry {
      */
     long getTimeSinceStart();
 
+    /**
+     * Get the estimated memory needed to print the job, in bytes (0 if unknown).
+     */
+    long getEstimatedMemory();
+
     /**
      * Assert that the current is authorized to access this job.
      */
@@ -0,0 +1,277 @@
+package org.mapfish.print.servlet.job;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mapfish.print.Constants;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.config.access.AccessAssertion;
+import org.mapfish.print.servlet.job.loader.ReportLoader;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+
+/**
+ * Remembers the reports of the recent print jobs so an identical request can be answered by copying an existing
+ * report (or, once it is done, the report of the identical job in progress) instead of printing it again.
+ * <p></p>
+ * Two requests are identical if they have the same canonical JSON (the key order doesn't matter), the same app,
+ * the same configuration (a reloaded configuration doesn't reuse the reports of the previous one) and the same
+ * access assertion. The cache is disabled by default and the templates with time-dependent content can opt out
+ * with {@link Template#setCacheResult(boolean)}.
+ */
+public class PrintResultCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrintResultCache.class);
+    private static final long DEFAULT_TIME_TO_LIVE_IN_SECONDS = 300;
+    private static final long DEFAULT_MAX_SIZE = 1000;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Autowired
+    private List<ReportLoader> reportLoaders;
+
+    private boolean enabled = false;
+    private long timeToLiveInSeconds = DEFAULT_TIME_TO_LIVE_IN_SECONDS;
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    private Cache<String, CachedResult> results;
+
+    /**
+     * Enable the reuse of the reports.
+     *
+     * @param enabled true to enable
+     */
+    public final void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * The time (in seconds) a report can be reused after the end of the job that printed it. It must be lower
+     * than the time the reports are kept.
+     *
+     * @param timeToLiveInSeconds the time to live
+     */
+    public final void setTimeToLiveInSeconds(final long timeToLiveInSeconds) {
+        this.timeToLiveInSeconds = timeToLiveInSeconds;
+    }
+
+    /**
+     * The maximum number of remembered reports.
+     *
+     * @param maxSize the size
+     */
+    public final void setMaxSize(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Called by spring after constructing the java bean.
+     */
+    @PostConstruct
+    public final void init() {
+        this.results = CacheBuilder.newBuilder()
+                .expireAfterWrite(this.timeToLiveInSeconds, TimeUnit.SECONDS)
+                .maximumSize(this.maxSize)
+                .build();
+    }
+
+    /**
+     * Get the key of a request.
+     *
+     * @param configuration the configuration of the app
+     * @param spec the request
+     * @param access the access assertion of the job
+     * @return null if the result of this request must not be reused.
+     */
+    @Nullable
+    public final Key createKey(final Configuration configuration, final PJsonObject spec,
+                               final AccessAssertion access) {
+        if (!this.enabled) {
+            return null;
+        }
+        try {
+            final Template template = configuration.getTemplate(spec.getString(Constants.JSON_LAYOUT_KEY));
+            if (!template.isCacheResult()) {
+                return null;
+            }
+            final Hasher hasher = Hashing.sha256().newHasher();
+            final StringBuilder canonical = new StringBuilder();
+            appendCanonical(canonical, spec.getInternalObj());
+            canonical.append('\n').append(access.getClass().getName()).append('\n');
+            appendCanonical(canonical, access.marshal());
+            hasher.putString(canonical, Constants.DEFAULT_CHARSET);
+            return new Key(hasher.hash().toString(), configuration);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to compute the key of the request, its result will not be reused", e);
+            return null;
+        }
+    }
+
+    /**
+     * Look for the report of an identical request, if none is found the caller becomes the one printing it
+     * and must call {@link #done(Key, URI)} or {@link #failed(Key)}.
+     *
+     * @param key the key of the request
+     * @return the future report of the identical job, or null if the caller has to print it.
+     */
+    @Nullable
+    public final ListenableFuture<URI> claim(final Key key) {
+        final CachedResult candidate = new CachedResult(key.configuration);
+        while (true) {
+            final CachedResult existing = this.results.asMap().putIfAbsent(key.hash, candidate);
+            if (existing == null) {
+                this.metricRegistry.counter(getClass().getName() + ".miss").inc();
+                key.claimed = candidate;
+                return null;
+            }
+            if (existing.configuration == key.configuration) {
+                this.metricRegistry.counter(getClass().getName() + ".hit").inc();
+                return existing.report;
+            }
+            // printed with a previous version of the configuration
+            this.results.asMap().remove(key.hash, existing);
+        }
+    }
+
+    /**
+     * Called when the job that claimed a key has printed its report.
+     *
+     * @param key the key of the request
+     * @param reportURI the report
+     */
+    public final void done(final Key key, final URI reportURI) {
+        final CachedResult claimed = key.claimed;
+        if (claimed != null) {
+            claimed.report.set(reportURI);
+            // restart the time to live from the end of the print
+            this.results.asMap().replace(key.hash, claimed, claimed);
+        }
+    }
+
+    /**
+     * Called when the job that claimed a key has failed or was cancelled, the next identical request will be
+     * printed again. Does nothing if the report was already printed.
+     *
+     * @param key the key of the request
+     */
+    public final void failed(final Key key) {
+        final CachedResult claimed = key.claimed;
+        if (claimed != null && !claimed.report.isDone()) {
+            this.results.asMap().remove(key.hash, claimed);
+            claimed.report.setException(new IllegalStateException("The identical print job failed"));
+        }
+    }
+
+    /**
+     * Copy a report printed by another job.
+     *
+     * @param reportURI the report
+     * @param out where to write it
+     */
+    public final void copyReport(final URI reportURI, final OutputStream out) throws IOException {
+        for (ReportLoader loader: this.reportLoaders) {
+            if (loader.accepts(reportURI)) {
+                loader.loadReport(reportURI, out);
+                return;
+            }
+        }
+        throw new IOException("No loader for the report " + reportURI);
+    }
+
+    /**
+     * Wait for the report of an identical job.
+     *
+     * @param report the future report
+     * @param timeout the maximum time to wait (in milliseconds)
+     * @return the report or null if the identical job failed or is not done in time.
+     */
+    @Nullable
+    public static URI waitForReport(final Future<URI> report, final long timeout) throws InterruptedException {
+        try {
+            return report.get(Math.max(0L, timeout), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private static void appendCanonical(final StringBuilder builder, final Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            final List<String> keys = new ArrayList<String>();
+            final Iterator<?> iterator = object.keys();
+            while (iterator.hasNext()) {
+                keys.add((String) iterator.next());
+            }
+            Collections.sort(keys);
+            builder.append('{');
+            for (String key: keys) {
+                builder.append(JSONObject.quote(key)).append(':');
+                appendCanonical(builder, object.get(key));
+                builder.append(',');
+            }
+            builder.append('}');
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            builder.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                appendCanonical(builder, array.get(i));
+                builder.append(',');
+            }
+            builder.append(']');
+        } else if (value instanceof String) {
+            builder.append(JSONObject.quote((String) value));
+        } else {
+            builder.append(JSONObject.valueToString(value));
+        }
+    }
+
+    /**
+     * The key of a request.
+     */
+    public static final class Key {
+        private final String hash;
+        private final Configuration configuration;
+        private CachedResult claimed = null;
+
+        private Key(final String hash, final Configuration configuration) {
+            this.hash = hash;
+            this.configuration = configuration;
+        }
+    }
+
+    /**
+     * The report of a request, set once the job printing it is done.
+     */
+    private static final class CachedResult {
+        private final Configuration configuration;
+        private final SettableFuture<URI> report = SettableFuture.create();
+
+        private CachedResult(final Configuration configuration) {
+            this.configuration = configuration;
+        }
+    }
+}
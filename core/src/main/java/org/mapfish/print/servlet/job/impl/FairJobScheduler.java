@@ -0,0 +1,310 @@
+package org.mapfish.print.servlet.job.impl;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which waiting jobs are started when slots are free, so that one tenant (an app, a template or a user)
+ * cannot take all the slots.
+ * <p></p>
+ * This is a start-time fair queueing: each tenant has a virtual time which advances by 1/weight each time one of
+ * its jobs is started, and the next job is taken from the tenant with the lowest virtual time. A tenant that becomes
+ * active starts at the current virtual time, so being idle doesn't give credits. Inside a tenant, the jobs are
+ * ordered by the given comparator.
+ * <p></p>
+ * The number of running and waiting jobs per tenant can be limited, and a job can be held back by an admission
+ * check (the memory budget): the next job of a tenant that is not admitted waits, without blocking the other
+ * tenants.
+ * <p></p>
+ * The metrics are aggregated for all the tenants and by group (the app): the tenants may contain the user names,
+ * which must not end in the metric names, and there would be no bound on the number of metrics.
+ *
+ * @param <J> the type of the jobs
+ */
+final class FairJobScheduler<J> {
+    private final int maxRunningJobs;
+    private final int maxRunningJobsPerTenant;
+    private final int maxWaitingJobsPerTenant;
+    private final Comparator<J> jobComparator;
+    private final MetricRegistry metricRegistry;
+    private final String metricPrefix;
+
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+    private final Map<String, Group> groups = new HashMap<>();
+    // keyed by future: a reference may be reused once its job is done, while the previous future is still ending
+    private final Map<Future<?>, Entry> entries = new IdentityHashMap<>();
+    private int nbRunning = 0;
+    private double virtualTime = 0.0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxRunningJobs the total number of slots
+     * @param maxRunningJobsPerTenant the maximum number of running jobs of a tenant, 0 for no limit
+     * @param maxWaitingJobsPerTenant the maximum number of waiting jobs of a tenant, 0 for no limit
+     * @param jobComparator the order of the jobs of a tenant
+     * @param metricRegistry the registry for the metrics
+     * @param metricPrefix the prefix of the metric names
+     */
+    FairJobScheduler(final int maxRunningJobs, final int maxRunningJobsPerTenant, final int maxWaitingJobsPerTenant,
+                     final Comparator<J> jobComparator, final MetricRegistry metricRegistry,
+                     final String metricPrefix) {
+        this.maxRunningJobs = maxRunningJobs;
+        this.maxRunningJobsPerTenant = maxRunningJobsPerTenant;
+        this.maxWaitingJobsPerTenant = maxWaitingJobsPerTenant;
+        this.jobComparator = jobComparator;
+        this.metricRegistry = metricRegistry;
+        this.metricPrefix = metricPrefix;
+    }
+
+    /**
+     * Throw an exception if the tenant has reached its quota of waiting jobs.
+     *
+     * @param tenant the tenant
+     */
+    public synchronized void assertCanQueue(final String tenant) {
+        final Tenant state = this.tenants.get(tenant);
+        if (this.maxWaitingJobsPerTenant > 0 && state != null &&
+                state.waiting.size() >= this.maxWaitingJobsPerTenant) {
+            throw new RuntimeException("Max. number of waiting print job requests exceeded for " + tenant +
+                    ".  Number of waiting requests are: " + state.waiting.size());
+        }
+    }
+
+    /**
+     * Add a job to the queue of its tenant.
+     *
+     * @param referenceId the job reference
+     * @param tenant the tenant of the job
+     * @param group the group of the tenant for the metrics, must not contain the user
+     * @param weight the weight of the tenant (its share of the slots relative to the other tenants)
+     * @param job the job
+     * @param future the future to execute when the job is started
+     */
+    public synchronized void add(final String referenceId, final String tenant, final String group,
+                                 final double weight, final J job, final Future<?> future) {
+        Tenant state = this.tenants.get(tenant);
+        if (state == null) {
+            Group groupState = this.groups.get(group);
+            if (groupState == null) {
+                groupState = new Group(group);
+                this.groups.put(group, groupState);
+            }
+            groupState.nbTenants++;
+            state = new Tenant(tenant, groupState, weight, this.virtualTime);
+            this.tenants.put(tenant, state);
+        } else if (state.waiting.isEmpty()) {
+            state.virtualTime = Math.max(state.virtualTime, this.virtualTime);
+        }
+        final Entry entry = new Entry(referenceId, state, job, future);
+        this.entries.put(future, entry);
+        state.waiting.add(entry);
+        updateWaiting(state, 1);
+    }
+
+    /**
+     * Take the jobs to start in the free slots.
+     *
+     * @return the futures to execute
+     */
+    public List<Future<?>> dispatch() {
+        return dispatch(Predicates.<J>alwaysTrue());
+    }
+
+    /**
+     * Take the jobs to start in the free slots, among the ones accepted by the admission check.
+     * <p></p>
+     * The admission check is called (once) on the next job of the tenants, in their fair order. It must not block and
+     * it takes the resources of the job when it accepts it. The tenants whose next job is refused are skipped until
+     * the next dispatch.
+     *
+     * @param admission the admission check
+     * @return the futures to execute
+     */
+    public synchronized List<Future<?>> dispatch(final Predicate<J> admission) {
+        final List<Future<?>> result = new ArrayList<>();
+        final Set<Tenant> refused = new HashSet<>();
+        while (this.nbRunning < this.maxRunningJobs) {
+            Tenant next = null;
+            for (Tenant tenant : this.tenants.values()) {
+                if (!tenant.waiting.isEmpty() && !refused.contains(tenant) && (this.maxRunningJobsPerTenant <= 0 ||
+                        tenant.nbRunning < this.maxRunningJobsPerTenant) &&
+                        (next == null || tenant.virtualTime < next.virtualTime)) {
+                    next = tenant;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            final Entry head = next.waiting.peek();
+            if (!head.future.isCancelled() && !admission.apply(head.job)) {
+                // the order of the jobs of a tenant is kept, so its smaller jobs don't starve this one
+                refused.add(next);
+                continue;
+            }
+            final Entry entry = next.waiting.poll();
+            updateWaiting(next, -1);
+            if (entry.future.isCancelled()) {
+                this.entries.remove(entry.future);
+                removeIfIdle(next);
+                continue;
+            }
+            this.virtualTime = next.virtualTime;
+            next.virtualTime += 1.0 / next.weight;
+            next.nbRunning++;
+            this.nbRunning++;
+            entry.running = true;
+            final long waitTime = System.currentTimeMillis() - entry.queuedTime;
+            this.metricRegistry.timer(this.metricPrefix + ".waitTime").update(waitTime, TimeUnit.MILLISECONDS);
+            this.metricRegistry.timer(next.group.metricName + ".waitTime").update(waitTime, TimeUnit.MILLISECONDS);
+            result.add(entry.future);
+        }
+        return result;
+    }
+
+    /**
+     * Called when a job is done (or cancelled), to free its slot.
+     *
+     * @param future the future of the job
+     */
+    public synchronized void done(final Future<?> future) {
+        final Entry entry = this.entries.remove(future);
+        if (entry == null) {
+            return;
+        }
+        final Tenant tenant = entry.tenant;
+        if (entry.running) {
+            tenant.nbRunning--;
+            this.nbRunning--;
+        } else if (tenant.waiting.remove(entry)) {
+            updateWaiting(tenant, -1);
+        }
+        removeIfIdle(tenant);
+    }
+
+    private void removeIfIdle(final Tenant tenant) {
+        // forget the idle tenants, they restart at the current virtual time anyway
+        if (tenant.nbRunning == 0 && tenant.waiting.isEmpty() && this.tenants.remove(tenant.name, tenant)) {
+            final Group group = tenant.group;
+            if (--group.nbTenants == 0) {
+                this.groups.remove(group.name);
+                this.metricRegistry.remove(group.metricName + ".waiting");
+                this.metricRegistry.remove(group.metricName + ".waitTime");
+            }
+        }
+    }
+
+    private void updateWaiting(final Tenant tenant, final int delta) {
+        this.metricRegistry.counter(this.metricPrefix + ".waiting").inc(delta);
+        this.metricRegistry.counter(tenant.group.metricName + ".waiting").inc(delta);
+    }
+
+    /**
+     * Estimate after how many rounds (a round being the time to print as many jobs as there are slots) a waiting
+     * job will be started: the jobs of its tenant that are before it, and the jobs of the other tenants that will
+     * be started in the meantime according to their weights.
+     *
+     * @param referenceId the job reference
+     * @return the number of rounds or a negative number if the job is not waiting here
+     */
+    public synchronized double getWaitingRounds(final String referenceId) {
+        Entry entry = null;
+        for (Entry candidate : this.entries.values()) {
+            if (!candidate.running && candidate.referenceId.equals(referenceId)) {
+                entry = candidate;
+            }
+        }
+        if (entry == null) {
+            return -1.0;
+        }
+        final Tenant tenant = entry.tenant;
+        int position = 0;
+        for (Entry other : tenant.waiting) {
+            if (other != entry && this.jobComparator.compare(other.job, entry.job) <= 0) {
+                position++;
+            }
+        }
+        double jobsBefore = position;
+        for (Tenant other : this.tenants.values()) {
+            if (other != tenant) {
+                jobsBefore += Math.min(other.waiting.size(), Math.ceil((position + 1) * other.weight / tenant.weight));
+            }
+        }
+        double rounds = jobsBefore / this.maxRunningJobs;
+        if (this.maxRunningJobsPerTenant > 0) {
+            rounds = Math.max(rounds, (double) position / this.maxRunningJobsPerTenant);
+        }
+        return rounds;
+    }
+
+    /**
+     * The waiting and running jobs of a tenant.
+     */
+    private final class Tenant {
+        private final String name;
+        private final Group group;
+        private final double weight;
+        private final PriorityQueue<Entry> waiting = new PriorityQueue<>(11, new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry o1, final Entry o2) {
+                return FairJobScheduler.this.jobComparator.compare(o1.job, o2.job);
+            }
+        });
+        private int nbRunning = 0;
+        private double virtualTime;
+
+        private Tenant(final String name, final Group group, final double weight, final double virtualTime) {
+            this.name = name;
+            this.group = group;
+            this.weight = weight > 0 ? weight : 1.0;
+            this.virtualTime = virtualTime;
+        }
+    }
+
+    /**
+     * The tenants sharing the same metrics, kept while one of them is active.
+     */
+    private final class Group {
+        private final String name;
+        private final String metricName;
+        private int nbTenants = 0;
+
+        private Group(final String name) {
+            this.name = name;
+            this.metricName = FairJobScheduler.this.metricPrefix + ".app." + name;
+        }
+    }
+
+    /**
+     * A job known by the scheduler.
+     */
+    private final class Entry {
+        private final String referenceId;
+        private final Tenant tenant;
+        private final J job;
+        private final Future<?> future;
+        private final long queuedTime = System.currentTimeMillis();
+        private boolean running = false;
+
+        private Entry(final String referenceId, final Tenant tenant, final J job, final Future<?> future) {
+            this.referenceId = referenceId;
+            this.tenant = tenant;
+            this.job = job;
+            this.future = future;
+        }
+    }
+}
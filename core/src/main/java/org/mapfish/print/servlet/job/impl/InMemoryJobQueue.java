@@ -0,0 +1,273 @@
+package org.mapfish.print.servlet.job.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.mapfish.print.servlet.job.JobQueue;
+import org.mapfish.print.servlet.job.NoSuchReferenceException;
+import org.mapfish.print.servlet.job.PrintJobEntry;
+import org.mapfish.print.servlet.job.PrintJobResult;
+import org.mapfish.print.servlet.job.PrintJobStatus;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.PostConstruct;
+
+/**
+ * Job Queue for a single node that keeps the statuses in memory.
+ * <p></p>
+ * Unlike {@link RegistryJobQueue}, the statuses are not converted to JSON and there is no global lock: the
+ * jobs are kept in a concurrent cache, the state of each job is changed atomically and the counters are
+ * atomic. The jobs expire after timeToKeepAfterAccessInMinutes without access, like in the registry.
+ */
+public class InMemoryJobQueue implements JobQueue {
+    private static final int DEFAULT_TIME_TO_KEEP_AFTER_ACCESS = 30; /* minutes */
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private int timeToKeepAfterAccessInMinutes = DEFAULT_TIME_TO_KEEP_AFTER_ACCESS;
+    private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+
+    private Cache<String, JobRecord> jobs;
+
+    private final AtomicInteger newPrintCount = new AtomicInteger();
+    private final AtomicInteger lastPrintCount = new AtomicInteger();
+    private final AtomicInteger nbPrintDone = new AtomicInteger();
+    private final AtomicLong totalPrintTime = new AtomicLong();
+
+    public final void setTimeToKeepAfterAccessInMinutes(final int timeToKeepAfterAccessInMinutes) {
+        this.timeToKeepAfterAccessInMinutes = timeToKeepAfterAccessInMinutes;
+    }
+
+    /**
+     * The number of lock stripes of the cache, an estimate of the number of threads updating the queue at the
+     * same time.
+     *
+     * @param concurrencyLevel the concurrency level
+     */
+    public final void setConcurrencyLevel(final int concurrencyLevel) {
+        this.concurrencyLevel = concurrencyLevel;
+    }
+
+    /**
+     * Called by spring after constructing the java bean.
+     */
+    @PostConstruct
+    public final void init() {
+        this.jobs = CacheBuilder.newBuilder()
+                .concurrencyLevel(this.concurrencyLevel)
+                .expireAfterAccess(this.timeToKeepAfterAccessInMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    @Override
+    public final long getTimeToKeepAfterAccessInMillis() {
+        return TimeUnit.MINUTES.toMillis(this.timeToKeepAfterAccessInMinutes);
+    }
+
+    @Override
+    public final int getLastPrintCount() {
+        return this.lastPrintCount.get();
+    }
+
+    @Override
+    public final long getAverageTimeSpentPrinting() {
+        return this.totalPrintTime.get() / Math.max(1, this.nbPrintDone.get());
+    }
+
+    @Override
+    public final int getNumberOfRequestsMade() {
+        return this.newPrintCount.get();
+    }
+
+    @Override
+    public final long timeSinceLastStatusCheck(final String referenceId) {
+        final JobRecord job = this.jobs.getIfPresent(referenceId);
+        if (job == null) {
+            return 0;
+        }
+        return System.currentTimeMillis() - job.lastPoll;
+    }
+
+    @Override
+    public final int getWaitingJobsCount() {
+        return getNumberOfRequestsMade() - getLastPrintCount();
+    }
+
+    @Override
+    public final PrintJobStatus get(final String referenceId, final boolean external)
+            throws NoSuchReferenceException {
+        final JobRecord job = getJob(referenceId);
+        final long now = System.currentTimeMillis();
+        final State state = job.state.get();
+        if (!state.isDone() && external) {
+            // remember when the status was polled for the last time
+            job.lastPoll = now;
+        }
+        final PrintJobStatusImpl status = job.toStatus(state);
+        status.setStatusTime(now);
+        return status;
+    }
+
+    @Override
+    public final void add(final PrintJobEntry jobEntry) {
+        // the entry is copied so the stored start time doesn't change
+        final PrintJobEntryImpl entry = new PrintJobEntryImpl(jobEntry.getReferenceId(), jobEntry.getRequestData(),
+                jobEntry.getStartTime(), jobEntry.getAccess());
+        entry.setEstimatedMemory(jobEntry.getEstimatedMemory());
+        this.jobs.put(jobEntry.getReferenceId(), new JobRecord(entry, this.newPrintCount.incrementAndGet()));
+    }
+
+    @Override
+    public final void start(final String referenceId) throws NoSuchReferenceException {
+        final AtomicReference<State> jobState = getJob(referenceId).state;
+        State current = jobState.get();
+        while (current.status == PrintJobStatus.Status.WAITING) {
+            if (jobState.compareAndSet(current, current.withStatus(PrintJobStatus.Status.RUNNING))) {
+                return;
+            }
+            current = jobState.get();
+        }
+    }
+
+    @Override
+    public final void done(final String referenceId, final PrintJobResult result)
+            throws NoSuchReferenceException {
+        complete(referenceId, PrintJobStatus.Status.FINISHED, null, result);
+    }
+
+    @Override
+    public final void setTrace(final String referenceId, final String trace) throws NoSuchReferenceException {
+        getJob(referenceId).trace = trace;
+    }
+
+    @Override
+    public final String getTrace(final String referenceId) throws NoSuchReferenceException {
+        return getJob(referenceId).trace;
+    }
+
+    @Override
+    public final void cancel(final String referenceId, final String message, final boolean forceFinal)
+            throws NoSuchReferenceException {
+        final JobRecord job = getJob(referenceId);
+        State current = job.state.get();
+        while (!forceFinal && current.status == PrintJobStatus.Status.RUNNING) {
+            final State next = new State(PrintJobStatus.Status.CANCELING, current.completionTime, message,
+                    current.result);
+            if (job.state.compareAndSet(current, next)) {
+                return;
+            }
+            current = job.state.get();
+        }
+        // even if the job is already finished, it is stored as "cancelled",
+        // so that all subsequent status requests return "cancelled"
+        complete(referenceId, PrintJobStatus.Status.CANCELLED, message, current.result);
+    }
+
+    @Override
+    public final void fail(final String referenceId, final String message) throws NoSuchReferenceException {
+        complete(referenceId, PrintJobStatus.Status.ERROR, message, null);
+    }
+
+    private void complete(final String referenceId, final PrintJobStatus.Status status, final String error,
+                          final PrintJobResult result) throws NoSuchReferenceException {
+        final JobRecord job = getJob(referenceId);
+        final long now = System.currentTimeMillis();
+        State current;
+        State next;
+        do {
+            current = job.state.get();
+            next = new State(status, now, error, result != null ? result : current.result);
+        } while (!job.state.compareAndSet(current, next));
+        // a job being cancelled (CANCELING) is still running and is counted when it stops
+        if (!current.isFinal()) {
+            this.nbPrintDone.incrementAndGet();
+            this.totalPrintTime.addAndGet(now - job.entry.getStartTime());
+            this.lastPrintCount.incrementAndGet();
+        }
+    }
+
+    private JobRecord getJob(final String referenceId) throws NoSuchReferenceException {
+        final JobRecord job = this.jobs.getIfPresent(referenceId);
+        if (job == null) {
+            throw new NoSuchReferenceException(referenceId);
+        }
+        return job;
+    }
+
+    @Override
+    public final void cancelOld(final long startTimeOut, final long abandonTimeout, final String message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final List<? extends PrintJobStatus> start(final int number) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final List<? extends PrintJobStatus> toCancel() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * A job in the queue, the mutable part of its status is replaced atomically.
+     */
+    private static final class JobRecord {
+        private final PrintJobEntry entry;
+        private final long requestCount;
+        private final AtomicReference<State> state =
+                new AtomicReference<State>(new State(PrintJobStatus.Status.WAITING, null, null, null));
+        private volatile long lastPoll = System.currentTimeMillis();
+        private volatile String trace = null;
+
+        private JobRecord(final PrintJobEntry entry, final long requestCount) {
+            this.entry = entry;
+            this.requestCount = requestCount;
+        }
+
+        /**
+         * Create a new status object, the callers are free to modify it.
+         */
+        private PrintJobStatusImpl toStatus(final State current) {
+            final PrintJobStatusImpl status = new PrintJobStatusImpl(this.entry, this.requestCount);
+            status.setStatus(current.status);
+            status.setCompletionTime(current.completionTime);
+            status.setError(current.error);
+            status.setResult(current.result);
+            return status;
+        }
+    }
+
+    /**
+     * The immutable state of a job.
+     */
+    private static final class State {
+        private final PrintJobStatus.Status status;
+        private final Long completionTime;
+        private final String error;
+        private final PrintJobResult result;
+
+        private State(final PrintJobStatus.Status status, final Long completionTime, final String error,
+                      final PrintJobResult result) {
+            this.status = status;
+            this.completionTime = completionTime;
+            this.error = error;
+            this.result = result;
+        }
+
+        private State withStatus(final PrintJobStatus.Status newStatus) {
+            return new State(newStatus, this.completionTime, this.error, this.result);
+        }
+
+        private boolean isDone() {
+            return this.status != PrintJobStatus.Status.RUNNING && this.status != PrintJobStatus.Status.WAITING;
+        }
+
+        private boolean isFinal() {
+            return this.status == PrintJobStatus.Status.FINISHED || this.status == PrintJobStatus.Status.CANCELLED ||
+                    this.status == PrintJobStatus.Status.ERROR;
+        }
+    }
+}
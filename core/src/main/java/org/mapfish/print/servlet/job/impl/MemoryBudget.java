@@ -0,0 +1,89 @@
+package org.mapfish.print.servlet.job.impl;
+
+/**
+ * The memory reserved by the running print jobs, from their estimates (see
+ * {@link org.mapfish.print.servlet.job.JobCostEstimator}).
+ * <p></p>
+ * A job that doesn't fit in the free memory is not started, it stays in the scheduler until enough jobs are done.
+ * A job is always accepted when no memory is reserved, so a job that fits in the budget is never blocked forever.
+ */
+final class MemoryBudget {
+    private final long budget;
+    private long used = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param budget the memory budget in bytes, 0 or less to disable it
+     */
+    MemoryBudget(final long budget) {
+        this.budget = budget;
+    }
+
+    public boolean isEnabled() {
+        return this.budget > 0;
+    }
+
+    public long getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Return true if a job with this estimate can ever be started.
+     *
+     * @param estimate the estimated memory of the job
+     */
+    public boolean fits(final long estimate) {
+        return !isEnabled() || estimate <= this.budget;
+    }
+
+    /**
+     * Return true if there is no free memory left.
+     */
+    public synchronized boolean isExhausted() {
+        return isEnabled() && this.used >= this.budget;
+    }
+
+    public synchronized long getUsed() {
+        return this.used;
+    }
+
+    /**
+     * Reserve the memory of a job if it is available.
+     *
+     * @param estimate the estimated memory of the job
+     * @return false if the job doesn't fit in the free memory (nothing is reserved)
+     */
+    public synchronized boolean tryAcquire(final long estimate) {
+        if (!isEnabled()) {
+            return true;
+        }
+        if (this.used > 0 && this.used + estimate > this.budget) {
+            return false;
+        }
+        this.used += estimate;
+        return true;
+    }
+
+    /**
+     * Reserve the memory of a job that is started anyway (in clustered mode, the job is already claimed).
+     *
+     * @param estimate the estimated memory of the job
+     */
+    public synchronized void reserve(final long estimate) {
+        if (isEnabled()) {
+            this.used += estimate;
+        }
+    }
+
+    /**
+     * Release the memory reserved by {@link #tryAcquire(long)} or {@link #reserve(long)}.
+     *
+     * @param estimate the estimated memory of the job
+     */
+    public synchronized void release(final long estimate) {
+        if (isEnabled()) {
+            this.used -= estimate;
+        }
+    }
+}
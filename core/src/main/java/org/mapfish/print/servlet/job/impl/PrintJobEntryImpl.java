@@ -38,6 +38,9 @@ public class PrintJobEntryImpl implements PrintJobEntry {
     @Type(type = "org.mapfish.print.servlet.job.impl.hibernate.AccessAssertionUserType")
     private AccessAssertion access;
 
+    @Column
+    private Long estimatedMemory;
+
     /**
      * Constructor.
      */
@@ -127,6 +130,15 @@ public class PrintJobEntryImpl implements PrintJobEntry {
         return System.currentTimeMillis() - getStartTime();
     }
 
+    @Override
+    public final long getEstimatedMemory() {
+        return this.estimatedMemory == null ? 0L : this.estimatedMemory;
+    }
+
+    public final void setEstimatedMemory(final long estimatedMemory) {
+        this.estimatedMemory = estimatedMemory;
+    }
+
     @Override
     public final void assertAccess() {
         this.access.assertAccess(
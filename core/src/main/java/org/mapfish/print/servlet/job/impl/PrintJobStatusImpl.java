@@ -15,6 +15,7 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
@@ -23,7 +24,10 @@ import javax.persistence.Table;
  * Represent a print job that has completed.  Contains the information about the print job.
  */
 @Entity
-@Table(name = "print_job_statuses")
+@Table(name = "print_job_statuses", indexes = {
+        @Index(columnList = "status,startTime"),
+        @Index(columnList = "lastCheckTime")
+})
 public class PrintJobStatusImpl implements PrintJobStatus {
 
     private static final int LENGTH_ERROR = 1024;
@@ -53,11 +53,17 @@ public class RegistryJobQueue implements JobQueue {
      */
     private static final String RESULT_METADATA = "resultMetadata_";
 
+    /**
+     * prefix for storing the trace of a job in the registry.
+     */
+    private static final String TRACE = "trace_";
+
     private static final String JSON_REQUEST_DATA = "requestData";
     private static final String JSON_FILENAME = "fileName";
     private static final String JSON_STATUS = "status";
     private static final String JSON_ACCESS_ASSERTION = "access";
     private static final String JSON_START_DATE = "startDate";
+    private static final String JSON_ESTIMATED_MEMORY = "estimatedMemory";
     private static final String JSON_COMPLETION_DATE = "completionDate";
     private static final String JSON_REQUEST_COUNT = "requestCount";
     private static final String JSON_ERROR = "errorMessage";
@@ -121,6 +127,22 @@ public class RegistryJobQueue implements JobQueue {
         }
     }
 
+    @Override
+    public final void setTrace(final String referenceId, final String trace) throws NoSuchReferenceException {
+        if (!this.registry.containsKey(RESULT_METADATA + referenceId)) {
+            throw new NoSuchReferenceException(referenceId);
+        }
+        this.registry.put(TRACE + referenceId, trace);
+    }
+
+    @Override
+    public final String getTrace(final String referenceId) throws NoSuchReferenceException {
+        if (!this.registry.containsKey(RESULT_METADATA + referenceId)) {
+            throw new NoSuchReferenceException(referenceId);
+        }
+        return this.registry.containsKey(TRACE + referenceId) ? this.registry.getString(TRACE + referenceId) : null;
+    }
+
     @Override
     public final synchronized void cancel(final String referenceId, final String message, final boolean forceFinal)
             throws NoSuchReferenceException {
@@ -227,6 +249,7 @@ public class RegistryJobQueue implements JobQueue {
         metadata.put(JSON_REQUEST_DATA, printJobStatus.getEntry().getRequestData().getInternalObj());
         metadata.put(JSON_STATUS, printJobStatus.getStatus().toString());
         metadata.put(JSON_START_DATE, printJobStatus.getStartTime());
+        metadata.put(JSON_ESTIMATED_MEMORY, printJobStatus.getEntry().getEstimatedMemory());
         metadata.put(JSON_REQUEST_COUNT, printJobStatus.getRequestCount());
         if (printJobStatus.getCompletionDate() != null) {
             metadata.put(JSON_COMPLETION_DATE, printJobStatus.getCompletionTime());
@@ -257,8 +280,9 @@ public class RegistryJobQueue implements JobQueue {
             JSONObject accessJSON = metadata.getJSONObject(JSON_ACCESS_ASSERTION);
             final AccessAssertion accessAssertion = this.assertionPersister.unmarshal(accessJSON);
 
-            PrintJobStatusImpl report = new PrintJobStatusImpl(
-                    new PrintJobEntryImpl(referenceId, requestData, startTime, accessAssertion), requestCount);
+            final PrintJobEntryImpl entry = new PrintJobEntryImpl(referenceId, requestData, startTime, accessAssertion);
+            entry.setEstimatedMemory(metadata.optLong(JSON_ESTIMATED_MEMORY));
+            PrintJobStatusImpl report = new PrintJobStatusImpl(entry, requestCount);
             report.setStatus(status);
 
             if (metadata.has(JSON_COMPLETION_DATE)) {
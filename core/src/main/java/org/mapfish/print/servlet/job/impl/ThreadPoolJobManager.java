@@ -1,29 +1,42 @@
 package org.mapfish.print.servlet.job.impl;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import org.mapfish.print.Constants;
 import org.mapfish.print.ExceptionUtils;
 import org.mapfish.print.config.WorkingDirectories;
 import org.mapfish.print.servlet.job.JobManager;
 import org.mapfish.print.servlet.job.JobQueue;
+import org.mapfish.print.servlet.job.JobStatusWatcher;
 import org.mapfish.print.servlet.job.NoSuchReferenceException;
 import org.mapfish.print.servlet.job.PrintJob;
 import org.mapfish.print.servlet.job.PrintJobEntry;
 import org.mapfish.print.servlet.job.PrintJobResult;
 import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.mapfish.print.trace.JobTrace;
+import org.mapfish.print.trace.JobTraces;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.net.URI;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -31,17 +44,26 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 /**
  * A JobManager backed by a {@link java.util.concurrent.ThreadPoolExecutor}.
+ * <p></p>
+ * In single node mode, the slots are shared fairly between the tenants (apps, templates and users, see
+ * {@link FairJobScheduler}): a job is handed to the executor only when a slot is free and it is taken from the
+ * tenant that used the fewest slots relative to its weight. A job identical to a job in progress (see
+ * {@link org.mapfish.print.servlet.job.PrintResultCache}) doesn't take a slot until the report it reuses is done,
+ * and a job whose estimated memory is not free (see {@link #memoryBudget}) stays in the scheduler.
  */
 public class ThreadPoolJobManager implements JobManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(ThreadPoolJobManager.class);
@@ -52,6 +74,12 @@ public class ThreadPoolJobManager implements JobManager {
     private static final long DEFAULT_ABANDONED_TIMEOUT_IN_SECONDS = 120L;
     private static final boolean DEFAULT_OLD_FILES_CLEAN_UP = true;
     private static final long DEFAULT_CLEAN_UP_INTERVAL_IN_SECONDS = 86400;
+    private static final long DEFAULT_MIN_CLAIM_INTERVAL = 25L;
+    private static final long DEFAULT_MAX_CLAIM_INTERVAL = 500L;
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final String TENANT_APP = "app";
+    private static final String TENANT_TEMPLATE = "template";
+    private static final String TENANT_USER = "user";
 
     /**
      * The maximum number of threads that will be used for print jobs, this is not the number of threads
@@ -92,6 +120,42 @@ public class ThreadPoolJobManager implements JobManager {
      * repeatedly for new jobs. This way other instances can take the jobs as well.
      */
     private boolean clustered = false;
+    /**
+     * In clustered mode, the interval (in milliseconds) at which the queue is polled for new jobs after a poll that
+     * returned some jobs. The interval is doubled after each empty poll up to maxClaimInterval.
+     */
+    private long minClaimInterval = DEFAULT_MIN_CLAIM_INTERVAL;
+    /**
+     * In clustered mode, the maximum interval (in milliseconds) at which an idle node polls the queue for new jobs.
+     */
+    private long maxClaimInterval = DEFAULT_MAX_CLAIM_INTERVAL;
+    /**
+     * The memory (in bytes) that the running print jobs may use, from their estimates (see
+     * {@link org.mapfish.print.servlet.job.JobCostEstimator}). The jobs that don't fit wait in the scheduler (the
+     * jobs of the other tenants that fit are started meanwhile) and the jobs bigger than the budget are rejected. In
+     * clustered mode, no job is claimed while the budget is exhausted. 0 (the default) disables the check. The
+     * estimates are upper bounds (each layer counts as a full raster), so the budget should be set from the observed
+     * estimates.
+     */
+    private long memoryBudget = 0L;
+    /**
+     * What identifies the tenants between which the slots are shared fairly: any of "app", "template" and "user"
+     * (the authenticated principal). Not used in clustered mode.
+     */
+    private List<String> tenantKeys = Lists.newArrayList(TENANT_APP, TENANT_TEMPLATE, TENANT_USER);
+    /**
+     * The weights of the tenants by app id (default 1). A tenant with a weight of 2 gets twice as many slots as a
+     * tenant with a weight of 1 when both have waiting jobs.
+     */
+    private Map<String, Double> tenantWeights = new HashMap<String, Double>();
+    /**
+     * The maximum number of running print jobs per tenant, 0 for no limit.
+     */
+    private int maxRunningJobsPerTenant = 0;
+    /**
+     * The maximum number of waiting print jobs per tenant, 0 for no limit.
+     */
+    private int maxWaitingJobsPerTenant = 0;
     /**
      * A comparator for comparing {@link org.mapfish.print.servlet.job.impl.SubmittedPrintJob}s and
      * prioritizing them.
@@ -115,7 +179,24 @@ public class ThreadPoolJobManager implements JobManager {
     private final Map<String, SubmittedPrintJob> runningTasksFutures =
             Collections.synchronizedMap(new HashMap<String, SubmittedPrintJob>());
 
+    /**
+     * The next time the timeout and the abandonment of the jobs have to be checked, ordered by deadline.
+     */
+    private final PriorityQueue<JobDeadline> deadlines = new PriorityQueue<JobDeadline>();
+
+    private MemoryBudget reservedMemory;
+    /**
+     * Reserve the estimated memory of a job if it is free, called by the scheduler on the next job of a tenant.
+     */
+    private final Predicate<PrintJob> memoryAdmission = new Predicate<PrintJob>() {
+        @Override
+        public boolean apply(final PrintJob job) {
+            return ThreadPoolJobManager.this.reservedMemory.tryAcquire(job.getEntry().getEstimatedMemory());
+        }
+    };
+    private FairJobScheduler<PrintJob> scheduler;
     private ScheduledExecutorService timer;
+    private ClaimTask claimTask;
     private ScheduledExecutorService cleanUpTimer;
 
     @Autowired
@@ -127,10 +208,44 @@ public class ThreadPoolJobManager implements JobManager {
     @Autowired
     private JobQueue jobQueue;
 
+    @Autowired
+    private JobStatusWatcher jobStatusWatcher;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    public final void setMinClaimInterval(final long minClaimInterval) {
+        this.minClaimInterval = minClaimInterval;
+    }
+
+    public final void setMaxClaimInterval(final long maxClaimInterval) {
+        this.maxClaimInterval = maxClaimInterval;
+    }
+
     public final void setMaxNumberOfRunningPrintJobs(final int maxNumberOfRunningPrintJobs) {
         this.maxNumberOfRunningPrintJobs = maxNumberOfRunningPrintJobs;
     }
 
+    public final void setMemoryBudget(final long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public final void setTenantKeys(final List<String> tenantKeys) {
+        this.tenantKeys = tenantKeys;
+    }
+
+    public final void setTenantWeights(final Map<String, Double> tenantWeights) {
+        this.tenantWeights = tenantWeights;
+    }
+
+    public final void setMaxRunningJobsPerTenant(final int maxRunningJobsPerTenant) {
+        this.maxRunningJobsPerTenant = maxRunningJobsPerTenant;
+    }
+
+    public final void setMaxWaitingJobsPerTenant(final int maxWaitingJobsPerTenant) {
+        this.maxWaitingJobsPerTenant = maxWaitingJobsPerTenant;
+    }
+
     public final void setMaxNumberOfWaitingJobs(final int maxNumberOfWaitingJobs) {
         this.maxNumberOfWaitingJobs = maxNumberOfWaitingJobs;
     }
@@ -168,6 +283,8 @@ public class ThreadPoolJobManager implements JobManager {
         this.context = appContext;
         this.workingDirectories = this.context.getBean(WorkingDirectories.class);
         this.jobQueue = this.context.getBean(JobQueue.class);
+        this.jobStatusWatcher = this.context.getBean(JobStatusWatcher.class);
+        this.metricRegistry = this.context.getBean(MetricRegistry.class);
         init();
     }
 
@@ -189,6 +306,10 @@ public class ThreadPoolJobManager implements JobManager {
                 throw new IllegalStateException(msg);
             }
         }
+        this.reservedMemory = new MemoryBudget(this.memoryBudget);
+        this.scheduler = new FairJobScheduler<PrintJob>(this.maxNumberOfRunningPrintJobs,
+                this.maxRunningJobsPerTenant, this.maxWaitingJobsPerTenant, this.jobPriorityComparator,
+                this.metricRegistry, getClass().getName());
         CustomizableThreadFactory threadFactory = new CustomizableThreadFactory();
         threadFactory.setDaemon(true);
         threadFactory.setThreadNamePrefix("PrintJobManager-");
@@ -222,25 +343,38 @@ public class ThreadPoolJobManager implements JobManager {
                 this.maxIdleTime, TimeUnit.SECONDS, queue, threadFactory) {
             @Override
             protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
-                return new JobFutureTask<T>(callable);
+                return new JobFutureTask<T>(callable, null);
             }
             @Override
             protected void beforeExecute(final Thread t, final Runnable runnable) {
-                if (!ThreadPoolJobManager.this.clustered && runnable instanceof JobFutureTask<?>) {
+                if (runnable instanceof JobFutureTask<?>) {
                     JobFutureTask<?> task = (JobFutureTask<?>) runnable;
                     if (task.getCallable() instanceof PrintJob) {
                         PrintJob printJob = (PrintJob) task.getCallable();
-                        try {
-                            ThreadPoolJobManager.this.jobQueue.start(printJob.getEntry().getReferenceId());
-                        } catch (RuntimeException e) {
-                            LOGGER.error("failed to mark job as running", e);
-                        } catch (NoSuchReferenceException e) {
-                            LOGGER.error("tried to mark non-existing job as 'running': " + printJob.getEntry().getReferenceId(), e);
+                        task.setStarted();
+                        if (!ThreadPoolJobManager.this.clustered) {
+                            try {
+                                ThreadPoolJobManager.this.jobQueue.start(printJob.getEntry().getReferenceId());
+                                ThreadPoolJobManager.this.jobStatusWatcher.fireStatusChanged(
+                                        printJob.getEntry().getReferenceId());
+                            } catch (RuntimeException e) {
+                                LOGGER.error("failed to mark job as running", e);
+                            } catch (NoSuchReferenceException e) {
+                                LOGGER.error("tried to mark non-existing job as 'running': " +
+                                        printJob.getEntry().getReferenceId(), e);
+                            }
                         }
                     }
                 }
                 super.beforeExecute(t, runnable);
             }
+            @Override
+            protected void afterExecute(final Runnable runnable, final Throwable throwable) {
+                super.afterExecute(runnable, throwable);
+                if (runnable instanceof JobFutureTask<?>) {
+                    releaseMemory((JobFutureTask<?>) runnable);
+                }
+            }
         };
 
         this.timer = Executors.newScheduledThreadPool(1, new ThreadFactory() {
@@ -253,6 +387,10 @@ public class ThreadPoolJobManager implements JobManager {
         });
         this.timer.scheduleAtFixedRate(new RegistryTask(), RegistryTask.CHECK_INTERVAL,
                 RegistryTask.CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        if (this.clustered) {
+            this.claimTask = new ClaimTask();
+            this.claimTask.wakeUp();
+        }
 
         if (this.oldFileCleanUp) {
             this.cleanUpTimer = Executors.newScheduledThreadPool(1, new ThreadFactory() {
@@ -281,10 +419,123 @@ public class ThreadPoolJobManager implements JobManager {
         }
     }
 
+    private void setReservedMemory(final JobFutureTask<?> task) {
+        final long estimate = ((PrintJob) task.getCallable()).getEntry().getEstimatedMemory();
+        if (this.reservedMemory.isEnabled() && estimate > 0) {
+            task.setReservedMemory(estimate);
+            this.metricRegistry.counter(getClass().getName() + ".reservedMemory").inc(estimate);
+        }
+    }
+
+    private void releaseMemory(final JobFutureTask<?> task) {
+        final long estimate = task.takeReservedMemory();
+        if (estimate > 0) {
+            this.reservedMemory.release(estimate);
+            this.metricRegistry.counter(getClass().getName() + ".reservedMemory").dec(estimate);
+            if (!this.clustered) {
+                // the waiting jobs may fit now
+                dispatchJobs();
+            }
+        }
+    }
+
+    private void assertFitsMemoryBudget(final PrintJobEntry entry) {
+        if (!this.reservedMemory.fits(entry.getEstimatedMemory())) {
+            this.metricRegistry.counter(getClass().getName() + ".memoryRejected").inc();
+            throw new RuntimeException(String.format(
+                    "The print job %s needs an estimated %dMB of memory, more than the budget of %dMB",
+                    entry.getReferenceId(), entry.getEstimatedMemory() / MEGABYTE,
+                    this.reservedMemory.getBudget() / MEGABYTE));
+        }
+    }
+
     private void executeJob(final PrintJob job) {
-        final Future<PrintJobResult> future = this.executor.submit(job);
-        this.runningTasksFutures.put(job.getEntry().getReferenceId(),
-            new SubmittedPrintJob(future, job.getEntry()));
+        final String referenceId = job.getEntry().getReferenceId();
+        final JobFutureTask<PrintJobResult> future = new JobFutureTask<PrintJobResult>(job, referenceId);
+        final SubmittedPrintJob submittedJob = new SubmittedPrintJob(future, job.getEntry());
+        // registered before being executed so that the completion of the job always finds it
+        this.runningTasksFutures.put(referenceId, submittedJob);
+        final long now = System.currentTimeMillis();
+        final long timeoutTime = job.getEntry().getStartTime() + TimeUnit.SECONDS.toMillis(this.timeout);
+        job.setDeadline(timeoutTime);
+        addDeadline(submittedJob, Math.min(timeoutTime, now + TimeUnit.SECONDS.toMillis(this.abandonedTimeout)));
+        if (this.clustered) {
+            // the jobs are claimed only when there are free slots and free memory
+            this.reservedMemory.reserve(job.getEntry().getEstimatedMemory());
+            setReservedMemory(future);
+            this.executor.execute(future);
+            return;
+        }
+        final ListenableFuture<URI> identicalReport = job.claimReport();
+        if (identicalReport != null && !identicalReport.isDone()) {
+            // attached to the identical job in progress without taking a slot, it is queued to copy the report
+            // (or to print it if the identical job fails) once that job is done
+            identicalReport.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (!future.isDone()) {
+                        schedule(job, future);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        } else {
+            schedule(job, future);
+        }
+    }
+
+    /**
+     * Queue a job in the scheduler and start the jobs that have a free slot.
+     */
+    private void schedule(final PrintJob job, final JobFutureTask<PrintJobResult> future) {
+        final String appId = job.getEntry().getAppId();
+        this.scheduler.add(future.getReferenceId(), getTenant(job.getEntry()), appId,
+                this.tenantWeights.containsKey(appId) ? this.tenantWeights.get(appId) : 1.0, job, future);
+        dispatchJobs();
+    }
+
+    /**
+     * Start the waiting jobs chosen by the scheduler for the free slots and the free memory.
+     */
+    private void dispatchJobs() {
+        for (Future<?> future : this.scheduler.dispatch(this.memoryAdmission)) {
+            final JobFutureTask<?> task = (JobFutureTask<?>) future;
+            setReservedMemory(task);
+            if (task.isCancelled()) {
+                // cancelled meanwhile, it may never reach the executor
+                releaseMemory(task);
+                continue;
+            }
+            try {
+                this.executor.execute((Runnable) future);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Get the tenant of a job (see {@link #tenantKeys}), the user being the one submitting the job.
+     */
+    private String getTenant(final PrintJobEntry entry) {
+        final List<String> parts = Lists.newArrayList();
+        if (this.tenantKeys.contains(TENANT_APP)) {
+            parts.add(entry.getAppId());
+        }
+        if (this.tenantKeys.contains(TENANT_TEMPLATE)) {
+            parts.add(entry.getRequestData().optString(Constants.JSON_LAYOUT_KEY, ""));
+        }
+        if (this.tenantKeys.contains(TENANT_USER)) {
+            final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            parts.add(authentication != null ? authentication.getName() : "anonymous");
+        }
+        return Joiner.on('/').join(parts);
+    }
+
+    private void addDeadline(final SubmittedPrintJob printJob, final long deadline) {
+        synchronized (this.deadlines) {
+            this.deadlines.add(new JobDeadline(deadline, printJob));
+        }
     }
 
     /**
@@ -319,6 +570,10 @@ public class ThreadPoolJobManager implements JobManager {
      * @param job the job
      */
     public final void submit(final PrintJob job) {
+        assertFitsMemoryBudget(job.getEntry());
+        if (!this.clustered) {
+            this.scheduler.assertCanQueue(getTenant(job.getEntry()));
+        }
         try {
             submitInternal(job.getEntry());
         } finally {
@@ -328,6 +583,10 @@ public class ThreadPoolJobManager implements JobManager {
 
     @Override
     public final void submit(final PrintJobEntry entry) {
+        assertFitsMemoryBudget(entry);
+        if (!this.clustered) {
+            this.scheduler.assertCanQueue(getTenant(entry));
+        }
         try {
             submitInternal(entry);
         } finally {
@@ -335,6 +594,10 @@ public class ThreadPoolJobManager implements JobManager {
                 executeJob(createJob(entry));
             }
         }
+        if (this.clustered) {
+            // start it right away if this node has a free slot
+            this.claimTask.wakeUp();
+        }
     }
 
     private void cancelJobIfRunning(final String referenceId) throws NoSuchReferenceException {
@@ -343,12 +606,14 @@ public class ThreadPoolJobManager implements JobManager {
                 // the job is not yet finished (or has not even started), cancel
                 final SubmittedPrintJob printJob = this.runningTasksFutures.get(referenceId);
                 printJob.getEntry().assertAccess();
+                // removed before the cancellation so that the completion callback ignores the job
+                this.runningTasksFutures.remove(referenceId);
                 if (!printJob.getReportFuture().cancel(true)) {
                     LOGGER.info("Could not cancel job " + referenceId);
                 }
-                this.runningTasksFutures.remove(referenceId);
                 //now from canceling to cancelled state
                 this.jobQueue.cancel(referenceId, "task cancelled", true);
+                this.jobStatusWatcher.fireStatusChanged(referenceId);
             }
         }
     }
@@ -358,6 +623,7 @@ public class ThreadPoolJobManager implements JobManager {
         // check if the reference id is valid
         // and set canceling / cancelled status already
         this.jobQueue.cancel(referenceId, "task cancelled", false);
+        this.jobStatusWatcher.fireStatusChanged(referenceId);
         cancelJobIfRunning(referenceId);
     }
 
@@ -367,7 +633,11 @@ public class ThreadPoolJobManager implements JobManager {
         final PrintJobStatus jobStatus = this.jobQueue.get(referenceId, true);
         jobStatus.getEntry().assertAccess();
 
-        if (jobStatus.getStatus() == PrintJobStatus.Status.WAITING) {
+        final double waitingRounds = this.clustered ? -1.0 : this.scheduler.getWaitingRounds(referenceId);
+        if (jobStatus.getStatus() == PrintJobStatus.Status.WAITING && waitingRounds >= 0) {
+            // the job is waiting in this node, the estimate takes the other tenants into account
+            jobStatus.setWaitingTime((long) (waitingRounds * this.jobQueue.getAverageTimeSpentPrinting()));
+        } else if (jobStatus.getStatus() == PrintJobStatus.Status.WAITING) {
             // calculate an estimate for how long the job still has to wait
             // before it starts running
             long requestsMadeAtStart = jobStatus.getRequestCount();
@@ -381,9 +651,23 @@ public class ThreadPoolJobManager implements JobManager {
         return jobStatus;
     }
 
+    @Override
+    public final String getTrace(final String referenceId) throws NoSuchReferenceException {
+        final PrintJobStatus jobStatus = this.jobQueue.get(referenceId, false);
+        jobStatus.getEntry().assertAccess();
+        final JobTrace runningTrace = JobTraces.get(referenceId);
+        if (runningTrace != null) {
+            return runningTrace.toJson();
+        }
+        return this.jobQueue.getTrace(referenceId);
+    }
+
     /**
-     * This timer task changes the status of finished jobs in the registry.
-     * Also it stops jobs that have been running for too long (timeout).
+     * This timer task stops jobs that have been running for too long (timeout) or that have been abandoned.
+     * In clustered mode it also polls the registry for the jobs to cancel.
+     * <p></p>
+     * The status of the finished jobs is updated in the registry as soon as they are done by
+     * {@link #onJobDone(JobFutureTask)}.
      */
     @VisibleForTesting
     class RegistryTask implements Runnable {
@@ -398,11 +682,11 @@ public class ThreadPoolJobManager implements JobManager {
 
             // run in try-catch to ensure that the timer task is not stopped
             try {
-                synchronized (ThreadPoolJobManager.this.runningTasksFutures) {
-                    updateRegistry();
-                    if (ThreadPoolJobManager.this.clustered) {
+                checkDeadlines();
+                if (ThreadPoolJobManager.this.clustered) {
+                    synchronized (ThreadPoolJobManager.this.runningTasksFutures) {
                         cancelOld();
-                        pollRegistry();
+                        pollCancelled();
                     }
                 }
             } catch (Throwable t) {
@@ -418,7 +702,7 @@ public class ThreadPoolJobManager implements JobManager {
                 "task cancelled (timeout)");
     }
 
-    private void pollRegistry() {
+    private void pollCancelled() {
         //check if anything needs to be cancelled
         for (PrintJobStatus stat : this.jobQueue.toCancel()) {
             try {
@@ -427,21 +711,122 @@ public class ThreadPoolJobManager implements JobManager {
                 throw ExceptionUtils.getRuntimeException(e);
             }
         }
-        //get new jobs to execute
-        if (this.runningTasksFutures.size() < this.maxNumberOfRunningPrintJobs) {
+    }
+
+    /**
+     * Claim as many new jobs as there are free slots, unless the memory budget is exhausted.
+     *
+     * @return the number of started jobs.
+     */
+    private int claimJobs() {
+        int started = 0;
+        if (this.runningTasksFutures.size() < this.maxNumberOfRunningPrintJobs &&
+                !this.reservedMemory.isExhausted()) {
             for (PrintJobStatus stat :
                     this.jobQueue.start(this.maxNumberOfRunningPrintJobs - this.runningTasksFutures.size())) {
                 executeJob(createJob(stat.getEntry()));
+                this.jobStatusWatcher.fireStatusChanged(stat.getReferenceId());
+                started++;
             }
         }
+        return started;
     }
 
-    private void updateRegistry() {
-        final Iterator<SubmittedPrintJob> submittedJobs = this.runningTasksFutures.values().iterator();
-        while (submittedJobs.hasNext()) {
-            final SubmittedPrintJob printJob = submittedJobs.next();
-            if (!printJob.getReportFuture().isDone() &&
-                    (isTimeoutExceeded(printJob) || isAbandoned(printJob))) {
+    /**
+     * In clustered mode, this timer task polls the registry for the jobs to run.
+     * <p></p>
+     * The interval adapts to the activity: it is reset to minClaimInterval when jobs were found and doubled
+     * (up to maxClaimInterval) otherwise. The task is woken up right away when a slot is freed or a job is submitted
+     * to this node.
+     */
+    private final class ClaimTask implements Runnable {
+        private long interval = ThreadPoolJobManager.this.minClaimInterval;
+        // a wake up requested while a run is in progress, it is rescheduled right away
+        private boolean wakeUpRequested = false;
+        private ScheduledFuture<?> next = null;
+
+        @Override
+        public void run() {
+            if (ThreadPoolJobManager.this.executor.isShutdown()) {
+                return;
+            }
+            synchronized (this) {
+                // this run handles the wake ups requested until now, only the later ones need another run
+                this.wakeUpRequested = false;
+            }
+            int started = 0;
+            // run in try-catch to ensure that the task is rescheduled
+            try {
+                synchronized (ThreadPoolJobManager.this.runningTasksFutures) {
+                    started = claimJobs();
+                }
+            } catch (Throwable t) {
+                LOGGER.error("Error while polling the registry for new jobs", t);
+            }
+            synchronized (this) {
+                if (started > 0) {
+                    this.interval = ThreadPoolJobManager.this.minClaimInterval;
+                } else {
+                    this.interval = Math.min(this.interval * 2, ThreadPoolJobManager.this.maxClaimInterval);
+                }
+                final boolean immediately = this.wakeUpRequested || (started > 0 &&
+                        ThreadPoolJobManager.this.runningTasksFutures.size() <
+                                ThreadPoolJobManager.this.maxNumberOfRunningPrintJobs);
+                this.wakeUpRequested = false;
+                schedule(immediately ? 0 : this.interval);
+            }
+        }
+
+        /**
+         * Poll the registry as soon as possible.
+         */
+        public synchronized void wakeUp() {
+            this.wakeUpRequested = true;
+            this.interval = ThreadPoolJobManager.this.minClaimInterval;
+            schedule(0);
+        }
+
+        private void schedule(final long delay) {
+            if (this.next != null) {
+                this.next.cancel(false);
+            }
+            try {
+                this.next = ThreadPoolJobManager.this.timer.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                this.next = null;
+            }
+        }
+    }
+
+    /**
+     * Check the jobs whose deadline has passed, they are either cancelled or get a new deadline.
+     */
+    private void checkDeadlines() {
+        final long now = System.currentTimeMillis();
+        while (true) {
+            final JobDeadline deadline;
+            synchronized (this.deadlines) {
+                deadline = this.deadlines.peek();
+                if (deadline == null || deadline.time > now) {
+                    return;
+                }
+                this.deadlines.poll();
+            }
+            final SubmittedPrintJob printJob = deadline.printJob;
+            if (printJob.getReportFuture().isDone()) {
+                continue;
+            }
+
+            final long timeoutLeft = TimeUnit.SECONDS.toMillis(this.timeout) -
+                    printJob.getEntry().getTimeSinceStart();
+            final long abandonedLeft = TimeUnit.SECONDS.toMillis(this.abandonedTimeout) -
+                    this.jobQueue.timeSinceLastStatusCheck(printJob.getEntry().getReferenceId());
+            if (timeoutLeft < 0 || abandonedLeft < 0) {
+                if (abandonedLeft < 0) {
+                    LOGGER.info("Job " + printJob.getEntry().getReferenceId() + " is abandoned (no status check " +
+                            "within the last " + this.abandonedTimeout + " seconds)");
+                }
                 LOGGER.info("Cancelling job after timeout " + printJob.getEntry().getReferenceId());
                 if (!printJob.getReportFuture().cancel(true)) {
                     LOGGER.info("Could not cancel job after timeout " + printJob.getEntry().getReferenceId());
@@ -449,78 +834,134 @@ public class ThreadPoolJobManager implements JobManager {
                 // remove all cancelled tasks from the work queue (otherwise the queue comparator
                 // might stumble on non-PrintJob entries)
                 this.executor.purge();
-            }
-
-            if (printJob.getReportFuture().isDone()) {
-                submittedJobs.remove();
-                try {
-                    try {
-                        // set the completion date to the moment the job was
-                        // marked as completed
-                        // in the registry.
-                        this.jobQueue.done(printJob.getEntry().getReferenceId(), printJob.getReportFuture().get());
-                    } catch (InterruptedException e) {
-                        // if this happens, the timer task was interrupted.
-                        // restore the interrupted
-                        // status to not lose the information.
-                        Thread.currentThread().interrupt();
-                    } catch (ExecutionException e) {
-                        //failure occurred
-                        this.jobQueue.fail(printJob.getEntry().getReferenceId(),
-                                ExceptionUtils.getRootCause(e).toString());
-
-                    } catch (CancellationException e) {
-                        //cancellation occurred, set cancellation status
-                        this.jobQueue.cancel(printJob.getEntry().getReferenceId(),
-                                    "task cancelled (timeout)", true);
-                    }
-                } catch (NoSuchReferenceException e) { // shouldnt'// really happen
-                    throw ExceptionUtils.getRuntimeException(e);
-                }
+            } else {
+                addDeadline(printJob, now + Math.min(timeoutLeft, abandonedLeft));
             }
         }
     }
 
-    private boolean isTimeoutExceeded(final SubmittedPrintJob printJob) {
-        return printJob.getEntry().getTimeSinceStart() >
-            TimeUnit.MILLISECONDS.convert(ThreadPoolJobManager.this.timeout, TimeUnit.SECONDS);
+    /**
+     * Called when the future of a job is done (finished, failed or cancelled) to update the registry.
+     *
+     * @param future the future of the job.
+     */
+    private void onJobDone(final JobFutureTask<?> future) {
+        final String referenceId = future.getReferenceId();
+        final SubmittedPrintJob printJob;
+        synchronized (this.runningTasksFutures) {
+            printJob = this.runningTasksFutures.get(referenceId);
+            if (printJob == null || printJob.getReportFuture() != future) {
+                // already handled by cancelJobIfRunning
+                return;
+            }
+            this.runningTasksFutures.remove(referenceId);
+        }
+        try {
+            try {
+                // set the completion date to the moment the job was
+                // marked as completed
+                // in the registry.
+                this.jobQueue.done(referenceId, printJob.getReportFuture().get());
+            } catch (InterruptedException e) {
+                // restore the interrupted
+                // status to not lose the information.
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //failure occurred
+                this.jobQueue.fail(referenceId, ExceptionUtils.getRootCause(e).toString());
+            } catch (CancellationException e) {
+                //cancellation occurred, set cancellation status
+                this.jobQueue.cancel(referenceId, "task cancelled (timeout)", true);
+            }
+        } catch (NoSuchReferenceException e) { // shouldn't really happen
+            LOGGER.error("Unable to update the status of the job " + referenceId, e);
+        } catch (RuntimeException e) {
+            LOGGER.error("Error while updating the status of the job " + referenceId, e);
+        }
+        this.jobStatusWatcher.fireStatusChanged(referenceId);
+        if (this.clustered) {
+            // a slot is free
+            this.claimTask.wakeUp();
+        }
     }
 
     /**
-     * If the status of a print job is not checked for a while, we assume that the user
-     * is no longer interested in the report, and we cancel the job.
-     *
-     * @param printJob
-     * @return is the abandoned timeout exceeded?
+     * The time at which a job has to be checked for timeout or abandonment.
      */
-    private boolean isAbandoned(final SubmittedPrintJob printJob) {
-        final long duration = ThreadPoolJobManager.this.jobQueue.timeSinceLastStatusCheck(
-                printJob.getEntry().getReferenceId());
-        final boolean abandoned = duration > TimeUnit.SECONDS.toMillis(ThreadPoolJobManager.this.abandonedTimeout);
-        if (abandoned) {
-            LOGGER.info("Job " + printJob.getEntry().getReferenceId() + " is abandoned (no status check within the "
-                    + "last " + ThreadPoolJobManager.this.abandonedTimeout + " seconds)");
+    private static final class JobDeadline implements Comparable<JobDeadline> {
+        private final long time;
+        private final SubmittedPrintJob printJob;
+
+        private JobDeadline(final long time, final SubmittedPrintJob printJob) {
+            this.time = time;
+            this.printJob = printJob;
+        }
+
+        @Override
+        public int compareTo(final JobDeadline other) {
+            return Longs.compare(this.time, other.time);
         }
-        return abandoned;
     }
 
     /**
      * A custom FutureTask implementation which allows to retrieve the
-     * wrapped Callable.
+     * wrapped Callable and which updates the registry when the job is done.
      */
-    private static final class JobFutureTask<V> extends FutureTask<V> {
+    private final class JobFutureTask<V> extends FutureTask<V> {
 
         private final Callable<V> callable;
+        private final String referenceId;
+        private final AtomicLong reservedMemory = new AtomicLong();
+        private volatile boolean started = false;
 
-        public JobFutureTask(final Callable<V> callable) {
+        public JobFutureTask(final Callable<V> callable, final String referenceId) {
             super(callable);
             this.callable = callable;
+            this.referenceId = referenceId;
         }
 
         public Callable<V> getCallable() {
             return this.callable;
         }
 
+        public String getReferenceId() {
+            return this.referenceId;
+        }
+
+        public void setReservedMemory(final long reservedMemory) {
+            this.reservedMemory.set(reservedMemory);
+        }
+
+        /**
+         * Get the reserved memory, to release it (only once).
+         */
+        public long takeReservedMemory() {
+            return this.reservedMemory.getAndSet(0L);
+        }
+
+        public void setStarted() {
+            this.started = true;
+        }
+
+        @Override
+        protected void done() {
+            if (this.callable instanceof PrintJob) {
+                // release the identical jobs if this one didn't print its report
+                ((PrintJob) this.callable).releaseReport();
+            }
+            if (!this.started) {
+                // cancelled before being run, it may have been purged from the executor queue
+                releaseMemory(this);
+            }
+            if (this.referenceId != null) {
+                if (!ThreadPoolJobManager.this.clustered) {
+                    // free the slot of the job (or its place in the queue)
+                    ThreadPoolJobManager.this.scheduler.done(this);
+                    dispatchJobs();
+                }
+                onJobDone(this);
+            }
+        }
     }
 
 }
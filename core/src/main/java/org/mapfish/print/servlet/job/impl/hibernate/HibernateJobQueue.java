@@ -5,10 +5,13 @@ import org.mapfish.print.servlet.job.NoSuchReferenceException;
 import org.mapfish.print.servlet.job.PrintJobEntry;
 import org.mapfish.print.servlet.job.PrintJobResult;
 import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
@@ -24,14 +27,22 @@ import javax.annotation.PreDestroy;
 /**
  *
  * Db Job Manager.
- *
+ * <p></p>
+ * The counts and the average printing time are computed periodically (see statisticsRefreshInterval) and
+ * adjusted with the changes made by this node, so a status poll is a single primary key lookup.
  */
 @Transactional
 public class HibernateJobQueue implements JobQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HibernateJobQueue.class);
+
     private static final int DEFAULT_TIME_TO_KEEP_AFTER_ACCESS = 30; /* minutes */
 
     private static final long DEFAULT_CLEAN_UP_INTERVAL = 300; /* seconds */
 
+    private static final long DEFAULT_STATISTICS_REFRESH_INTERVAL = 5; /* seconds */
+
+    private static final long DEFAULT_LAST_CHECK_TIME_RESOLUTION = 5000; /* milliseconds */
+
     @Autowired
     private PrintJobDao dao;
 
@@ -50,10 +61,31 @@ public class HibernateJobQueue implements JobQueue {
      */
     private int timeToKeepAfterAccessInMinutes = DEFAULT_TIME_TO_KEEP_AFTER_ACCESS;
 
+    /**
+     * The interval at which the statistics (counts and average time) are computed from the database (in
+     * seconds).
+     */
+    private long statisticsRefreshInterval = DEFAULT_STATISTICS_REFRESH_INTERVAL;
+
+    /**
+     * The last check time of a job is only written when it is older than that (in milliseconds).
+     */
+    private long lastCheckTimeResolution = DEFAULT_LAST_CHECK_TIME_RESOLUTION;
+
+    private volatile QueueStatistics statistics = null;
+
     public final void setTimeToKeepAfterAccessInMinutes(final int timeToKeepAfterAccessInMinutes) {
         this.timeToKeepAfterAccessInMinutes = timeToKeepAfterAccessInMinutes;
     }
 
+    public final void setStatisticsRefreshInterval(final long statisticsRefreshInterval) {
+        this.statisticsRefreshInterval = statisticsRefreshInterval;
+    }
+
+    public final void setLastCheckTimeResolution(final long lastCheckTimeResolution) {
+        this.lastCheckTimeResolution = lastCheckTimeResolution;
+    }
+
     @Override
     public final long getTimeToKeepAfterAccessInMillis() {
         return TimeUnit.MINUTES.toMillis(this.timeToKeepAfterAccessInMinutes);
@@ -61,23 +93,34 @@ public class HibernateJobQueue implements JobQueue {
 
     @Override
     public final int getLastPrintCount() {
-        return this.dao.count(PrintJobStatus.Status.FINISHED, PrintJobStatus.Status.CANCELLED,
-                PrintJobStatus.Status.ERROR);
+        return getStatistics().getLastPrintCount();
     }
 
     @Override
     public final int getWaitingJobsCount() {
-        return this.dao.count(PrintJobStatus.Status.WAITING, PrintJobStatus.Status.RUNNING);
+        return getStatistics().getWaitingJobsCount();
     }
 
     @Override
     public final int getNumberOfRequestsMade() {
-        return this.dao.count();
+        return getStatistics().getNumberOfRequestsMade();
     }
 
     @Override
     public final long getAverageTimeSpentPrinting() {
-        return this.dao.getTotalTimeSpentPrinting() / Math.max(1, getLastPrintCount());
+        return getStatistics().getAverageTimeSpentPrinting();
+    }
+
+    /**
+     * Get the last computed statistics, they are only computed in the calling thread the first time.
+     */
+    private QueueStatistics getStatistics() {
+        QueueStatistics result = this.statistics;
+        if (result == null) {
+            result = this.dao.getStatistics();
+            this.statistics = result;
+        }
+        return result;
     }
 
     @Override
@@ -94,15 +137,17 @@ public class HibernateJobQueue implements JobQueue {
             throw new NoSuchReferenceException(referenceId);
         }
         record.setStatusTime(now);
-        if (!record.isDone() && external) {
-            this.dao.updateLastCheckTime(referenceId, System.currentTimeMillis());
+        if (!record.isDone() && external && now - record.getLastCheckTime() >= this.lastCheckTimeResolution) {
+            this.dao.updateLastCheckTime(referenceId, now);
         }
         return record;
     }
 
     @Override
     public final synchronized void add(final PrintJobEntry jobEntry) {
-        this.dao.save(new PrintJobStatusExtImpl(jobEntry, getNumberOfRequestsMade()));
+        final QueueStatistics currentStatistics = getStatistics();
+        this.dao.save(new PrintJobStatusExtImpl(jobEntry, currentStatistics.getNumberOfRequestsMade()));
+        currentStatistics.onAdded();
     }
 
     @Override
@@ -112,6 +157,7 @@ public class HibernateJobQueue implements JobQueue {
         if (record == null) {
             throw new NoSuchReferenceException(referenceId);
         }
+        final PrintJobStatus.Status oldStatus = record.getStatus();
         if (!forceFinal && record.getStatus() == PrintJobStatus.Status.RUNNING) {
             record.setStatus(PrintJobStatus.Status.CANCELING);
         } else {
@@ -120,6 +166,7 @@ public class HibernateJobQueue implements JobQueue {
         }
         record.setError(message);
         this.dao.save(record);
+        getStatistics().onStatusChanged(oldStatus, record.getStatus());
     }
 
     @Override
@@ -129,10 +176,12 @@ public class HibernateJobQueue implements JobQueue {
         if (record == null) {
             throw new NoSuchReferenceException(referenceId);
         }
+        final PrintJobStatus.Status oldStatus = record.getStatus();
         record.setCompletionTime(System.currentTimeMillis());
         record.setStatus(PrintJobStatus.Status.ERROR);
         record.setError(message);
         this.dao.save(record);
+        getStatistics().onStatusChanged(oldStatus, record.getStatus());
     }
 
     @Override
@@ -153,11 +202,30 @@ public class HibernateJobQueue implements JobQueue {
         if (record == null) {
             throw new NoSuchReferenceException(referenceId);
         }
+        final PrintJobStatus.Status oldStatus = record.getStatus();
         record.setStatus(record.getStatus() == PrintJobStatus.Status.CANCELING ? PrintJobStatus.Status.CANCELLED
                 : PrintJobStatus.Status.FINISHED);
         record.setResult(result);
         record.setCompletionTime(System.currentTimeMillis());
         this.dao.save(record);
+        getStatistics().onStatusChanged(oldStatus, record.getStatus());
+    }
+
+    @Override
+    public final void setTrace(final String referenceId, final String trace) throws NoSuchReferenceException {
+        if (this.dao.getValue(referenceId, "referenceId") == null) {
+            throw new NoSuchReferenceException(referenceId);
+        }
+        this.dao.saveTrace(new PrintJobTrace(referenceId, trace));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public final String getTrace(final String referenceId) throws NoSuchReferenceException {
+        if (this.dao.getValue(referenceId, "referenceId") == null) {
+            throw new NoSuchReferenceException(referenceId);
+        }
+        return this.dao.getTrace(referenceId);
     }
 
     @Override
@@ -201,6 +269,12 @@ public class HibernateJobQueue implements JobQueue {
                 cleanup();
             }
         }, this.cleanupInterval, this.cleanupInterval, TimeUnit.SECONDS);
+        this.cleanUpTimer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                refreshStatistics();
+            }
+        }, 0, this.statisticsRefreshInterval, TimeUnit.SECONDS);
     }
 
     /**
@@ -211,6 +285,21 @@ public class HibernateJobQueue implements JobQueue {
         this.cleanUpTimer.shutdownNow();
     }
 
+    private void refreshStatistics() {
+        try {
+            TransactionTemplate tmpl = new TransactionTemplate(this.txManager);
+            tmpl.setReadOnly(true);
+            this.statistics = tmpl.execute(new TransactionCallback<QueueStatistics>() {
+                @Override
+                public QueueStatistics doInTransaction(final TransactionStatus status) {
+                    return HibernateJobQueue.this.dao.getStatistics();
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to refresh the job queue statistics", e);
+        }
+    }
+
     private void cleanup() {
         TransactionTemplate tmpl = new TransactionTemplate(this.txManager);
         tmpl.execute(new TransactionCallbackWithoutResult() {
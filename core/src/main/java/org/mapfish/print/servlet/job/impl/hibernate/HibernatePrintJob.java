@@ -2,36 +2,123 @@ package org.mapfish.print.servlet.job.impl.hibernate;
 
 import org.mapfish.print.servlet.job.PrintJob;
 import org.mapfish.print.servlet.job.PrintJobResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.util.Arrays;
 
 /**
  * A PrintJob implementation that write results to the database.
  * <p></p>
+ * The report is written in chunks while it is produced, so it is never entirely held in memory.
  */
 public class HibernatePrintJob extends PrintJob {
+    private static final int CHUNK_SIZE = 1024 * 1024;
 
-    private byte[] data;
+    @Autowired
+    private PrintJobDao dao;
+
+    @Autowired
+    private PlatformTransactionManager txManager;
 
     @Override
     protected final URI withOpenOutputStream(final PrintAction function) throws Exception {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        BufferedOutputStream bout = new BufferedOutputStream(out);
+        final URI reportURI = new URI("hibernate:" + getEntry().getReferenceId());
+        final ChunkedOutputStream out = new ChunkedOutputStream(reportURI);
+        boolean success = false;
         try {
-            function.run(bout);
-            this.data = out.toByteArray();
+            function.run(out);
+            out.close();
+            success = true;
         } finally {
-            bout.close();
+            if (!success) {
+                inTransaction(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                        HibernatePrintJob.this.dao.deleteChunks(reportURI);
+                    }
+                });
+            }
         }
-        return new URI("hibernate:" + getEntry().getReferenceId());
+        return reportURI;
     }
 
     @Override
     protected final PrintJobResult createResult(final URI reportURI, final String fileName,
             final String fileExtension, final String mimeType, final String referenceId) {
-        return new PrintJobResultExtImpl(reportURI, fileName, fileExtension, mimeType, this.data,
-                referenceId);
+        return new PrintJobResultExtImpl(reportURI, fileName, fileExtension, mimeType, null, referenceId);
+    }
+
+    private void inTransaction(final TransactionCallbackWithoutResult callback) {
+        new TransactionTemplate(this.txManager).execute(callback);
+    }
+
+    /**
+     * Stores the data in chunks of {@link #CHUNK_SIZE} bytes, each one in its own transaction.
+     */
+    private final class ChunkedOutputStream extends OutputStream {
+        private final URI reportURI;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int length = 0;
+        private int chunkIndex = 0;
+        private boolean closed = false;
+
+        private ChunkedOutputStream(final URI reportURI) {
+            this.reportURI = reportURI;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (this.length == this.buffer.length) {
+                saveChunk();
+            }
+            this.buffer[this.length++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (this.length == this.buffer.length) {
+                    saveChunk();
+                }
+                final int size = Math.min(remaining, this.buffer.length - this.length);
+                System.arraycopy(b, offset, this.buffer, this.length, size);
+                this.length += size;
+                offset += size;
+                remaining -= size;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                if (this.length > 0) {
+                    saveChunk();
+                }
+            }
+        }
+
+        private void saveChunk() {
+            final PrintJobResultChunk chunk = new PrintJobResultChunk(this.reportURI.toString(),
+                    getEntry().getReferenceId(), this.chunkIndex, this.length == this.buffer.length ?
+                    this.buffer : Arrays.copyOf(this.buffer, this.length));
+            inTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    HibernatePrintJob.this.dao.saveChunk(chunk);
+                }
+            });
+            this.chunkIndex++;
+            this.length = 0;
+        }
     }
 }
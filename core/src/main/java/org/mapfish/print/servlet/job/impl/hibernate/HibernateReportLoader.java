@@ -11,6 +11,7 @@ import java.net.URI;
 /**
  * Loads reports from hibernate uris.
  * <p></p>
+ * The report is copied chunk by chunk to the output stream.
  */
 public class HibernateReportLoader implements ReportLoader {
 
@@ -25,6 +26,18 @@ public class HibernateReportLoader implements ReportLoader {
     @Override
     @Transactional
     public final void loadReport(final URI reportURI, final OutputStream out) throws IOException {
-        out.write(this.dao.getResult(reportURI).getData());
+        final PrintJobResultExtImpl result = this.dao.getResult(reportURI);
+        if (result != null && result.getData() != null) {
+            // report stored in a single column by an older version
+            out.write(result.getData());
+            return;
+        }
+        int chunkIndex = 0;
+        byte[] chunk = this.dao.getChunkData(reportURI, chunkIndex);
+        while (chunk != null) {
+            out.write(chunk);
+            chunkIndex++;
+            chunk = this.dao.getChunkData(reportURI, chunkIndex);
+        }
     }
 }
@@ -5,16 +5,24 @@ import org.hibernate.FetchMode;
 import org.hibernate.LockMode;
 import org.hibernate.PessimisticLockException;
 import org.hibernate.Query;
+import org.hibernate.SQLQuery;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.ReturningWork;
 import org.hibernate.type.LongType;
 import org.hibernate.type.Type;
 import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.net.URI;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 
@@ -27,9 +35,13 @@ import javax.annotation.PostConstruct;
  */
 public class PrintJobDao {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrintJobDao.class);
+
     @Autowired
     private SessionFactory sf;
 
+    private volatile Boolean skipLocked = null;
+
     /**
      * Initialize db manager.
      */
@@ -146,6 +158,35 @@ public class PrintJobDao {
         return result == null ? 0 : result.longValue();
     }
 
+    /**
+     * Compute all the aggregated values of the queue in one query.
+     *
+     * @return the statistics
+     */
+    @SuppressWarnings("unchecked")
+    public final QueueStatistics getStatistics() {
+        Query query = getSession().createQuery("select pj.status, count(*), "
+                + "sum(pj.completionTime - pj.entry.startTime) from PrintJobStatusExtImpl pj group by pj.status");
+        int total = 0;
+        int waiting = 0;
+        int completed = 0;
+        long totalTime = 0;
+        for (Object[] row: (List<Object[]>) query.list()) {
+            final PrintJobStatus.Status status = (PrintJobStatus.Status) row[0];
+            final int count = ((Number) row[1]).intValue();
+            total += count;
+            if (QueueStatistics.isWaiting(status)) {
+                waiting += count;
+            } else if (QueueStatistics.isCompleted(status)) {
+                completed += count;
+            }
+            if (row[2] != null) {
+                totalTime += ((Number) row[2]).longValue();
+            }
+        }
+        return new QueueStatistics(total, waiting, completed, totalTime);
+    }
+
     /**
      * Cancel old waiting jobs.
      *
@@ -193,12 +234,41 @@ public class PrintJobDao {
 
     /**
      * Poll for the next N waiting jobs in line.
+     * <p></p>
+     * The jobs are locked with SKIP LOCKED if the database supports it, so the nodes polling at the same time
+     * get different jobs. Otherwise they are locked with NOWAIT and nothing is returned if another node is
+     * polling at the same time.
      *
      * @param size maximum amount of jobs to poll for
      * @return
      */
-    @SuppressWarnings("unchecked")
     public final List<PrintJobStatusExtImpl> poll(final int size) {
+        if (supportsSkipLocked()) {
+            return pollSkipLocked(size);
+        } else {
+            return pollNoWait(size);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PrintJobStatusExtImpl> pollSkipLocked(final int size) {
+        SQLQuery lockQuery = getSession().createSQLQuery("select referenceId from print_job_statuses "
+                + "where status = :status order by startTime limit :size for update skip locked");
+        lockQuery.setParameter("status", PrintJobStatus.Status.WAITING.name());
+        lockQuery.setParameter("size", size);
+        final List<String> ids = (List<String>) lockQuery.list();
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // the rows are locked by this transaction
+        Criteria c = getSession().createCriteria(PrintJobStatusExtImpl.class);
+        c.add(Restrictions.in("referenceId", ids));
+        c.addOrder(Order.asc("entry.startTime"));
+        return (List<PrintJobStatusExtImpl>) c.list();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PrintJobStatusExtImpl> pollNoWait(final int size) {
         Query query = getSession()
                 .createQuery("from PrintJobStatusExtImpl pj " + "where status = :status " + "order by startTime");
         query.setParameter("status", PrintJobStatus.Status.WAITING);
@@ -214,6 +284,27 @@ public class PrintJobDao {
         }
     }
 
+    /**
+     * SKIP LOCKED is supported by PostgreSQL since 9.5.
+     */
+    private boolean supportsSkipLocked() {
+        Boolean result = this.skipLocked;
+        if (result == null) {
+            result = getSession().doReturningWork(new ReturningWork<Boolean>() {
+                @Override
+                public Boolean execute(final Connection connection) throws SQLException {
+                    final DatabaseMetaData metaData = connection.getMetaData();
+                    final int major = metaData.getDatabaseMajorVersion();
+                    return metaData.getDatabaseProductName().equals("PostgreSQL")
+                            && (major > 9 || (major == 9 && metaData.getDatabaseMinorVersion() >= 5));
+                }
+            });
+            LOGGER.info("Polling the print jobs with " + (result ? "SKIP LOCKED" : "NOWAIT"));
+            this.skipLocked = result;
+        }
+        return result;
+    }
+
     /**
      * Get result report.
      *
@@ -226,4 +317,67 @@ public class PrintJobDao {
         c.add(Restrictions.idEq(reportURI.toString()));
         return (PrintJobResultExtImpl) c.uniqueResult();
     }
+
+    /**
+     * Save a chunk of a report, it is flushed and evicted right away so the session doesn't keep the data.
+     *
+     * @param chunk the chunk
+     */
+    public final void saveChunk(final PrintJobResultChunk chunk) {
+        getSession().save(chunk);
+        getSession().flush();
+        getSession().evict(chunk);
+    }
+
+    /**
+     * Get the data of a chunk of a report.
+     *
+     * @param reportURI the URI of the report
+     * @param chunkIndex the position of the chunk
+     * @return the data or null if there is no such chunk.
+     */
+    @Nullable
+    public final byte[] getChunkData(final URI reportURI, final int chunkIndex) {
+        Criteria c = getSession().createCriteria(PrintJobResultChunk.class);
+        c.add(Restrictions.eq("reportURI", reportURI.toString()));
+        c.add(Restrictions.eq("chunkIndex", chunkIndex));
+        c.setProjection(Projections.property("data"));
+        return (byte[]) c.uniqueResult();
+    }
+
+    /**
+     * Delete the chunks of a report.
+     *
+     * @param reportURI the URI of the report
+     */
+    public final void deleteChunks(final URI reportURI) {
+        Query query = getSession().createQuery("delete from PrintJobResultChunk where reportURI = :uri");
+        query.setParameter("uri", reportURI.toString());
+        query.executeUpdate();
+    }
+
+    /**
+     * Save the trace of a job.
+     *
+     * @param trace the trace
+     */
+    public final void saveTrace(final PrintJobTrace trace) {
+        getSession().saveOrUpdate(trace);
+        getSession().flush();
+        getSession().evict(trace);
+    }
+
+    /**
+     * Get the trace of a job.
+     *
+     * @param referenceId the reference ID of the job
+     * @return the trace or null if the job has no trace.
+     */
+    @Nullable
+    public final String getTrace(final String referenceId) {
+        Criteria c = getSession().createCriteria(PrintJobTrace.class);
+        c.add(Restrictions.idEq(referenceId));
+        c.setProjection(Projections.property("trace"));
+        return (String) c.uniqueResult();
+    }
 }
@@ -0,0 +1,87 @@
+package org.mapfish.print.servlet.job.impl.hibernate;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.mapfish.print.servlet.job.impl.PrintJobStatusImpl;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * A part of the data of a report.
+ * <p></p>
+ * The reports are stored in chunks so they can be written while they are produced and read back without
+ * holding the whole report in memory.
+ */
+@Entity
+@Table(name = "print_job_result_chunks", indexes = {@Index(columnList = "reportURI,chunkIndex")})
+public class PrintJobResultChunk {
+
+    @Id
+    @Column
+    private final String id;
+
+    @Column
+    private final String reportURI;
+
+    @Column
+    private final int chunkIndex;
+
+    @Column
+    private final byte[] data;
+
+    @ManyToOne(targetEntity = PrintJobStatusImpl.class, fetch = FetchType.LAZY)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "referenceId", insertable = false, updatable = false)
+    private PrintJobStatus status = null;
+
+    @Column(insertable = true, updatable = true)
+    private String referenceId;
+
+    /**
+     * Default Constructor.
+     */
+    public PrintJobResultChunk() {
+        this.id = null;
+        this.reportURI = null;
+        this.chunkIndex = 0;
+        this.data = null;
+        this.referenceId = null;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param reportURI the report URI
+     * @param referenceId the reference ID
+     * @param chunkIndex the position of the chunk in the report
+     * @param data the data
+     */
+    public PrintJobResultChunk(final String reportURI, final String referenceId, final int chunkIndex,
+                               final byte[] data) {
+        this.id = reportURI + "#" + chunkIndex;
+        this.reportURI = reportURI;
+        this.referenceId = referenceId;
+        this.chunkIndex = chunkIndex;
+        this.data = data;
+    }
+
+    public final String getReportURI() {
+        return this.reportURI;
+    }
+
+    public final int getChunkIndex() {
+        return this.chunkIndex;
+    }
+
+    public final byte[] getData() {
+        return this.data;
+    }
+}
@@ -9,7 +9,9 @@ import javax.persistence.Entity;
 
 /**
  * Extension of Print Job Result that holds data as BLOB.
- *
+ * <p></p>
+ * The data is only set for the reports stored by older versions, the new reports are stored in
+ * {@link PrintJobResultChunk}s.
  */
 @Entity
 public class PrintJobResultExtImpl extends PrintJobResultImpl {
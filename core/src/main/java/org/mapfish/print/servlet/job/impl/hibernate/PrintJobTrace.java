@@ -0,0 +1,65 @@
+package org.mapfish.print.servlet.job.impl.hibernate;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.Type;
+import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.mapfish.print.servlet.job.impl.PrintJobStatusImpl;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * The execution trace of a print job.
+ * <p></p>
+ * It is not a column of the status so the status requests don't have to load it.
+ */
+@Entity
+@Table(name = "print_job_traces")
+public class PrintJobTrace {
+
+    @Id
+    @Column
+    private final String referenceId;
+
+    @ManyToOne(targetEntity = PrintJobStatusImpl.class, fetch = FetchType.LAZY)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "referenceId", insertable = false, updatable = false)
+    private PrintJobStatus status = null;
+
+    @Column
+    @Type(type = "org.hibernate.type.TextType")
+    private String trace;
+
+    /**
+     * Default Constructor.
+     */
+    public PrintJobTrace() {
+        this.referenceId = null;
+        this.trace = null;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param referenceId the reference ID
+     * @param trace the trace
+     */
+    public PrintJobTrace(final String referenceId, final String trace) {
+        this.referenceId = referenceId;
+        this.trace = trace;
+    }
+
+    public final String getReferenceId() {
+        return this.referenceId;
+    }
+
+    public final String getTrace() {
+        return this.trace;
+    }
+}
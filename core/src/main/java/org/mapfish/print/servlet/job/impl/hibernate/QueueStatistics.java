@@ -0,0 +1,94 @@
+package org.mapfish.print.servlet.job.impl.hibernate;
+
+import org.mapfish.print.servlet.job.PrintJobStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The aggregated values of the job queue, computed periodically from the database and adjusted with the
+ * changes made by this node in between.
+ */
+public final class QueueStatistics {
+    private final AtomicInteger numberOfRequestsMade;
+    private final AtomicInteger waitingJobsCount;
+    private final AtomicInteger lastPrintCount;
+    private final long totalTimeSpentPrinting;
+
+    /**
+     * Constructor.
+     *
+     * @param numberOfRequestsMade the number of jobs
+     * @param waitingJobsCount the number of waiting or running jobs
+     * @param lastPrintCount the number of finished, cancelled or failed jobs
+     * @param totalTimeSpentPrinting the sum of the durations of the completed jobs
+     */
+    QueueStatistics(final int numberOfRequestsMade, final int waitingJobsCount, final int lastPrintCount,
+                    final long totalTimeSpentPrinting) {
+        this.numberOfRequestsMade = new AtomicInteger(numberOfRequestsMade);
+        this.waitingJobsCount = new AtomicInteger(waitingJobsCount);
+        this.lastPrintCount = new AtomicInteger(lastPrintCount);
+        this.totalTimeSpentPrinting = totalTimeSpentPrinting;
+    }
+
+    int getNumberOfRequestsMade() {
+        return this.numberOfRequestsMade.get();
+    }
+
+    int getWaitingJobsCount() {
+        return this.waitingJobsCount.get();
+    }
+
+    int getLastPrintCount() {
+        return this.lastPrintCount.get();
+    }
+
+    long getAverageTimeSpentPrinting() {
+        return this.totalTimeSpentPrinting / Math.max(1, this.lastPrintCount.get());
+    }
+
+    /**
+     * A job has been added.
+     */
+    void onAdded() {
+        this.numberOfRequestsMade.incrementAndGet();
+        this.waitingJobsCount.incrementAndGet();
+    }
+
+    /**
+     * The status of a job has been changed.
+     *
+     * @param oldStatus the previous status
+     * @param newStatus the new status
+     */
+    void onStatusChanged(final PrintJobStatus.Status oldStatus, final PrintJobStatus.Status newStatus) {
+        if (isWaiting(oldStatus)) {
+            this.waitingJobsCount.decrementAndGet();
+        } else if (isCompleted(oldStatus)) {
+            this.lastPrintCount.decrementAndGet();
+        }
+        if (isWaiting(newStatus)) {
+            this.waitingJobsCount.incrementAndGet();
+        } else if (isCompleted(newStatus)) {
+            this.lastPrintCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * True if the status is counted in the waiting jobs.
+     *
+     * @param status the status
+     */
+    static boolean isWaiting(final PrintJobStatus.Status status) {
+        return status == PrintJobStatus.Status.WAITING || status == PrintJobStatus.Status.RUNNING;
+    }
+
+    /**
+     * True if the status is counted in the last prints.
+     *
+     * @param status the status
+     */
+    static boolean isCompleted(final PrintJobStatus.Status status) {
+        return status == PrintJobStatus.Status.FINISHED || status == PrintJobStatus.Status.CANCELLED
+                || status == PrintJobStatus.Status.ERROR;
+    }
+}
@@ -0,0 +1,87 @@
+package org.mapfish.print.servlet.job.impl.store;
+
+import com.google.common.io.Closer;
+import org.mapfish.print.config.WorkingDirectories;
+import org.mapfish.print.servlet.job.loader.FileReportLoader;
+import org.mapfish.print.servlet.job.loader.ReportInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * A report store that keeps the reports in a directory, typically on a file system shared by the nodes.
+ * <p></p>
+ * If no directory is configured, the reports directory of the working directories is used, so the old reports
+ * are removed by the clean-up task.
+ */
+public class FileReportStore implements ReportStore {
+    private static final Pattern VALID_KEY = Pattern.compile("[a-zA-Z0-9._:@-]+");
+    private static final String UPLOAD_PREFIX = ".upload-";
+
+    @Autowired
+    private WorkingDirectories workingDirectories;
+
+    private File directory = null;
+
+    /**
+     * Set the directory where the reports are stored.
+     *
+     * @param directory the directory
+     */
+    public final void setDirectory(final File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public final void put(final String key, final File content) throws IOException {
+        final File target = getFile(key);
+        // the report is first moved next to the target so the rename that publishes it is atomic
+        final File upload = new File(target.getParentFile(), UPLOAD_PREFIX + UUID.randomUUID().toString());
+        Files.move(content.toPath(), upload.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try {
+            Files.move(upload.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(upload.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public final ReportInfo getInfo(final String key) {
+        final File file = getFile(key);
+        return file.isFile() ? ReportInfo.forFile(file) : null;
+    }
+
+    @Override
+    public final void read(final String key, final long offset, final long length, final OutputStream out)
+            throws IOException {
+        Closer closer = Closer.create();
+        try {
+            FileInputStream in = closer.register(new FileInputStream(getFile(key)));
+            FileChannel channel = closer.register(in.getChannel());
+            FileReportLoader.transfer(channel, offset, length, Channels.newChannel(out));
+        } finally {
+            closer.close();
+        }
+    }
+
+    private File getFile(final String key) {
+        if (!VALID_KEY.matcher(key).matches() || key.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid report key: " + key);
+        }
+        final File dir = this.directory != null ? this.directory : this.workingDirectories.getReports();
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IllegalStateException("Unable to create the report store directory " + dir);
+        }
+        return new File(dir, key);
+    }
+}
@@ -0,0 +1,41 @@
+package org.mapfish.print.servlet.job.impl.store;
+
+import org.mapfish.print.servlet.job.loader.ReportInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * A storage for the reports, in the style of an object store: a report is uploaded in one piece once it is
+ * complete and can then be read, entirely or partially, from any node.
+ */
+public interface ReportStore {
+    /**
+     * Store a report.
+     *
+     * @param key the key of the report (the reference ID of the print job).
+     * @param content the local file containing the report, the store may move it.
+     */
+    void put(String key, File content) throws IOException;
+
+    /**
+     * Get the size and the entity tag of a report.
+     *
+     * @param key the key of the report.
+     * @return null if the report doesn't exist.
+     */
+    @Nullable
+    ReportInfo getInfo(String key) throws IOException;
+
+    /**
+     * Read a part of a report.
+     *
+     * @param key the key of the report.
+     * @param offset the position of the first byte to read.
+     * @param length the number of bytes to read.
+     * @param out where to write the data.
+     */
+    void read(String key, long offset, long length, OutputStream out) throws IOException;
+}
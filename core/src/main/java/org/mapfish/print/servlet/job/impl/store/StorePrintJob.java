@@ -0,0 +1,41 @@
+package org.mapfish.print.servlet.job.impl.store;
+
+import org.mapfish.print.config.WorkingDirectories;
+import org.mapfish.print.servlet.job.PrintJob;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * A PrintJob implementation that writes the report to a local spill file and then puts it in the {@link
+ * ReportStore}.
+ */
+public class StorePrintJob extends PrintJob {
+
+    @Autowired
+    private WorkingDirectories workingDirectories;
+
+    @Autowired
+    private ReportStore reportStore;
+
+    @Override
+    protected final URI withOpenOutputStream(final PrintAction function) throws Exception {
+        final String key = getEntry().getReferenceId();
+        final File spill = File.createTempFile("spill-", ".tmp", this.workingDirectories.getReports());
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(spill))) {
+                function.run(out);
+            }
+            this.reportStore.put(key, spill);
+        } finally {
+            if (spill.exists() && !spill.delete()) {
+                spill.deleteOnExit();
+            }
+        }
+        return new URI(StoreReportLoader.URI_SCHEME, key, null);
+    }
+}
@@ -0,0 +1,44 @@
+package org.mapfish.print.servlet.job.impl.store;
+
+import org.mapfish.print.servlet.job.loader.RangeReportLoader;
+import org.mapfish.print.servlet.job.loader.ReportInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * Loads reports from the {@link ReportStore}.
+ * <p></p>
+ */
+public class StoreReportLoader implements RangeReportLoader {
+    /**
+     * The scheme of the URIs of the reports in the store.
+     */
+    public static final String URI_SCHEME = "store";
+
+    @Autowired
+    private ReportStore reportStore;
+
+    @Override
+    public final boolean accepts(final URI reportURI) {
+        return reportURI.getScheme().equals(URI_SCHEME);
+    }
+
+    @Override
+    public final void loadReport(final URI reportURI, final OutputStream out) throws IOException {
+        this.reportStore.read(reportURI.getSchemeSpecificPart(), 0, Long.MAX_VALUE, out);
+    }
+
+    @Override
+    public final ReportInfo getReportInfo(final URI reportURI) throws IOException {
+        return this.reportStore.getInfo(reportURI.getSchemeSpecificPart());
+    }
+
+    @Override
+    public final void loadReport(final URI reportURI, final long offset, final long length,
+                                 final OutputStream out) throws IOException {
+        this.reportStore.read(reportURI.getSchemeSpecificPart(), offset, length, out);
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains a print job and a report loader that keep the reports in a {@link
+ * org.mapfish.print.servlet.job.impl.store.ReportStore}, a storage shared by all the nodes of a cluster (object store,
+ * shared file system, ...).
+ */
+package org.mapfish.print.servlet.job.impl.store;
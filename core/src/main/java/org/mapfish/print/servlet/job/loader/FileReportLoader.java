@@ -2,18 +2,20 @@ package org.mapfish.print.servlet.job.loader;
 
 import com.google.common.io.Closer;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Loads reports from file uris.
  * <p></p>
  */
-public class FileReportLoader implements ReportLoader {
+public class FileReportLoader implements RangeReportLoader {
     @Override
     public final boolean accepts(final URI reportURI) {
         return reportURI.getScheme().equals("file");
@@ -21,13 +23,46 @@ public class FileReportLoader implements ReportLoader {
 
     @Override
     public final void loadReport(final URI reportURI, final OutputStream out) throws IOException {
+        loadReport(reportURI, 0, Long.MAX_VALUE, out);
+    }
+
+    @Override
+    public final ReportInfo getReportInfo(final URI reportURI) {
+        final File file = new File(reportURI.getPath());
+        return file.isFile() ? ReportInfo.forFile(file) : null;
+    }
+
+    @Override
+    public final void loadReport(final URI reportURI, final long offset, final long length,
+                                 final OutputStream out) throws IOException {
         Closer closer = Closer.create();
         try {
             FileInputStream in = closer.register(new FileInputStream(reportURI.getPath()));
             FileChannel channel = closer.register(in.getChannel());
-            channel.transferTo(0, Long.MAX_VALUE, Channels.newChannel(out));
+            transfer(channel, offset, length, Channels.newChannel(out));
         } finally {
             closer.close();
         }
     }
+
+    /**
+     * Copy a part of a file to a channel.
+     *
+     * @param channel the file
+     * @param offset the position of the first byte to copy
+     * @param length the number of bytes to copy
+     * @param target where to write
+     */
+    public static void transfer(final FileChannel channel, final long offset, final long length,
+                                final WritableByteChannel target) throws IOException {
+        final long end = Math.min(channel.size(), offset + Math.min(length, Long.MAX_VALUE - offset));
+        long position = offset;
+        while (position < end) {
+            final long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+    }
 }
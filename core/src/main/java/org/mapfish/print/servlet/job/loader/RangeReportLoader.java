@@ -0,0 +1,30 @@
+package org.mapfish.print.servlet.job.loader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import javax.annotation.Nullable;
+
+/**
+ * A report loader that can send a part of a report, used to answer the HTTP range requests.
+ */
+public interface RangeReportLoader extends ReportLoader {
+    /**
+     * Get the size and the entity tag of a report.
+     *
+     * @param reportURI uri of the report.
+     * @return null if the report doesn't exist.
+     */
+    @Nullable
+    ReportInfo getReportInfo(URI reportURI) throws IOException;
+
+    /**
+     * Reads a part of a report from the URI and writes it to the output stream.
+     *
+     * @param reportURI uri of the report.
+     * @param offset the position of the first byte to send.
+     * @param length the number of bytes to send.
+     * @param out output stream to write to.
+     */
+    void loadReport(URI reportURI, long offset, long length, OutputStream out) throws IOException;
+}
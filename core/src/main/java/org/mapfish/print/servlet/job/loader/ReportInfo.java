@@ -0,0 +1,41 @@
+package org.mapfish.print.servlet.job.loader;
+
+import java.io.File;
+
+/**
+ * The size and the entity tag of a stored report.
+ */
+public final class ReportInfo {
+    private final long length;
+    private final String eTag;
+
+    /**
+     * Constructor.
+     *
+     * @param length the size of the report in bytes
+     * @param eTag an opaque value that changes when the content of the report changes (not quoted)
+     */
+    public ReportInfo(final long length, final String eTag) {
+        this.length = length;
+        this.eTag = eTag;
+    }
+
+    /**
+     * Get the information of a report stored in a file, the entity tag is derived from the size and the
+     * modification time of the file.
+     *
+     * @param file the report file
+     */
+    public static ReportInfo forFile(final File file) {
+        final long length = file.length();
+        return new ReportInfo(length, Long.toHexString(length) + "-" + Long.toHexString(file.lastModified()));
+    }
+
+    public long getLength() {
+        return this.length;
+    }
+
+    public String getETag() {
+        return this.eTag;
+    }
+}
@@ -0,0 +1,239 @@
+package org.mapfish.print.trace;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+import org.mapfish.print.ExceptionUtils;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The execution trace of a print job: a timeline of spans (processors, layers, http requests, Jasper fill and
+ * export, ...).
+ * <p></p>
+ * Recording a span only costs a few allocations, and the number of spans is limited. Once the job is done only
+ * a summary (see {@link #toSummaryJson(int)}) is kept with its status, so the trace can be left on in production.
+ * The trace is exported in the Chrome trace event format (can be opened in <code>chrome://tracing</code> or
+ * Perfetto).
+ */
+public final class JobTrace {
+    /**
+     * The span returned when there is nothing to record.
+     */
+    public static final Span NOOP_SPAN = new Span(null, null, null);
+
+    private final String jobId;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final int maxSpans;
+    private final AtomicInteger nbSpans = new AtomicInteger();
+    private final AtomicInteger nbDropped = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor.
+     *
+     * @param jobId the job ID
+     * @param maxSpans the maximum number of spans to record, the other ones are just counted
+     */
+    public JobTrace(final String jobId, final int maxSpans) {
+        this.jobId = jobId;
+        this.maxSpans = maxSpans;
+    }
+
+    public String getJobId() {
+        return this.jobId;
+    }
+
+    /**
+     * Start a span, it is recorded when {@link Span#end()} is called.
+     *
+     * @param category the category of the span (processor, layer, http, jasper, ...)
+     * @param name the name of the span
+     */
+    public Span start(final String category, final String name) {
+        if (this.nbSpans.get() >= this.maxSpans) {
+            this.nbDropped.incrementAndGet();
+            return NOOP_SPAN;
+        }
+        return new Span(this, category, name);
+    }
+
+    private void record(final Span span) {
+        if (this.nbSpans.incrementAndGet() > this.maxSpans) {
+            this.nbDropped.incrementAndGet();
+        } else {
+            this.spans.add(span);
+        }
+    }
+
+    /**
+     * Export the recorded spans in the Chrome trace event format.
+     */
+    public String toJson() {
+        return toJson(this.spans, null);
+    }
+
+    /**
+     * Export a summary of the trace in the Chrome trace event format, its size doesn't depend on the number of
+     * spans: only the longest spans are exported, and the number and total duration of the spans of each category
+     * are given in <code>otherData.categories</code>.
+     *
+     * @param maxSpans the number of spans to export
+     */
+    public String toSummaryJson(final int maxSpans) {
+        final List<Span> longest = new ArrayList<>(this.spans);
+        Collections.sort(longest, new Comparator<Span>() {
+            @Override
+            public int compare(final Span o1, final Span o2) {
+                return Long.compare(o2.durationNanos, o1.durationNanos);
+            }
+        });
+        final Map<String, long[]> categories = new HashMap<>();
+        for (Span span : longest) {
+            long[] totals = categories.get(span.category);
+            if (totals == null) {
+                totals = new long[2];
+                categories.put(span.category, totals);
+            }
+            totals[0]++;
+            totals[1] += TimeUnit.NANOSECONDS.toMicros(span.durationNanos);
+        }
+        return toJson(longest.subList(0, Math.min(maxSpans, longest.size())), categories);
+    }
+
+    private String toJson(final Collection<Span> exported, final Map<String, long[]> categories) {
+        final StringWriter result = new StringWriter();
+        try {
+            final JSONWriter json = new JSONWriter(result);
+            json.object();
+            json.key("traceEvents").array();
+            final Map<Long, String> threads = new HashMap<>();
+            for (Span span : exported) {
+                threads.put(span.threadId, span.threadName);
+                json.object();
+                json.key("name").value(span.name);
+                json.key("cat").value(span.category);
+                json.key("ph").value("X");
+                json.key("ts").value(TimeUnit.NANOSECONDS.toMicros(span.startNanos - this.startNanos));
+                json.key("dur").value(TimeUnit.NANOSECONDS.toMicros(span.durationNanos));
+                json.key("pid").value(1);
+                json.key("tid").value(span.threadId);
+                final Map<String, Object> attributes = span.getAttributes();
+                if (!attributes.isEmpty()) {
+                    json.key("args").object();
+                    for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                        json.key(attribute.getKey()).value(attribute.getValue());
+                    }
+                    json.endObject();
+                }
+                json.endObject();
+            }
+            for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                json.object();
+                json.key("name").value("thread_name");
+                json.key("ph").value("M");
+                json.key("pid").value(1);
+                json.key("tid").value(thread.getKey());
+                json.key("args").object().key("name").value(thread.getValue()).endObject();
+                json.endObject();
+            }
+            json.endArray();
+            json.key("displayTimeUnit").value("ms");
+            json.key("otherData").object();
+            json.key("jobId").value(this.jobId);
+            json.key("startTime").value(this.startTime);
+            json.key("droppedSpans").value(this.nbDropped.get());
+            if (categories != null) {
+                json.key("summarizedSpans").value(this.spans.size() - exported.size());
+                json.key("categories").object();
+                for (Map.Entry<String, long[]> category : categories.entrySet()) {
+                    json.key(category.getKey()).object();
+                    json.key("count").value(category.getValue()[0]);
+                    json.key("dur").value(category.getValue()[1]);
+                    json.endObject();
+                }
+                json.endObject();
+            }
+            json.endObject();
+            json.endObject();
+        } catch (JSONException e) {
+            throw ExceptionUtils.getRuntimeException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * A timed operation.
+     */
+    public static final class Span {
+        private final JobTrace trace;
+        private final String category;
+        private final String name;
+        private final long threadId;
+        private final String threadName;
+        private final long startNanos;
+        private volatile long durationNanos = -1;
+        private Map<String, Object> attributes = null;
+
+        private Span(final JobTrace trace, final String category, final String name) {
+            this.trace = trace;
+            this.category = category;
+            this.name = name;
+            final Thread thread = Thread.currentThread();
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Add an attribute to the span (URI, size, status code, ...).
+         *
+         * @param key the key
+         * @param value the value (string, number or boolean)
+         * @return this span
+         */
+        public Span setAttribute(final String key, final Object value) {
+            if (this.trace == null) {
+                return this;
+            }
+            synchronized (this) {
+                if (this.attributes == null) {
+                    this.attributes = new LinkedHashMap<>();
+                }
+                this.attributes.put(key, value);
+            }
+            return this;
+        }
+
+        private synchronized Map<String, Object> getAttributes() {
+            return this.attributes == null ? new HashMap<>() : new LinkedHashMap<>(this.attributes);
+        }
+
+        /**
+         * Stop the span and record it. Calling it more than once has no effect.
+         */
+        public void end() {
+            if (this.trace == null) {
+                return;
+            }
+            synchronized (this) {
+                if (this.durationNanos >= 0) {
+                    return;
+                }
+                this.durationNanos = System.nanoTime() - this.startNanos;
+            }
+            this.trace.record(this);
+        }
+    }
+}
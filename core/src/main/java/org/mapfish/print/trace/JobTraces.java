@@ -0,0 +1,65 @@
+package org.mapfish.print.trace;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * The traces of the print jobs running on this node, by job ID.
+ * <p></p>
+ * The job ID is already passed down to the processors, layers and http requests, so it is used to find the
+ * trace instead of adding a parameter everywhere. When the job is not traced, the spans are no-ops.
+ */
+public final class JobTraces {
+    private static final ConcurrentMap<String, JobTrace> TRACES = new ConcurrentHashMap<>();
+
+    private JobTraces() {
+        // intentionally empty
+    }
+
+    /**
+     * Start tracing a job.
+     *
+     * @param jobId the job ID
+     * @param maxSpans the maximum number of spans to record
+     */
+    public static JobTrace start(final String jobId, final int maxSpans) {
+        final JobTrace trace = new JobTrace(jobId, maxSpans);
+        TRACES.put(jobId, trace);
+        return trace;
+    }
+
+    /**
+     * Get the trace of a running job.
+     *
+     * @param jobId the job ID
+     */
+    @Nullable
+    public static JobTrace get(@Nullable final String jobId) {
+        return jobId == null ? null : TRACES.get(jobId);
+    }
+
+    /**
+     * Start a span in the trace of a job.
+     *
+     * @param jobId the job ID
+     * @param category the category of the span
+     * @param name the name of the span
+     * @return the span, a no-op span if the job is not traced
+     */
+    public static JobTrace.Span span(@Nullable final String jobId, final String category, final String name) {
+        final JobTrace trace = get(jobId);
+        return trace == null ? JobTrace.NOOP_SPAN : trace.start(category, name);
+    }
+
+    /**
+     * Stop tracing a job.
+     *
+     * @param jobId the job ID
+     * @return the trace of the job
+     */
+    @Nullable
+    public static JobTrace finish(final String jobId) {
+        return TRACES.remove(jobId);
+    }
+}
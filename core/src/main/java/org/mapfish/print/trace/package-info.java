@@ -0,0 +1,4 @@
+/**
+ * Per print job execution traces.
+ */
+package org.mapfish.print.trace;
@@ -3,6 +3,7 @@ package org.mapfish.print.http;
 import com.google.common.base.Predicate;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.mapfish.print.AbstractMapfishSpringTest;
@@ -11,6 +12,8 @@ import org.mapfish.print.IllegalFileAccessException;
 import org.mapfish.print.TestHttpClientFactory;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.ConfigurationFactory;
+import org.mapfish.print.trace.JobTrace;
+import org.mapfish.print.trace.JobTraces;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
@@ -80,6 +83,19 @@ public class ConfigFileResolvingHttpRequestFactoryTest extends AbstractMapfishSp
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testSpanNameWithoutHost() throws Exception {
+        final URI uri = new URI("servlet://" + BASE_DIR + "requestData.json");
+        final JobTrace trace = JobTraces.start("test", 10);
+        try {
+            resolvingFactory.createRequest(uri, HttpMethod.GET).execute().close();
+        } finally {
+            JobTraces.finish("test");
+        }
+        final JSONObject span = new JSONObject(trace.toJson()).getJSONArray("traceEvents").getJSONObject(0);
+        assertEquals("GET servlet", span.getString("name"));
+    }
+
     @Test
     public void testCreateRequestHttpGet() throws Exception {
         final URI uri = new URI("http://" + HOST + ".test/logback.xml");
@@ -0,0 +1,177 @@
+package org.mapfish.print.http;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpRequestCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger nbExecutions = new AtomicInteger();
+
+    private ClientHttpRequest createRequest(final String uri) {
+        return new MockClientHttpRequest(HttpMethod.GET, URI.create(uri)) {
+            @Override
+            protected ClientHttpResponse executeInternal() throws IOException {
+                HttpRequestCacheTest.this.nbExecutions.incrementAndGet();
+                return new MockClientHttpResponse(uri.getBytes("UTF-8"), HttpStatus.OK);
+            }
+        };
+    }
+
+    /**
+     * A request whose response is blocked until the latch is released.
+     */
+    private ClientHttpRequest createBlockedRequest(final String uri, final CountDownLatch started,
+                                                   final CountDownLatch release) {
+        return new MockClientHttpRequest(HttpMethod.GET, URI.create(uri)) {
+            @Override
+            protected ClientHttpResponse executeInternal() throws IOException {
+                HttpRequestCacheTest.this.nbExecutions.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return new MockClientHttpResponse(uri.getBytes("UTF-8"), HttpStatus.OK);
+            }
+        };
+    }
+
+    private static Future<?> cacheAsync(final ExecutorService executor, final HttpRequestCache cache) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                cache.cache(new ForkJoinPool(1));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Wait until a thread waits for a request of another cache.
+     */
+    private static void waitForCoalescing() throws InterruptedException {
+        while (true) {
+            for (StackTraceElement[] stack: Thread.getAllStackTraces().values()) {
+                for (StackTraceElement element: stack) {
+                    if (element.getMethodName().equals("copyFrom")) {
+                        return;
+                    }
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static String read(final ClientHttpRequest request) throws IOException {
+        try (ClientHttpResponse response = request.execute()) {
+            return IOUtils.toString(response.getBody(), "UTF-8");
+        }
+    }
+
+    @Test
+    public void testDuplicateRequests() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final HttpRequestCache cache = new HttpRequestCache(this.folder.getRoot(), registry);
+        final ClientHttpRequest first = cache.register(createRequest("http://localhost/tile/0/0"));
+        final ClientHttpRequest second = cache.register(createRequest("http://localhost/tile/0/0"));
+        final ClientHttpRequest other = cache.register(createRequest("http://localhost/tile/0/1"));
+        assertSame(first, second);
+
+        cache.cache(ForkJoinPool.commonPool());
+
+        assertEquals(2, this.nbExecutions.get());
+        assertEquals(1, registry.counter(HttpRequestCache.class.getName() + ".duplicate").getCount());
+        // the same handle can be read several times
+        assertEquals("http://localhost/tile/0/0", read(first));
+        assertEquals("http://localhost/tile/0/0", read(second));
+        assertEquals("http://localhost/tile/0/1", read(other));
+    }
+
+    @Test(timeout = 10000)
+    public void testInFlightRequests() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final Object scope = new Object();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final HttpRequestCache firstCache = new HttpRequestCache(this.folder.getRoot(), registry, scope);
+        final HttpRequestCache secondCache = new HttpRequestCache(this.folder.getRoot(), registry, scope);
+        final ClientHttpRequest first = firstCache.register(
+                createBlockedRequest("http://localhost/tile/0/0", started, release));
+        final ClientHttpRequest second = secondCache.register(createRequest("http://localhost/tile/0/0"));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> firstDone = cacheAsync(executor, firstCache);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // the second cache (another job) waits for the download of the first one
+            final Future<?> secondDone = cacheAsync(executor, secondCache);
+            waitForCoalescing();
+            release.countDown();
+            firstDone.get();
+            secondDone.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, this.nbExecutions.get());
+        assertEquals(1, registry.counter(HttpRequestCache.class.getName() + ".coalesced").getCount());
+        assertEquals("http://localhost/tile/0/0", read(first));
+        assertEquals("http://localhost/tile/0/0", read(second));
+    }
+
+    @Test(timeout = 10000)
+    public void testInFlightRequestTimeout() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final Object scope = new Object();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final HttpRequestCache firstCache = new HttpRequestCache(this.folder.getRoot(), registry, scope);
+        final HttpRequestCache secondCache = new HttpRequestCache(this.folder.getRoot(), registry, scope);
+        secondCache.setInFlightTimeout(100);
+        firstCache.register(createBlockedRequest("http://localhost/tile/0/0", started, release));
+        final ClientHttpRequest second = secondCache.register(createRequest("http://localhost/tile/0/0"));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> firstDone = cacheAsync(executor, firstCache);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // the first download is stuck, the second cache downloads the request itself
+            secondCache.cache(new ForkJoinPool(1));
+            assertEquals(2, this.nbExecutions.get());
+            assertEquals(1, registry.counter(HttpRequestCache.class.getName() + ".coalesceTimeout").getCount());
+            assertEquals("http://localhost/tile/0/0", read(second));
+            release.countDown();
+            firstDone.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.mapfish.print.http;
+
+import org.junit.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpRequestSchedulerTest extends AbstractMapfishSpringTest {
+
+    @Autowired
+    private HttpRequestScheduler httpRequestScheduler;
+
+    @Test
+    public void testMaxInFlightPerHost() throws Exception {
+        this.httpRequestScheduler.setMaxInFlightPerHost(2);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        final Callable<Void> task = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                Thread.sleep(10);
+                inFlight.decrementAndGet();
+                done.incrementAndGet();
+                return null;
+            }
+        };
+
+        try {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(this.httpRequestScheduler.submit("slow.example.com", task));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+        } finally {
+            this.httpRequestScheduler.setMaxInFlightPerHost(10);
+        }
+
+        assertEquals(20, done.get());
+        assertTrue("max in flight: " + maxInFlight.get(), maxInFlight.get() <= 2);
+    }
+}
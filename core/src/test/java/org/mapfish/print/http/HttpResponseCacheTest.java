@@ -0,0 +1,183 @@
+package org.mapfish.print.http;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpResponseCacheTest extends AbstractMapfishSpringTest {
+    private static final long NOW = 1500000000000L;
+    private static final String METRIC_NAME = HttpResponseCache.class.getName();
+
+    @Autowired
+    private ApplicationContext context;
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private HttpResponseCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        // the gauges of the cache of a previous test
+        this.metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(final String name, final Metric metric) {
+                return name.startsWith(METRIC_NAME);
+            }
+        });
+        this.cache = new HttpResponseCache();
+        this.context.getAutowireCapableBeanFactory().autowireBean(this.cache);
+        this.cache.setEnabled(true);
+        this.cache.setMaxMemoryBytes(100);
+        this.cache.setMaxMemoryEntryBytes(80);
+        this.cache.setMaxDiskBytes(250);
+        this.cache.init();
+    }
+
+    private static HttpResponse createResponse(final String... headers) {
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    private static HttpGet createRequest(final String uri, final String... headers) {
+        final HttpGet request = new HttpGet(uri);
+        for (int i = 0; i < headers.length; i += 2) {
+            request.addHeader(headers[i], headers[i + 1]);
+        }
+        return request;
+    }
+
+    /**
+     * Put a response of the given size in the cache, return its body as returned by the cache.
+     */
+    private String put(final HttpGet request, final int size, final String... headers) throws IOException {
+        final HttpResponse httpResponse = createResponse(headers);
+        final byte[] body = new byte[size];
+        Arrays.fill(body, (byte) 'a');
+        httpResponse.setEntity(new ByteArrayEntity(body));
+        final String key = this.cache.createKey(request, null);
+        try (ClientHttpResponse response = this.cache.put(key, request, httpResponse,
+                new MfClientHttpRequestFactoryImpl.Response(httpResponse))) {
+            return IOUtils.toString(response.getBody(), "UTF-8");
+        }
+    }
+
+    private boolean isCached(final HttpGet request) throws IOException {
+        final ClientHttpResponse response = this.cache.get(this.cache.createKey(request, null));
+        if (response == null) {
+            return false;
+        }
+        response.close();
+        return true;
+    }
+
+    @Test
+    public void testGetExpires() {
+        assertEquals(-1, HttpResponseCache.getExpires(createResponse(), NOW));
+        assertEquals(NOW + 60000, HttpResponseCache.getExpires(
+                createResponse("Cache-Control", "public, max-age=60"), NOW));
+        assertEquals(NOW + 120000, HttpResponseCache.getExpires(
+                createResponse("Cache-Control", "max-age=60, s-maxage=120"), NOW));
+        assertEquals(-1, HttpResponseCache.getExpires(
+                createResponse("Cache-Control", "private, max-age=60"), NOW));
+        assertEquals(-1, HttpResponseCache.getExpires(
+                createResponse("Cache-Control", "no-store"), NOW));
+        assertEquals(-1, HttpResponseCache.getExpires(
+                createResponse("Cache-Control", "max-age=0"), NOW));
+
+        // the lifetime is computed with the clock of the server
+        final Date serverDate = new Date(NOW - 3600000);
+        assertEquals(NOW + 30000, HttpResponseCache.getExpires(createResponse(
+                "Date", DateUtils.formatDate(serverDate),
+                "Expires", DateUtils.formatDate(new Date(serverDate.getTime() + 30000))), NOW));
+        assertEquals(-1, HttpResponseCache.getExpires(createResponse("Expires", "0"), NOW));
+    }
+
+    @Test
+    public void testStoreAndHit() throws Exception {
+        final HttpGet small = createRequest("http://localhost/small");
+        final HttpGet large = createRequest("http://localhost/large");
+        final HttpGet uncacheable = createRequest("http://localhost/uncacheable");
+
+        assertEquals(10, put(small, 10, "Cache-Control", "max-age=60").length());
+        assertEquals(200, put(large, 200, "Cache-Control", "max-age=60").length());
+        assertEquals(10, put(uncacheable, 10).length());
+
+        final long hits = this.metricRegistry.counter(METRIC_NAME + ".hit").getCount();
+        try (ClientHttpResponse response = this.cache.get(this.cache.createKey(small, null))) {
+            assertEquals(10, IOUtils.toString(response.getBody(), "UTF-8").length());
+        }
+        // the large response is on the disk
+        try (ClientHttpResponse response = this.cache.get(this.cache.createKey(large, null))) {
+            assertEquals(200, IOUtils.toString(response.getBody(), "UTF-8").length());
+        }
+        assertEquals(hits + 2, this.metricRegistry.counter(METRIC_NAME + ".hit").getCount());
+        assertFalse(isCached(uncacheable));
+        // the headers are part of the key
+        assertFalse(isCached(createRequest("http://localhost/small", "Accept", "image/png")));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final HttpGet first = createRequest("http://localhost/first");
+        final HttpGet second = createRequest("http://localhost/second");
+        final HttpGet third = createRequest("http://localhost/third");
+        final HttpGet large = createRequest("http://localhost/large");
+
+        put(first, 60, "Cache-Control", "max-age=60");
+        put(second, 60, "Cache-Control", "max-age=60");
+        // the first response is moved from the memory to the disk
+        assertTrue(isCached(first));
+        assertEquals(60L, this.metricRegistry.getGauges().get(METRIC_NAME + ".memory.bytes").getValue());
+        assertEquals(60L, this.metricRegistry.getGauges().get(METRIC_NAME + ".disk.bytes").getValue());
+
+        // the whole disk budget is usable by one response
+        put(third, 60, "Cache-Control", "max-age=60");
+        put(large, 200, "Cache-Control", "max-age=60");
+        assertTrue(isCached(large));
+        assertFalse(isCached(first));
+        assertTrue(isCached(third));
+        assertEquals(200L, this.metricRegistry.getGauges().get(METRIC_NAME + ".disk.bytes").getValue());
+    }
+
+    @Test
+    public void testVary() throws Exception {
+        final HttpGet withLanguage = createRequest("http://localhost/vary", "Accept-Language", "fr");
+        put(withLanguage, 10, "Cache-Control", "max-age=60", "Vary", "Accept-Encoding, Accept-Language");
+        assertTrue(isCached(withLanguage));
+        assertFalse(isCached(createRequest("http://localhost/vary", "Accept-Language", "de")));
+
+        // the header may be added by the client, it's not in the key
+        final HttpGet withoutLanguage = createRequest("http://localhost/vary");
+        put(withoutLanguage, 10, "Cache-Control", "max-age=60", "Vary", "Accept-Language");
+        assertFalse(isCached(withoutLanguage));
+
+        final HttpGet any = createRequest("http://localhost/any");
+        put(any, 10, "Cache-Control", "max-age=60", "Vary", "*");
+        assertFalse(isCached(any));
+    }
+}
@@ -3,18 +3,25 @@ package org.mapfish.print.map.geotools;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.io.Files;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultEngineeringCRS;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.mapfish.print.AbstractMapfishSpringTest;
 import org.mapfish.print.Constants;
+import org.mapfish.print.PrintException;
 import org.mapfish.print.TestHttpClientFactory;
 import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.ConfigurationFactory;
 import org.mapfish.print.http.ConfigFileResolvingHttpRequestFactory;
 import org.mapfish.print.http.MfClientHttpRequestFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
@@ -32,6 +39,8 @@ import javax.annotation.Nullable;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class FeaturesParserTest extends AbstractMapfishSpringTest {
 
@@ -192,6 +201,76 @@ public class FeaturesParserTest extends AbstractMapfishSpringTest {
         final String geojson = "{\"type\": \"FeatureCollection\", \"features\": []}";
         final SimpleFeatureCollection simpleFeatureCollection = featuresParser.treatStringAsGeoJson(geojson);
         assertEquals(0, simpleFeatureCollection.size());
+        // no feature type without features
+        assertNull(simpleFeatureCollection.getSchema());
+    }
+
+    @Test
+    public void testTreatStringAsGeoJsonPositions() throws Exception {
+        FeaturesParser featuresParser = new FeaturesParser(requestFactory, false);
+
+        final String geojson = "{\"type\": \"FeatureCollection\", \"features\": [" +
+                "{\"type\": \"Feature\", \"properties\": {}, \"geometry\": {\"type\": \"Positions\"}}]}";
+        final SimpleFeatureCollection collection = featuresParser.treatStringAsGeoJson(geojson);
+        assertEquals(1, collection.size());
+        assertEquals(Geometry.class, collection.getSchema().getGeometryDescriptor().getType().getBinding());
+    }
+
+    @Test
+    public void testTreatStringAsGeoJsonEmptyPoint() throws Exception {
+        FeaturesParser featuresParser = new FeaturesParser(requestFactory, false);
+
+        final String geojson = "{\"type\": \"FeatureCollection\", \"features\": [" +
+                "{\"type\": \"Feature\", \"properties\": {}, " +
+                "\"geometry\": {\"type\": \"Point\", \"coordinates\": []}}]}";
+        final SimpleFeatureCollection collection = featuresParser.treatStringAsGeoJson(geojson);
+        assertEquals(1, collection.size());
+        try (SimpleFeatureIterator iterator = collection.features()) {
+            final Geometry geometry = (Geometry) iterator.next().getDefaultGeometry();
+            assertTrue(geometry instanceof Point);
+            assertTrue(geometry.isEmpty());
+        }
+    }
+
+    @Test(expected = PrintException.class)
+    public void testTreatStringAsGeoJsonUnknownGeometry() throws Exception {
+        FeaturesParser featuresParser = new FeaturesParser(requestFactory, false);
+
+        final String geojson = "{\"type\": \"FeatureCollection\", \"features\": [" +
+                "{\"type\": \"Feature\", \"properties\": {}, " +
+                "\"geometry\": {\"type\": \"Circle\", \"coordinates\": [1, 2]}}]}";
+        featuresParser.treatStringAsGeoJson(geojson);
+    }
+
+    @Test
+    public void testTreatStringAsGeoJsonMixedGeometries() throws Exception {
+        FeaturesParser featuresParser = new FeaturesParser(requestFactory, false);
+
+        final String geojson = "{\"features\": [" +
+                "{\"type\": \"Feature\", \"id\": \"a\", \"properties\": {\"name\": \"one\", \"count\": 1}, " +
+                "\"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}}," +
+                "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Polygon\", " +
+                "\"coordinates\": [[[0, 0], [1, 0], [1, 1], [0, 0]]]}, \"properties\": {\"size\": 2.5}}" +
+                "], \"crs\": {\"type\": \"EPSG\", \"properties\": {\"code\": \"4326\"}}, " +
+                "\"type\": \"FeatureCollection\"}";
+        final SimpleFeatureCollection collection = featuresParser.treatStringAsGeoJson(geojson);
+        assertEquals(2, collection.size());
+        final SimpleFeatureType featureType = collection.getSchema();
+        assertEquals(Geometry.class, featureType.getGeometryDescriptor().getType().getBinding());
+        assertEquals(CRS.decode("EPSG:4326"), featureType.getCoordinateReferenceSystem());
+        assertEquals(4, featureType.getAttributeCount());
+
+        try (SimpleFeatureIterator iterator = collection.features()) {
+            final SimpleFeature first = iterator.next();
+            assertEquals("a", first.getID());
+            assertEquals("one", first.getAttribute("name"));
+            assertEquals(1L, first.getAttribute("count"));
+            assertNull(first.getAttribute("size"));
+            assertTrue(first.getDefaultGeometry() instanceof Point);
+            final SimpleFeature second = iterator.next();
+            assertEquals(2.5, second.getAttribute("size"));
+            assertTrue(second.getDefaultGeometry() instanceof Polygon);
+        }
     }
 
     private int getNumExpectedFeatures(File geojsonExample) {
@@ -0,0 +1,79 @@
+package org.mapfish.print.map.style;
+
+import com.google.common.base.Optional;
+import org.geotools.styling.Style;
+import org.junit.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.TestHttpClientFactory;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.http.ConfigFileResolvingHttpRequestFactory;
+import org.mapfish.print.servlet.fileloader.ConfigFileLoaderManager;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the cache of the parsed styles.
+ */
+public class StyleParserTest extends AbstractMapfishSpringTest {
+    @Autowired
+    private StyleParser parser;
+    @Autowired
+    private TestHttpClientFactory clientHttpRequestFactory;
+    @Autowired
+    private ConfigFileLoaderManager fileLoaderManager;
+
+    @Test
+    public void testCachedStyleIsCopied() throws Throwable {
+        final String fileName = "singleStyle.sld";
+        File file = getFile(FileSLDParserPluginTest.class, fileName);
+        Configuration config = new Configuration();
+        config.setConfigurationFile(file);
+        config.setFileLoaderManager(this.fileLoaderManager);
+        ConfigFileResolvingHttpRequestFactory requestFactory = new ConfigFileResolvingHttpRequestFactory(
+                this.clientHttpRequestFactory, config, "test");
+
+        final Optional<? extends Style> first = this.parser.loadStyle(config, requestFactory, fileName);
+        assertTrue(first.isPresent());
+        assertEquals(1L, config.getParsedStyles().size());
+
+        // modifying the returned style must not affect the cached one
+        first.get().featureTypeStyles().clear();
+
+        final Optional<? extends Style> second = this.parser.loadStyle(config, requestFactory, fileName);
+        assertTrue(second.isPresent());
+        assertNotSame(first.get(), second.get());
+        assertEquals(1, second.get().featureTypeStyles().size());
+        assertEquals(2, second.get().featureTypeStyles().get(0).rules().size());
+        assertEquals(1L, config.getParsedStyles().size());
+
+        // a new configuration (reload) has its own cache
+        Configuration reloaded = new Configuration();
+        reloaded.setConfigurationFile(file);
+        reloaded.setFileLoaderManager(this.fileLoaderManager);
+        assertEquals(0L, reloaded.getParsedStyles().size());
+        assertFalse(this.parser.loadStyle(reloaded, requestFactory, null).isPresent());
+    }
+
+    @Test
+    public void testInlineStylesAreBounded() throws Throwable {
+        Configuration config = new Configuration();
+        config.setConfigurationFile(getFile(FileSLDParserPluginTest.class, "singleStyle.sld"));
+        config.setFileLoaderManager(this.fileLoaderManager);
+        ConfigFileResolvingHttpRequestFactory requestFactory = new ConfigFileResolvingHttpRequestFactory(
+                this.clientHttpRequestFactory, config, "test");
+
+        // each request can come with its own inline style, they must not all stay in memory
+        for (int i = 0; i < 300; i++) {
+            final String style = "{\"version\": \"2\", \"*\": {\"maxScale\": " + (i + 1) +
+                    ", \"symbolizers\": [{\"type\": \"point\"}]}}";
+            assertTrue(this.parser.loadStyle(config, requestFactory, style).isPresent());
+        }
+        assertTrue(config.getParsedStyles().size() <= 200L);
+    }
+}
@@ -24,7 +24,7 @@ public class WMTSLayerTest {
         matrix.scaleDenominator = 7500;
         params.matrices = new Matrix[] {matrix};
 
-        WMTSLayer wmtsLayer = new WMTSLayer(null, null, params, null,
+        WMTSLayer wmtsLayer = new WMTSLayer(null, null, null, params, null,
                 new Configuration());
 
         Rectangle paintArea = new Rectangle(0, 0, 256, 256);
@@ -0,0 +1,45 @@
+package org.mapfish.print.output;
+
+import org.junit.Test;
+import org.mapfish.print.Constants;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReportTemplateDeclarationsTest {
+    private static final String JRXML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<jasperReport name=\"report\">\n" +
+            "  <parameter name=\"title\" class=\"java.lang.String\"/>\n" +
+            "  <parameter name=\"count\" class=\"java.lang.Integer\">\n" +
+            "    <defaultValueExpression><![CDATA[1]]></defaultValueExpression>\n" +
+            "  </parameter>\n" +
+            "  <field name=\"name\" class=\"java.lang.String\"/>\n" +
+            "</jasperReport>";
+
+    @Test
+    public void testParse() throws Exception {
+        final ReportTemplateDeclarations declarations = ReportTemplateDeclarations.parse(
+                JRXML.getBytes(Constants.DEFAULT_CHARSET), 42L);
+        assertEquals(42L, declarations.getLastModified());
+
+        final List<ReportTemplateDeclarations.Declaration> parameters = declarations.getParameters();
+        assertEquals(2, parameters.size());
+        assertEquals("title", parameters.get(0).getName());
+        assertEquals(String.class, parameters.get(0).getType());
+        assertFalse(parameters.get(0).hasDefault());
+        assertEquals(Integer.class, parameters.get(1).getType());
+        assertTrue(parameters.get(1).hasDefault());
+
+        assertEquals(1, declarations.getFields().size());
+        assertEquals("name", declarations.getFields().get(0).getName());
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownClass() throws Exception {
+        ReportTemplateDeclarations.parse(("<jasperReport><parameter name=\"a\" class=\"does.not.Exist\"/>" +
+                "</jasperReport>").getBytes(Constants.DEFAULT_CHARSET), 0L);
+    }
+}
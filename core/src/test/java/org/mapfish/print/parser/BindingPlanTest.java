@@ -0,0 +1,62 @@
+package org.mapfish.print.parser;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BindingPlanTest {
+    @Test
+    public void testPlan() {
+        final BindingPlan plan = BindingPlan.of(TestClass.class);
+        assertSame(plan, BindingPlan.of(TestClass.class));
+
+        assertEquals(Sets.newHashSet("required", "withDefault", "choiceA", "choiceB", "dependant", "constant",
+                "inherited"), plan.getAllNames());
+        assertEquals(Sets.newHashSet("required", "withDefault", "choiceA", "choiceB", "dependant", "inherited"),
+                plan.getWritableNames());
+        assertEquals(2, plan.getOneOfBindings().size());
+        assertEquals(1, plan.getRequiresBindings().size());
+        assertEquals("dependant", plan.getRequiresBindings().get(0).getName());
+
+        assertTrue(plan.accepts("REQUIRED"));
+        assertTrue(plan.accepts("inherited"));
+        assertFalse(plan.accepts("constant"));
+        assertFalse(plan.accepts("unknown"));
+
+        for (BindingPlan.Binding binding : plan.getBindings()) {
+            assertEquals(binding.getName().equals("withDefault"), binding.hasDefaultValue());
+            assertEquals(binding.getName().equals("withDefault") || binding.getName().startsWith("choice"),
+                    binding.isOptional());
+            assertEquals(binding.getName().equals("constant"), binding.isFinal());
+        }
+
+        assertNotNull(plan.getPostConstruct());
+        assertNull(BindingPlan.of(ParentClass.class).getPostConstruct());
+    }
+
+    static class ParentClass {
+        public String inherited;
+    }
+
+    static class TestClass extends ParentClass {
+        public final int constant = 1;
+        public String required;
+        @HasDefaultValue
+        public String withDefault;
+        @OneOf("choice")
+        public String choiceA;
+        @CanSatisfyOneOf("choice")
+        public String choiceB;
+        @Requires("required")
+        public String dependant;
+
+        public void postConstruct() {
+        }
+    }
+}
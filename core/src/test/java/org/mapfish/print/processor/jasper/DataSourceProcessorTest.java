@@ -1,6 +1,9 @@
 package org.mapfish.print.processor.jasper;
 
 import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.data.JRMapCollectionDataSource;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Test;
 import org.mapfish.print.AbstractMapfishSpringTest;
 import org.mapfish.print.TestHttpClientFactory;
@@ -11,6 +14,7 @@ import org.mapfish.print.config.Template;
 import org.mapfish.print.output.AbstractJasperReportOutputFormat;
 import org.mapfish.print.output.OutputFormat;
 import org.mapfish.print.output.Values;
+import org.mapfish.print.processor.Processor;
 import org.mapfish.print.test.util.ImageSimilarity;
 import org.mapfish.print.wrapper.json.PJsonObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,12 +22,14 @@ import org.springframework.test.annotation.DirtiesContext;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 
 public class DataSourceProcessorTest extends AbstractMapfishSpringTest {
 
@@ -62,6 +68,40 @@ public class DataSourceProcessorTest extends AbstractMapfishSpringTest {
         assertEquals(2, datasource.attributesValues.length);
     }
 
+    @Test @DirtiesContext
+    public void testMaxParallelRows() throws Exception {
+        final Configuration config = configurationFactory.getConfig(getFile(BASE_DIR + "config.yaml"));
+        final Template template = config.getTemplate("main");
+        DataSourceProcessor dataSourceProcessor = null;
+        for (Processor processor : template.getProcessors()) {
+            if (processor instanceof DataSourceProcessor) {
+                dataSourceProcessor = (DataSourceProcessor) processor;
+            }
+        }
+        assertNotNull(dataSourceProcessor);
+        dataSourceProcessor.setMaxParallelRows(2);
+
+        PJsonObject requestData = loadJsonRequestData();
+        final JSONArray rows = requestData.getJSONObject("attributes").getInternalObj().getJSONArray("datasource");
+        for (int i = 0; i < 3; i++) {
+            rows.put(new JSONObject(rows.getJSONObject(i % 2).toString()));
+        }
+        Values values = new Values("test", requestData, template, getTaskDirectory(), this.httpRequestFactory,
+                new File("."));
+        forkJoinPool.invoke(template.getProcessorGraph().createTask(values));
+
+        final JRMapCollectionDataSource jrDataSource = values.getObject("jrDataSource", JRMapCollectionDataSource.class);
+        assertEquals(5, jrDataSource.getData().size());
+        for (Map<String, ?> row : jrDataSource.getData()) {
+            assertNotNull(row.get("reportTemplate"));
+        }
+
+        dataSourceProcessor.setMaxParallelRows(0);
+        final List<Throwable> errors = new ArrayList<>();
+        dataSourceProcessor.validate(errors, config);
+        assertFalse(errors.isEmpty());
+    }
+
     @Test
     public void testRenderTable() throws Exception {
         final Configuration config = configurationFactory.getConfig(getFile(BASE_DIR + "config.yaml"));
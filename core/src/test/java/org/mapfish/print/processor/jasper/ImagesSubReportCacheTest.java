@@ -0,0 +1,57 @@
+package org.mapfish.print.processor.jasper;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImagesSubReportCacheTest extends AbstractMapfishSpringTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private ImagesSubReportCache imagesSubReportCache;
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Test
+    public void testCreateSubReport() throws Exception {
+        File layer0 = new File("/tmp/mfp/3/layer_0.png").getAbsoluteFile();
+        File layer1 = new File("/tmp/mfp/3/layer_1.svg").getAbsoluteFile();
+        List<URI> layerImages = Lists.newArrayList(layer0.toURI(), layer1.toURI());
+
+        final String metricName = ImagesSubReportCache.class.getName();
+        final long hits = this.metricRegistry.counter(metricName + ".hit").getCount();
+        final long misses = this.metricRegistry.counter(metricName + ".miss").getCount();
+
+        final Dimension size = new Dimension(401, 501);
+        URI first = this.imagesSubReportCache.createSubReport(this.folder.getRoot(), layerImages, size, 72);
+        URI second = this.imagesSubReportCache.createSubReport(this.folder.getRoot(), layerImages, size, 72);
+
+        assertEquals(misses + 1, this.metricRegistry.counter(metricName + ".miss").getCount());
+        assertEquals(hits + 1, this.metricRegistry.counter(metricName + ".hit").getCount());
+
+        for (URI subReport : Lists.newArrayList(first, second)) {
+            JasperReport jasperReport = (JasperReport) JRLoader.loadObject(new File(subReport));
+            assertEquals("map", jasperReport.getName());
+            assertEquals(401, jasperReport.getPageWidth());
+            assertEquals(layer0.getPath().replace('\\', '/'),
+                    jasperReport.getProperty(ImagesSubReport.GRAPHIC_PROPERTY_PREFIX + 0));
+            assertEquals(layer1.getPath().replace('\\', '/'),
+                    jasperReport.getProperty(ImagesSubReport.GRAPHIC_PROPERTY_PREFIX + 1));
+        }
+    }
+}
@@ -14,6 +14,7 @@ import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nullable;
 
+import com.codahale.metrics.MetricRegistry;
 import net.sf.jasperreports.engine.data.JRTableModelDataSource;
 import net.sf.jasperreports.engine.design.JRDesignField;
 
@@ -25,6 +26,7 @@ import org.mapfish.print.config.Configuration;
 import org.mapfish.print.config.ConfigurationFactory;
 import org.mapfish.print.config.Template;
 import org.mapfish.print.output.Values;
+import org.mapfish.print.wrapper.json.PJsonArray;
 import org.mapfish.print.wrapper.json.PJsonObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
@@ -39,6 +41,7 @@ import com.google.common.io.Files;
 public class LegendProcessorTest extends AbstractMapfishSpringTest {
     public static final String BASE_DIR = "legend/";
     public static final String BASE_DIR_DYNAMIC = "legend_dynamic/";
+    private static final String SUB_REPORT_METRIC = LegendProcessor.class.getName() + ".subReport";
 
     @Autowired
     private ConfigurationFactory configurationFactory;
@@ -46,6 +49,8 @@ public class LegendProcessorTest extends AbstractMapfishSpringTest {
     private ForkJoinPool forkJoinPool;
     @Autowired
     private TestHttpClientFactory httpRequestFactory;
+    @Autowired
+    private MetricRegistry metricRegistry;
 
 
     @Test
@@ -135,6 +140,52 @@ public class LegendProcessorTest extends AbstractMapfishSpringTest {
         assertNotNull(reports.get(2));
         assertNotNull(reports.get(4));
         assertNotNull(reports.get(6));
+
+        // the sub-reports are created from the compiled templates of the legends, not the ones of the maps
+        assertEquals(3, this.metricRegistry.counter(SUB_REPORT_METRIC + ".miss").getCount() +
+                this.metricRegistry.counter(SUB_REPORT_METRIC + ".hit").getCount());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSameSizeIconsShareTemplate() throws Exception {
+        httpRequestFactory.registerHandler(new Predicate<URI>() {
+            @Override
+            public boolean apply(@Nullable URI input) {
+                return input != null && input.getHost().equals("legend.com");
+            }
+        }, new TestHttpClientFactory.Handler() {
+            @Override
+            public MockClientHttpRequest handleRequest(URI uri, HttpMethod httpMethod) throws IOException  {
+                try {
+                    byte[] bytes = Files.toByteArray(getFile(BASE_DIR_DYNAMIC + uri.getPath()));
+                    return ok(uri, bytes, httpMethod);
+                } catch (AssertionError e) {
+                    return error404(uri, httpMethod);
+                }
+            }
+        });
+        final Configuration config = configurationFactory.getConfig(getFile(BASE_DIR_DYNAMIC + "config.yaml"));
+        final Template template = config.getTemplate("main");
+        PJsonObject requestData = loadDynamicJsonRequestData();
+        // all the classes have an icon of the same size
+        final PJsonArray classes = requestData.getJSONObject("attributes").getJSONObject("legend")
+                .getJSONArray("classes");
+        for (int i = 0; i < classes.size(); i++) {
+            classes.getJSONObject(i).getJSONArray("icons").getInternalArray().put(0, "http://legend.com/legend2.png");
+        }
+
+        final long hits = this.metricRegistry.counter(SUB_REPORT_METRIC + ".hit").getCount();
+        final long misses = this.metricRegistry.counter(SUB_REPORT_METRIC + ".miss").getCount();
+        Values values = new Values("test", requestData, template, getTaskDirectory(), this.httpRequestFactory, new File("."));
+        forkJoinPool.invoke(template.getProcessorGraph().createTask(values));
+        assertEquals(7, values.getInteger("numberOfLegendRows").intValue());
+
+        // the template is compiled at most once for the three icons
+        final long newMisses = this.metricRegistry.counter(SUB_REPORT_METRIC + ".miss").getCount() - misses;
+        final long newHits = this.metricRegistry.counter(SUB_REPORT_METRIC + ".hit").getCount() - hits;
+        assertTrue("misses: " + newMisses, newMisses <= 1);
+        assertEquals(3, newMisses + newHits);
     }
 
     @Test
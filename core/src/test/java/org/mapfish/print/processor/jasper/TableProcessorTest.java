@@ -1,5 +1,6 @@
 package org.mapfish.print.processor.jasper;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Predicate;
 import com.google.common.io.Resources;
 
@@ -34,6 +35,7 @@ import java.util.concurrent.ForkJoinPool;
 import javax.annotation.Nullable;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class TableProcessorTest extends AbstractMapfishSpringTest {
@@ -52,6 +54,8 @@ public class TableProcessorTest extends AbstractMapfishSpringTest {
     private TestHttpClientFactory httpRequestFactory;
     @Autowired
     private Map<String, OutputFormat> outputFormat;
+    @Autowired
+    private MetricRegistry metricRegistry;
 
     @Test
     public void testDefaultDynamicTableProperties() throws Exception {
@@ -127,6 +131,24 @@ public class TableProcessorTest extends AbstractMapfishSpringTest {
                 .assertSimilarity(print, 0, 10);
     }
 
+    @Test
+    public void testDynamicTableTemplateIsReused() throws Exception {
+        final String baseDir = DYNAMIC_BASE_DIR;
+        final Configuration config = configurationFactory.getConfig(getFile(baseDir + "config.yaml"));
+        final Template template = config.getTemplate("main");
+        final String metricName = TableProcessor.class.getName();
+
+        for (int i = 0; i < 2; i++) {
+            Values values = new Values("test", loadJsonRequestData(baseDir), template, getTaskDirectory(),
+                    this.httpRequestFactory, new File("."));
+            forkJoinPool.invoke(template.getProcessorGraph().createTask(values));
+            assertTrue(new File(values.getString("tableSubReport")).isFile());
+        }
+
+        assertEquals(1, this.metricRegistry.counter(metricName + ".miss").getCount());
+        assertEquals(1, this.metricRegistry.counter(metricName + ".hit").getCount());
+    }
+
     @Test
     public void testColumnImageConverter() throws Exception {
         httpRequestFactory.registerHandler(new Predicate<URI>() {
@@ -0,0 +1,112 @@
+package org.mapfish.print.processor.map;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicate;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.TestHttpClientFactory;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.ConfigurationFactory;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.map.tiled.CoverageTask;
+import org.mapfish.print.output.Values;
+import org.mapfish.print.processor.Processor;
+import org.mapfish.print.test.util.ImageSimilarity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Render a tiled layer stripe by stripe: the result must be the same as without stripes, and the tile coverages
+ * must be the size of a stripe instead of the size of the map.
+ */
+public class CreateMapProcessorStripesOsmTest extends AbstractMapfishSpringTest {
+    private static final String BASE_DIR = CreateMapProcessorFixedScaleCenterOsmDpiTest.BASE_DIR;
+    private static final String HOST = "center_osm_fixedscale_dpi";
+    private static final String COVERAGE_PIXELS = CoverageTask.class.getName() + ".pixels";
+    private static final int STRIPE_HEIGHT = 128;
+
+    @Autowired
+    private ConfigurationFactory configurationFactory;
+    @Autowired
+    private TestHttpClientFactory requestFactory;
+    @Autowired
+    private ForkJoinPool forkJoinPool;
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Test
+    @DirtiesContext
+    public void testExecute() throws Exception {
+        registerHandler(HOST + ".osm", "/map-data/osm");
+        registerHandler(HOST + ".json", "/map-data");
+
+        final Histogram full = print(0);
+        final Histogram striped = print(STRIPE_HEIGHT);
+
+        // a stripe is covered by at most two rows of tiles, the map (more than 512 pixels high) by at least three
+        assertEquals(1, full.getCount());
+        assertTrue(striped.getCount() > 1);
+        assertTrue("coverage of " + striped.getSnapshot().getMax() + " pixels instead of " +
+                full.getSnapshot().getMax(), striped.getSnapshot().getMax() * 3 <= full.getSnapshot().getMax() * 2);
+    }
+
+    /**
+     * Print the map with the given stripe height and return the sizes of the coverages.
+     */
+    private Histogram print(final int stripeHeight) throws Exception {
+        this.metricRegistry.remove(COVERAGE_PIXELS);
+        final Configuration config = this.configurationFactory.getConfig(getFile(
+                CreateMapProcessorFixedScaleCenterOsmDpiTest.class, BASE_DIR + "config.yaml"));
+        final Template template = config.getTemplate("main");
+        for (Processor processor : template.getProcessors()) {
+            if (processor instanceof CreateMapProcessor) {
+                ((CreateMapProcessor) processor).setStripeHeight(stripeHeight);
+            }
+        }
+        final Values values = new Values("test", parseJSONObjectFromFile(CreateMapProcessorFixedScaleCenterOsmDpiTest.class,
+                BASE_DIR + "requestData.json"), template, getTaskDirectory(), this.requestFactory, new File("."));
+        this.forkJoinPool.submit(template.getProcessorGraph().createTask(values)).get();
+
+        @SuppressWarnings("unchecked")
+        List<URI> layerGraphics = (List<URI>) values.getObject("layerGraphics", List.class);
+        assertEquals(2, layerGraphics.size());
+        new ImageSimilarity(getFile(CreateMapProcessorFixedScaleCenterOsmDpiTest.class,
+                BASE_DIR + "expectedSimpleImage.png")).assertSimilarity(layerGraphics, 1560, 660, 25);
+        return this.metricRegistry.histogram(COVERAGE_PIXELS);
+    }
+
+    private void registerHandler(final String host, final String directory) {
+        this.requestFactory.registerHandler(
+                new Predicate<URI>() {
+                    @Override
+                    public boolean apply(final URI input) {
+                        return ("" + input.getHost()).contains(host) || input.getAuthority().contains(host);
+                    }
+                }, new TestHttpClientFactory.Handler() {
+                    @Override
+                    public MockClientHttpRequest handleRequest(final URI uri, final HttpMethod httpMethod)
+                            throws Exception {
+                        try {
+                            byte[] bytes = Files.toByteArray(getFile(directory + uri.getPath()));
+                            return ok(uri, bytes, httpMethod);
+                        } catch (AssertionError e) {
+                            return error404(uri, httpMethod);
+                        }
+                    }
+                }
+        );
+    }
+}
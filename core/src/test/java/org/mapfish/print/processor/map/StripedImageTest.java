@@ -0,0 +1,71 @@
+package org.mapfish.print.processor.map;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedImageTest {
+
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 100;
+
+    private static void draw(final Graphics2D graphics2D, final int offsetY) {
+        graphics2D.setColor(Color.RED);
+        graphics2D.fillRect(10, 5 - offsetY, 20, 80);
+        graphics2D.setColor(Color.BLUE);
+        graphics2D.fillRect(30, 40 - offsetY, 20, 50);
+    }
+
+    @Test
+    public void testSameAsFullImage() throws Exception {
+        final BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+        final Graphics2D graphics2D = expected.createGraphics();
+        try {
+            draw(graphics2D, 0);
+        } finally {
+            graphics2D.dispose();
+        }
+
+        final List<Rectangle> stripes = new ArrayList<>();
+        final StripedImage striped = new StripedImage(WIDTH, HEIGHT, 30, BufferedImage.TYPE_4BYTE_ABGR,
+                new StripedImage.StripeRenderer() {
+                    @Override
+                    public void render(final Graphics2D graphics2D, final Rectangle stripe) {
+                        stripes.add(stripe);
+                        draw(graphics2D, stripe.y);
+                    }
+                });
+        assertEquals(4, striped.getNumYTiles());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(striped, "PNG", out);
+        // each stripe is rendered once, the last one is smaller
+        assertEquals(Arrays.asList(new Rectangle(0, 0, WIDTH, 30), new Rectangle(0, 30, WIDTH, 30),
+                new Rectangle(0, 60, WIDTH, 30), new Rectangle(0, 90, WIDTH, 10)), stripes);
+
+        final BufferedImage actual = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(WIDTH, actual.getWidth());
+        assertEquals(HEIGHT, actual.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+
+        final Raster data = striped.getData();
+        assertEquals(HEIGHT, data.getHeight());
+    }
+}
@@ -0,0 +1,45 @@
+package org.mapfish.print.servlet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ByteRangeTest {
+    @Test
+    public void testParse() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=0-99", 1000);
+        assertEquals(0, range.getStart());
+        assertEquals(99, range.getEnd());
+        assertEquals(100, range.getLength());
+        assertEquals("bytes 0-99/1000", range.toContentRange(1000));
+
+        range = ByteRange.parse("bytes=900-", 1000);
+        assertEquals(900, range.getStart());
+        assertEquals(999, range.getEnd());
+
+        range = ByteRange.parse("bytes=-100", 1000);
+        assertEquals(900, range.getStart());
+        assertEquals(999, range.getEnd());
+
+        range = ByteRange.parse("bytes=-2000", 1000);
+        assertEquals(0, range.getStart());
+
+        range = ByteRange.parse("bytes=990-2000", 1000);
+        assertEquals(999, range.getEnd());
+    }
+
+    @Test
+    public void testWholeContent() throws Exception {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("bytes=0-1,5-6", 1000));
+        assertNull(ByteRange.parse("items=0-1", 1000));
+        assertNull(ByteRange.parse("bytes=10-5", 1000));
+        assertNull(ByteRange.parse("bytes=-", 1000));
+    }
+
+    @Test(expected = ByteRange.UnsatisfiableRangeException.class)
+    public void testUnsatisfiable() throws Exception {
+        ByteRange.parse("bytes=1000-", 1000);
+    }
+}
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -287,6 +288,93 @@ public class MapPrinterServletTest extends AbstractMapfishSpringTest {
         assertTrue(fonts, fontsJson.length() > 0);
     }
 
+    @Test(timeout = 60000)
+    public void testGetReport_Range() throws Exception {
+        String ref = doCreateAndPollAndGetReport(new Function<MockHttpServletRequest, MockHttpServletResponse>() {
+            @Nonnull
+            @Override
+            public MockHttpServletResponse apply(@Nullable MockHttpServletRequest servletCreateRequest) {
+                try {
+                    final MockHttpServletResponse servletCreateResponse = new MockHttpServletResponse();
+                    servlet.createReport("png", loadRequestDataAsString(), servletCreateRequest, servletCreateResponse);
+                    return servletCreateResponse;
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }, false);
+
+        final MockHttpServletResponse fullResponse = new MockHttpServletResponse();
+        servlet.getReport(ref, false, new MockHttpServletRequest(), fullResponse);
+        assertEquals(HttpStatus.OK.value(), fullResponse.getStatus());
+        final byte[] full = fullResponse.getContentAsByteArray();
+        final String eTag = fullResponse.getHeader("ETag");
+        assertEquals("bytes", fullResponse.getHeader("Accept-Ranges"));
+        assertTrue(eTag != null && eTag.startsWith("\""));
+
+        final MockHttpServletRequest rangeRequest = new MockHttpServletRequest();
+        rangeRequest.addHeader("Range", "bytes=10-");
+        rangeRequest.addHeader("If-Range", eTag);
+        final MockHttpServletResponse rangeResponse = new MockHttpServletResponse();
+        servlet.getReport(ref, false, rangeRequest, rangeResponse);
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), rangeResponse.getStatus());
+        assertEquals("bytes 10-" + (full.length - 1) + "/" + full.length, rangeResponse.getHeader("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(full, 10, full.length), rangeResponse.getContentAsByteArray());
+
+        final MockHttpServletRequest staleRequest = new MockHttpServletRequest();
+        staleRequest.addHeader("Range", "bytes=10-");
+        staleRequest.addHeader("If-Range", "\"other\"");
+        final MockHttpServletResponse staleResponse = new MockHttpServletResponse();
+        servlet.getReport(ref, false, staleRequest, staleResponse);
+        assertEquals(HttpStatus.OK.value(), staleResponse.getStatus());
+        assertEquals(full.length, staleResponse.getContentAsByteArray().length);
+
+        final MockHttpServletRequest outsideRequest = new MockHttpServletRequest();
+        outsideRequest.addHeader("Range", "bytes=" + full.length + "-");
+        final MockHttpServletResponse outsideResponse = new MockHttpServletResponse();
+        servlet.getReport(ref, false, outsideRequest, outsideResponse);
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value(), outsideResponse.getStatus());
+
+        final MockHttpServletRequest conditionalRequest = new MockHttpServletRequest();
+        conditionalRequest.addHeader("If-None-Match", eTag);
+        final MockHttpServletResponse conditionalResponse = new MockHttpServletResponse();
+        servlet.getReport(ref, false, conditionalRequest, conditionalResponse);
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), conditionalResponse.getStatus());
+    }
+
+    @Test(timeout = 60000)
+    public void testGetTrace() throws Exception {
+        String ref = doCreateAndPollAndGetReport(new Function<MockHttpServletRequest, MockHttpServletResponse>() {
+            @Nonnull
+            @Override
+            public MockHttpServletResponse apply(@Nullable MockHttpServletRequest servletCreateRequest) {
+                try {
+                    final MockHttpServletResponse servletCreateResponse = new MockHttpServletResponse();
+                    servlet.createReport("png", loadRequestDataAsString(), servletCreateRequest, servletCreateResponse);
+                    return servletCreateResponse;
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }, false);
+
+        final MockHttpServletResponse traceResponse = new MockHttpServletResponse();
+        servlet.getTrace(ref, traceResponse);
+        assertEquals(HttpStatus.OK.value(), traceResponse.getStatus());
+        final JSONObject trace = new JSONObject(traceResponse.getContentAsString());
+        assertEquals(ref, trace.getJSONObject("otherData").getString("jobId"));
+        final JSONArray events = trace.getJSONArray("traceEvents");
+        final Set<String> categories = Sets.newHashSet();
+        for (int i = 0; i < events.length(); i++) {
+            categories.add(events.getJSONObject(i).optString("cat"));
+        }
+        assertTrue(categories.toString(), categories.containsAll(Arrays.asList("job", "processor", "jasper")));
+
+        final MockHttpServletResponse missingResponse = new MockHttpServletResponse();
+        servlet.getTrace("doesNotExist", missingResponse);
+        assertEquals(HttpStatus.NOT_FOUND.value(), missingResponse.getStatus());
+    }
+
     private String doCreateAndPollAndGetReport(Function<MockHttpServletRequest, MockHttpServletResponse> createReport, boolean checkJsonp)
             throws URISyntaxException, IOException, InterruptedException, ServletException {
         setUpConfigFiles();
@@ -733,6 +821,26 @@ public class MapPrinterServletTest extends AbstractMapfishSpringTest {
         assertCorrectResponse(servletCreateResponse);
     }
 
+    @Test(timeout = 60000)
+    public void testCreateReportAndGet_Async() throws Exception {
+        setUpConfigFiles();
+
+        final MockHttpServletRequest servletCreateRequest = new MockHttpServletRequest();
+        servletCreateRequest.setAsyncSupported(true);
+        final MockHttpServletResponse servletCreateResponse = new MockHttpServletResponse();
+
+        String requestData = loadRequestDataAsString();
+
+        this.servlet.createReportAndGetNoAppId("png", requestData, false, servletCreateRequest, servletCreateResponse);
+        // the report is sent once the job is done
+        while (servletCreateRequest.isAsyncStarted()) {
+            Thread.sleep(10);
+        }
+        assertEquals(HttpStatus.OK.value(), servletCreateResponse.getStatus());
+
+        assertCorrectResponse(servletCreateResponse);
+    }
+
     @Test(timeout = 60000)
     public void testCreateReportAndGet_OutputName() throws Exception {
         setUpConfigFiles();
@@ -1083,6 +1191,37 @@ public class MapPrinterServletTest extends AbstractMapfishSpringTest {
         assertEquals("waiting", statusJson.getString(MapPrinterServlet.JSON_STATUS));
     }
 
+    @Test(timeout = 60000)
+    public void testGetStatus_LongPoll() throws Exception {
+        setUpConfigFiles();
+
+        final MockHttpServletRequest servletCreateRequest = new MockHttpServletRequest();
+        final MockHttpServletResponse servletCreateResponse = new MockHttpServletResponse();
+        servlet.createReport("png", loadRequestDataAsString(), servletCreateRequest, servletCreateResponse);
+        final PJsonObject createResponseJson =
+                parseJSONObjectFromString(servletCreateResponse.getContentAsString());
+        String ref = createResponseJson.getString(MapPrinterServlet.JSON_PRINT_JOB_REF);
+
+        boolean done = false;
+        while (!done) {
+            final MockHttpServletRequest statusRequest = new MockHttpServletRequest();
+            statusRequest.setAsyncSupported(true);
+            final MockHttpServletResponse statusResponse = new MockHttpServletResponse();
+            servlet.getStatus(ref, "", "30s", statusRequest, statusResponse);
+            // the response is sent once the status has changed
+            while (statusRequest.isAsyncStarted()) {
+                Thread.sleep(10);
+            }
+
+            final PJsonObject statusJson = parseJSONObjectFromString(statusResponse.getContentAsString());
+            done = statusJson.getBool(MapPrinterServlet.JSON_DONE);
+        }
+
+        MockHttpServletResponse servletGetReportResponse = new MockHttpServletResponse();
+        servlet.getReport(ref, false, servletGetReportResponse);
+        assertEquals(HttpStatus.OK.value(), servletGetReportResponse.getStatus());
+    }
+
     private void assertCorrectResponse(MockHttpServletResponse servletGetReportResponse) throws IOException {
         assertCorrectResponse(servletGetReportResponse, "test_report-");
     }
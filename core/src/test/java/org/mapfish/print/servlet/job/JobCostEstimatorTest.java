@@ -0,0 +1,50 @@
+package org.mapfish.print.servlet.job;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.ConfigurationFactory;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.processor.jasper.DataSourceProcessor;
+import org.mapfish.print.processor.map.CreateMapPagesProcessorTest;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.Assert.assertEquals;
+
+public class JobCostEstimatorTest extends AbstractMapfishSpringTest {
+    private static final long BASE_MEMORY = 16L * 1024L * 1024L;
+
+    @Autowired
+    private ConfigurationFactory configurationFactory;
+    @Autowired
+    private JobCostEstimator jobCostEstimator;
+
+    @Test
+    public void testPaging() throws Exception {
+        final Configuration config = this.configurationFactory.getConfig(getFile(CreateMapPagesProcessorTest.class,
+                CreateMapPagesProcessorTest.BASE_DIR + "config.yaml"));
+        final Template template = config.getTemplate("main");
+        final PJsonObject requestData = parseJSONObjectFromFile(CreateMapPagesProcessorTest.class,
+                CreateMapPagesProcessorTest.BASE_DIR + "requestData.json");
+
+        // 780x330 at 72 dpi with 1 layer, printed once and on 6x6 pages (scale of 60000 cut in pages of 10000),
+        // the pages being printed in windows of maxParallelRows
+        final long map = 780L * 330L * 4L * 2L;
+        final long nbMaps = 1 + Math.min(36, DataSourceProcessor.DEFAULT_MAX_PARALLEL_ROWS);
+        assertEquals(BASE_MEMORY + nbMaps * map, this.jobCostEstimator.estimate(template, requestData));
+
+        final JSONObject mapJson = requestData.getJSONObject("attributes").getJSONObject("map").getInternalObj();
+        mapJson.put("dpi", 144);
+        mapJson.getJSONArray("layers").put(new JSONObject("{\"type\": \"osm\"}"));
+        assertEquals(BASE_MEMORY + nbMaps * map * 4 * 3 / 2, this.jobCostEstimator.estimate(template, requestData));
+
+        // without a usable extent, the paging counts as one page
+        mapJson.put("layers", new JSONArray());
+        mapJson.put("bbox", new JSONArray("[1, 2]"));
+        mapJson.remove("scale");
+        assertEquals(BASE_MEMORY + 2 * 780L * 330L * 4L * 4L, this.jobCostEstimator.estimate(template, requestData));
+    }
+}
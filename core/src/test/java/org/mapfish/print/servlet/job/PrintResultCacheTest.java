@@ -0,0 +1,134 @@
+package org.mapfish.print.servlet.job;
+
+import com.codahale.metrics.MetricRegistry;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.config.Configuration;
+import org.mapfish.print.config.Template;
+import org.mapfish.print.config.access.AlwaysAllowAssertion;
+import org.mapfish.print.config.access.RoleAccessAssertion;
+import org.mapfish.print.wrapper.json.PJsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrintResultCacheTest extends AbstractMapfishSpringTest {
+    private static final String SPEC = "{\"layout\": \"A4\", \"outputFormat\": \"pdf\", " +
+            "\"attributes\": {\"title\": \"title\", \"scale\": 1000}}";
+    private static final String REORDERED_SPEC = "{\"attributes\": {\"scale\": 1000, \"title\": \"title\"}, " +
+            "\"outputFormat\": \"pdf\", \"layout\": \"A4\"}";
+
+    @Autowired
+    private ApplicationContext context;
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private PrintResultCache cache;
+    private Configuration configuration;
+    private Template template;
+
+    @Before
+    public void setUp() throws Exception {
+        this.cache = new PrintResultCache();
+        this.context.getAutowireCapableBeanFactory().autowireBean(this.cache);
+        this.cache.setEnabled(true);
+        this.cache.init();
+        this.configuration = createConfiguration();
+        this.template = this.configuration.getTemplate("A4");
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        final String metricName = PrintResultCache.class.getName();
+        final long hits = this.metricRegistry.counter(metricName + ".hit").getCount();
+        final long misses = this.metricRegistry.counter(metricName + ".miss").getCount();
+
+        final PrintResultCache.Key first = this.cache.createKey(this.configuration, spec(SPEC),
+                AlwaysAllowAssertion.INSTANCE);
+        assertNotNull(first);
+        assertNull(this.cache.claim(first));
+
+        // same request with another key order, attached to the job in progress
+        final PrintResultCache.Key second = this.cache.createKey(this.configuration, spec(REORDERED_SPEC),
+                AlwaysAllowAssertion.INSTANCE);
+        final Future<URI> report = this.cache.claim(second);
+        assertNotNull(report);
+        assertTrue(!report.isDone());
+
+        final URI reportURI = new URI("file:/report.pdf");
+        this.cache.done(first, reportURI);
+        assertEquals(reportURI, PrintResultCache.waitForReport(report, 0L));
+        assertEquals(reportURI, PrintResultCache.waitForReport(this.cache.claim(
+                this.cache.createKey(this.configuration, spec(SPEC), AlwaysAllowAssertion.INSTANCE)), 0L));
+        // a late failure of the job doesn't forget its report
+        this.cache.failed(first);
+        assertNotNull(this.cache.claim(this.cache.createKey(this.configuration, spec(SPEC),
+                AlwaysAllowAssertion.INSTANCE)));
+
+        assertEquals(misses + 1, this.metricRegistry.counter(metricName + ".miss").getCount());
+        assertEquals(hits + 3, this.metricRegistry.counter(metricName + ".hit").getCount());
+    }
+
+    @Test
+    public void testDifferentRequests() throws Exception {
+        final PrintResultCache.Key key = this.cache.createKey(this.configuration, spec(SPEC),
+                AlwaysAllowAssertion.INSTANCE);
+        assertNull(this.cache.claim(key));
+        this.cache.done(key, new URI("file:/report.pdf"));
+
+        // other access assertion
+        final RoleAccessAssertion access = new RoleAccessAssertion();
+        access.setRequiredRoles(Collections.singleton("ROLE_USER"));
+        assertNull(this.cache.claim(this.cache.createKey(this.configuration, spec(SPEC), access)));
+
+        // reloaded configuration
+        assertNull(this.cache.claim(this.cache.createKey(createConfiguration(), spec(SPEC),
+                AlwaysAllowAssertion.INSTANCE)));
+
+        // opted out template
+        this.template.setCacheResult(false);
+        assertNull(this.cache.createKey(this.configuration, spec(SPEC), AlwaysAllowAssertion.INSTANCE));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final PrintResultCache.Key key = this.cache.createKey(this.configuration, spec(SPEC),
+                AlwaysAllowAssertion.INSTANCE);
+        assertNull(this.cache.claim(key));
+        final Future<URI> report = this.cache.claim(this.cache.createKey(this.configuration, spec(SPEC),
+                AlwaysAllowAssertion.INSTANCE));
+        // the wait is bounded
+        assertNull(PrintResultCache.waitForReport(report, 10L));
+        this.cache.failed(key);
+        assertNull(PrintResultCache.waitForReport(report, 0L));
+        // the next identical request prints it again
+        assertNull(this.cache.claim(this.cache.createKey(this.configuration, spec(SPEC),
+                AlwaysAllowAssertion.INSTANCE)));
+    }
+
+    private static Configuration createConfiguration() {
+        final Configuration configuration = new Configuration();
+        final Map<String, Template> templates = new HashMap<String, Template>();
+        final Template template = new Template();
+        template.setConfiguration(configuration);
+        templates.put("A4", template);
+        configuration.setTemplates(templates);
+        return configuration;
+    }
+
+    private static PJsonObject spec(final String json) throws Exception {
+        return new PJsonObject(new JSONObject(json), "spec");
+    }
+}
@@ -0,0 +1,193 @@
+package org.mapfish.print.servlet.job.impl;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FairJobSchedulerTest {
+    private static final Comparator<String> ORDER = new Comparator<String>() {
+        @Override
+        public int compare(final String o1, final String o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final Map<Future<?>, String> jobs = new HashMap<>();
+
+    @Test
+    public void testInterleave() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(1, 0, 0, ORDER, this.metricRegistry, "test");
+        add(scheduler, "a", 1.0, "a1");
+        add(scheduler, "a", 1.0, "a2");
+        add(scheduler, "a", 1.0, "a3");
+        add(scheduler, "b", 1.0, "b1");
+        add(scheduler, "b", 1.0, "b2");
+
+        assertEquals(2L, this.metricRegistry.counter("test.app.b.waiting").getCount());
+        assertEquals("[a1, b1, a2, b2, a3]", runAll(scheduler).toString());
+        assertEquals(0L, this.metricRegistry.counter("test.waiting").getCount());
+        assertEquals(5L, this.metricRegistry.timer("test.waitTime").getCount());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(1, 0, 0, ORDER, this.metricRegistry, "test");
+        add(scheduler, "app/alice", 1.0, "a1");
+        add(scheduler, "app/bob", 1.0, "b1");
+
+        // the tenants of an app share its metrics, the user names are not in the metric names
+        assertEquals(2L, this.metricRegistry.counter("test.app.app.waiting").getCount());
+        for (String name : this.metricRegistry.getNames()) {
+            assertFalse(name, name.contains("alice") || name.contains("bob"));
+        }
+
+        // the metrics of an app are removed with its last tenant
+        runAll(scheduler);
+        assertEquals(Sets.newTreeSet(Arrays.asList("test.waitTime", "test.waiting")), this.metricRegistry.getNames());
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(1, 0, 0, ORDER, this.metricRegistry, "test");
+        for (int i = 1; i <= 4; i++) {
+            add(scheduler, "a", 2.0, "a" + i);
+            add(scheduler, "b", 1.0, "b" + i);
+        }
+        assertEquals("[a1, b1, a2, a3, b2, a4, b3, b4]", runAll(scheduler).toString());
+    }
+
+    @Test
+    public void testMaxRunningPerTenant() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(3, 1, 0, ORDER, this.metricRegistry, "test");
+        final Future<?> a1 = add(scheduler, "a", 1.0, "a1");
+        add(scheduler, "a", 1.0, "a2");
+        add(scheduler, "b", 1.0, "b1");
+
+        // the third slot stays free, the tenant a already has a running job
+        assertEquals(2, scheduler.dispatch().size());
+        assertEquals(-1.0, scheduler.getWaitingRounds("a1"), 0.0);
+        assertTrue(scheduler.getWaitingRounds("a2") >= 0.0);
+
+        scheduler.done(a1);
+        final List<Future<?>> next = scheduler.dispatch();
+        assertEquals(1, next.size());
+        assertEquals("a2", this.jobs.get(next.get(0)));
+    }
+
+    @Test
+    public void testMaxWaitingPerTenant() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(1, 0, 2, ORDER, this.metricRegistry, "test");
+        add(scheduler, "a", 1.0, "a1");
+        scheduler.assertCanQueue("a");
+        add(scheduler, "a", 1.0, "a2");
+        try {
+            scheduler.assertCanQueue("a");
+            fail("The tenant a has reached its quota");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        scheduler.assertCanQueue("b");
+    }
+
+    @Test
+    public void testMemoryAdmission() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(3, 0, 0, ORDER, this.metricRegistry, "test");
+        final MemoryBudget budget = new MemoryBudget(100);
+        final Map<String, Long> estimates = new HashMap<>();
+        final Predicate<String> admission = new Predicate<String>() {
+            @Override
+            public boolean apply(final String job) {
+                return budget.tryAcquire(estimates.get(job));
+            }
+        };
+        estimates.put("a1", 60L);
+        estimates.put("a2", 20L);
+        estimates.put("b1", 70L);
+        estimates.put("c1", 30L);
+        final Future<?> a1 = add(scheduler, "a", 1.0, "a1");
+        add(scheduler, "a", 1.0, "a2");
+        add(scheduler, "b", 1.0, "b1");
+        add(scheduler, "c", 1.0, "c1");
+
+        // the large job of b waits while the small job of c runs, and a2 doesn't fit either
+        final List<Future<?>> started = scheduler.dispatch(admission);
+        final List<String> names = new ArrayList<>();
+        for (Future<?> future : started) {
+            names.add(this.jobs.get(future));
+        }
+        assertEquals("[a1, c1]", names.toString());
+        assertEquals(90L, budget.getUsed());
+        assertTrue(scheduler.getWaitingRounds("b1") >= 0.0);
+
+        // the large job starts once enough memory is released
+        scheduler.done(a1);
+        budget.release(60L);
+        final List<Future<?>> next = scheduler.dispatch(admission);
+        assertEquals(1, next.size());
+        assertEquals("b1", this.jobs.get(next.get(0)));
+        assertEquals(100L, budget.getUsed());
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(1, 0, 0, ORDER, this.metricRegistry, "test");
+        add(scheduler, "a", 1.0, "a1").cancel(true);
+        add(scheduler, "a", 1.0, "a2");
+        assertEquals("[a2]", runAll(scheduler).toString());
+    }
+
+    @Test
+    public void testWaitingRounds() throws Exception {
+        final FairJobScheduler<String> scheduler = new FairJobScheduler<>(2, 0, 0, ORDER, this.metricRegistry, "test");
+        add(scheduler, "a", 1.0, "a1");
+        add(scheduler, "a", 1.0, "a2");
+        add(scheduler, "a", 1.0, "a3");
+        add(scheduler, "b", 1.0, "b1");
+
+        // a2 comes after a1 and after one job of b
+        assertEquals(1.0, scheduler.getWaitingRounds("a2"), 0.0);
+        // a3 comes after a1, a2 and b1 (the only job of b)
+        assertEquals(1.5, scheduler.getWaitingRounds("a3"), 0.0);
+        assertEquals(-1.0, scheduler.getWaitingRounds("unknown"), 0.0);
+    }
+
+    private Future<?> add(final FairJobScheduler<String> scheduler, final String tenant, final double weight,
+                          final String job) {
+        final SettableFuture<Void> future = SettableFuture.create();
+        this.jobs.put(future, job);
+        scheduler.add(job, tenant, tenant.split("/")[0], weight, job, future);
+        return future;
+    }
+
+    /**
+     * Start and finish the jobs one after the other, returning the order in which they were started.
+     */
+    private List<String> runAll(final FairJobScheduler<String> scheduler) {
+        final List<String> result = new ArrayList<>();
+        List<Future<?>> started = scheduler.dispatch();
+        while (!started.isEmpty()) {
+            for (Future<?> future : started) {
+                result.add(this.jobs.get(future));
+                scheduler.done(future);
+            }
+            started = scheduler.dispatch();
+        }
+        return result;
+    }
+}
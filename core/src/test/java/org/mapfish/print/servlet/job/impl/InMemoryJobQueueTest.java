@@ -0,0 +1,155 @@
+package org.mapfish.print.servlet.job.impl;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mapfish.print.config.access.AlwaysAllowAssertion;
+import org.mapfish.print.servlet.MapPrinterServlet;
+import org.mapfish.print.servlet.job.NoSuchReferenceException;
+import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.mapfish.print.wrapper.json.PJsonObject;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryJobQueueTest {
+    private static final int THREADS = 8;
+    private static final int JOBS = 200;
+
+    @Test
+    public void testTransitions() throws Exception {
+        final InMemoryJobQueue queue = createQueue();
+        queue.add(createEntry("job"));
+        assertEquals(1, queue.getNumberOfRequestsMade());
+        assertEquals(1, queue.getWaitingJobsCount());
+
+        PrintJobStatus status = queue.get("job", true);
+        assertEquals(PrintJobStatus.Status.WAITING, status.getStatus());
+        assertEquals(1, status.getRequestCount());
+        // the returned status is a copy
+        status.setWaitingTime(42);
+        assertEquals(0, queue.get("job", false).getWaitingTime());
+
+        queue.start("job");
+        assertEquals(PrintJobStatus.Status.RUNNING, queue.get("job", false).getStatus());
+        queue.cancel("job", "cancelled", false);
+        assertEquals(PrintJobStatus.Status.CANCELING, queue.get("job", false).getStatus());
+        assertEquals(0, queue.getLastPrintCount());
+
+        final PrintJobResultImpl result = new PrintJobResultImpl(new URI("file:/report"), "report", "pdf",
+                "application/pdf", "job");
+        queue.done("job", result);
+        status = queue.get("job", false);
+        assertEquals(PrintJobStatus.Status.FINISHED, status.getStatus());
+        assertEquals(result, status.getResult());
+        assertEquals(1, queue.getLastPrintCount());
+        assertEquals(0, queue.getWaitingJobsCount());
+
+        // cancelling a finished job doesn't count it twice
+        queue.cancel("job", "cancelled", true);
+        assertEquals(PrintJobStatus.Status.CANCELLED, queue.get("job", false).getStatus());
+        assertEquals(1, queue.getLastPrintCount());
+
+        queue.add(createEntry("failing"));
+        queue.fail("failing", "error");
+        status = queue.get("failing", false);
+        assertEquals(PrintJobStatus.Status.ERROR, status.getStatus());
+        assertEquals("error", status.getError());
+        assertNull(status.getResult());
+        assertEquals(2, queue.getLastPrintCount());
+    }
+
+    @Test
+    public void testCancelRunning() throws Exception {
+        final InMemoryJobQueue queue = createQueue();
+        queue.add(createEntry("job"));
+        queue.start("job");
+        queue.cancel("job", "cancelled", false);
+        assertEquals(1, queue.getWaitingJobsCount());
+
+        // the job stops and is marked as cancelled, it is counted once
+        queue.cancel("job", "cancelled", true);
+        assertEquals(PrintJobStatus.Status.CANCELLED, queue.get("job", false).getStatus());
+        assertEquals(1, queue.getLastPrintCount());
+        assertEquals(0, queue.getWaitingJobsCount());
+    }
+
+    /**
+     * The threads race to finish the same jobs, each job must be counted once. See {@link JobQueueBenchmark} for
+     * the timings under a larger load.
+     */
+    @Test(timeout = 30000)
+    public void testConcurrentTransitions() throws Exception {
+        final InMemoryJobQueue queue = createQueue();
+        for (int i = 0; i < JOBS; i++) {
+            queue.add(createEntry("job" + i));
+        }
+        final CountDownLatch ready = new CountDownLatch(THREADS);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ready.countDown();
+                        ready.await();
+                        for (int j = 0; j < JOBS; j++) {
+                            final String ref = "job" + j;
+                            queue.start(ref);
+                            queue.get(ref, true);
+                            switch (thread % 3) {
+                                case 0:
+                                    queue.done(ref, null);
+                                    break;
+                                case 1:
+                                    queue.cancel(ref, "cancelled", true);
+                                    break;
+                                default:
+                                    queue.fail(ref, "error");
+                                    break;
+                            }
+                            assertTrue(queue.get(ref, false).isDone());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future: futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(JOBS, queue.getNumberOfRequestsMade());
+        assertEquals(JOBS, queue.getLastPrintCount());
+        assertEquals(0, queue.getWaitingJobsCount());
+    }
+
+    @Test(expected = NoSuchReferenceException.class)
+    public void testUnknownJob() throws Exception {
+        createQueue().get("unknown", true);
+    }
+
+    static InMemoryJobQueue createQueue() {
+        final InMemoryJobQueue queue = new InMemoryJobQueue();
+        queue.init();
+        return queue;
+    }
+
+    static PrintJobEntryImpl createEntry(final String ref) throws Exception {
+        final PJsonObject requestData = new PJsonObject(
+                new JSONObject("{\"" + MapPrinterServlet.JSON_APP + "\":\"default\"}"), "job");
+        return new PrintJobEntryImpl(ref, requestData, System.currentTimeMillis(), new AlwaysAllowAssertion());
+    }
+}
@@ -0,0 +1,86 @@
+package org.mapfish.print.servlet.job.impl;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mapfish.print.AbstractMapfishSpringTest;
+import org.mapfish.print.servlet.job.JobQueue;
+import org.mapfish.print.servlet.job.PrintJobStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare the job queues under a concurrent load.
+ */
+@Ignore //benchmark, to be run manually
+public class JobQueueBenchmark extends AbstractMapfishSpringTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobQueueBenchmark.class);
+    private static final int THREADS = 16;
+    private static final int JOBS_PER_THREAD = 2000;
+    private static final int POLLS_PER_JOB = 5;
+
+    @Autowired
+    private ApplicationContext context;
+
+    /**
+     * Hammer the queues with get/add/done from many threads, the time taken by both implementations is logged.
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final RegistryJobQueue registryQueue = new RegistryJobQueue();
+        this.context.getAutowireCapableBeanFactory().autowireBean(registryQueue);
+        final long registryTime = hammer(registryQueue, "registry");
+        final long inMemoryTime = hammer(InMemoryJobQueueTest.createQueue(), "inMemory");
+        LOGGER.info(String.format("%d threads, %d jobs each: RegistryJobQueue %d ms, InMemoryJobQueue %d ms",
+                THREADS, JOBS_PER_THREAD, registryTime, inMemoryTime));
+    }
+
+    private long hammer(final JobQueue queue, final String prefix) throws Exception {
+        final int requestsBefore = queue.getNumberOfRequestsMade();
+        final int printsBefore = queue.getLastPrintCount();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final long start = System.currentTimeMillis();
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < THREADS; i++) {
+                final String threadPrefix = prefix + "-" + i + "-";
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < JOBS_PER_THREAD; j++) {
+                            final String ref = threadPrefix + j;
+                            queue.add(InMemoryJobQueueTest.createEntry(ref));
+                            queue.start(ref);
+                            for (int k = 0; k < POLLS_PER_JOB; k++) {
+                                assertEquals(PrintJobStatus.Status.RUNNING, queue.get(ref, true).getStatus());
+                            }
+                            queue.done(ref, null);
+                            assertTrue(queue.get(ref, true).isDone());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future: futures) {
+                future.get();
+            }
+            final long time = System.currentTimeMillis() - start;
+            assertEquals(THREADS * JOBS_PER_THREAD, queue.getNumberOfRequestsMade() - requestsBefore);
+            assertEquals(THREADS * JOBS_PER_THREAD, queue.getLastPrintCount() - printsBefore);
+            return time;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.mapfish.print.servlet.job.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+    @Test
+    public void testTryAcquire() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(100);
+        assertTrue(budget.fits(100));
+        assertFalse(budget.fits(101));
+
+        assertTrue(budget.tryAcquire(60));
+        assertFalse(budget.isExhausted());
+        assertFalse(budget.tryAcquire(60));
+        assertTrue(budget.tryAcquire(40));
+        assertTrue(budget.isExhausted());
+
+        budget.release(60);
+        assertTrue(budget.tryAcquire(60));
+        assertEquals(100, budget.getUsed());
+
+        // a job is always accepted when nothing is reserved
+        budget.release(100);
+        assertTrue(budget.tryAcquire(100));
+
+        // a claimed job is reserved even when the budget is exhausted
+        budget.reserve(60);
+        assertEquals(160, budget.getUsed());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(0);
+        assertTrue(budget.fits(Long.MAX_VALUE));
+        assertTrue(budget.tryAcquire(Long.MAX_VALUE));
+        assertTrue(budget.tryAcquire(Long.MAX_VALUE));
+        assertFalse(budget.isExhausted());
+    }
+}
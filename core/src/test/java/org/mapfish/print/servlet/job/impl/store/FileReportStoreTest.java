@@ -0,0 +1,52 @@
+package org.mapfish.print.servlet.job.impl.store;
+
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mapfish.print.Constants;
+import org.mapfish.print.servlet.job.loader.ReportInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class FileReportStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutAndRead() throws Exception {
+        final FileReportStore store = new FileReportStore();
+        store.setDirectory(this.folder.newFolder("store"));
+        assertNull(store.getInfo("ref@node"));
+
+        final File spill = this.folder.newFile("spill");
+        Files.write("0123456789".getBytes(Constants.DEFAULT_CHARSET), spill);
+        store.put("ref@node", spill);
+        assertFalse(spill.exists());
+
+        final ReportInfo info = store.getInfo("ref@node");
+        assertNotNull(info);
+        assertEquals(10, info.getLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.read("ref@node", 0, Long.MAX_VALUE, out);
+        assertEquals("0123456789", new String(out.toByteArray(), Constants.DEFAULT_CHARSET));
+
+        out = new ByteArrayOutputStream();
+        store.read("ref@node", 3, 4, out);
+        assertEquals("3456", new String(out.toByteArray(), Constants.DEFAULT_CHARSET));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() throws Exception {
+        final FileReportStore store = new FileReportStore();
+        store.setDirectory(this.folder.newFolder("store"));
+        store.getInfo("../secret");
+    }
+}
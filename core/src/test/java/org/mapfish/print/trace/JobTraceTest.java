@@ -0,0 +1,82 @@
+package org.mapfish.print.trace;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JobTraceTest {
+    @Test
+    public void testSpans() throws Exception {
+        final JobTrace trace = JobTraces.start("testSpans", 2);
+        try {
+            assertSame(trace, JobTraces.get("testSpans"));
+            final JobTrace.Span span = JobTraces.span("testSpans", "http", "GET localhost");
+            span.setAttribute("uri", "http://localhost/tiles").setAttribute("status", 200);
+            span.end();
+            span.end();
+            JobTraces.span("testSpans", "processor", "CreateMapProcessor").end();
+            assertSame(JobTrace.NOOP_SPAN, JobTraces.span("testSpans", "processor", "dropped"));
+        } finally {
+            assertSame(trace, JobTraces.finish("testSpans"));
+        }
+        assertNull(JobTraces.get("testSpans"));
+        assertSame(JobTrace.NOOP_SPAN, JobTraces.span("testSpans", "processor", "CreateMapProcessor"));
+
+        final JSONObject json = new JSONObject(trace.toJson());
+        final JSONArray events = json.getJSONArray("traceEvents");
+        int nbSpans = 0;
+        for (int i = 0; i < events.length(); i++) {
+            final JSONObject event = events.getJSONObject(i);
+            if (event.getString("ph").equals("X")) {
+                nbSpans++;
+                assertTrue(event.getLong("dur") >= 0);
+                if (event.getString("cat").equals("http")) {
+                    assertEquals("GET localhost", event.getString("name"));
+                    assertEquals("http://localhost/tiles", event.getJSONObject("args").getString("uri"));
+                    assertEquals(200, event.getJSONObject("args").getInt("status"));
+                }
+            } else {
+                assertEquals("M", event.getString("ph"));
+                assertNotNull(event.getJSONObject("args").getString("name"));
+            }
+        }
+        assertEquals(2, nbSpans);
+        assertEquals("testSpans", json.getJSONObject("otherData").getString("jobId"));
+        assertEquals(1, json.getJSONObject("otherData").getInt("droppedSpans"));
+    }
+
+    @Test
+    public void testSummary() throws Exception {
+        final JobTrace trace = new JobTrace("testSummary", 1000);
+        final JobTrace.Span job = trace.start("job", "PrintJob");
+        for (int i = 0; i < 500; i++) {
+            trace.start("http", "GET localhost").setAttribute("uri", "http://localhost/tiles/" + i).end();
+        }
+        job.end();
+
+        final JSONObject json = new JSONObject(trace.toSummaryJson(10));
+        final JSONArray events = json.getJSONArray("traceEvents");
+        int nbSpans = 0;
+        boolean hasJob = false;
+        for (int i = 0; i < events.length(); i++) {
+            final JSONObject event = events.getJSONObject(i);
+            if (event.getString("ph").equals("X")) {
+                nbSpans++;
+                hasJob |= event.getString("cat").equals("job");
+            }
+        }
+        // only the longest spans are kept, the others are counted by category
+        assertEquals(10, nbSpans);
+        assertTrue(hasJob);
+        final JSONObject otherData = json.getJSONObject("otherData");
+        assertEquals(491, otherData.getInt("summarizedSpans"));
+        assertEquals(500, otherData.getJSONObject("categories").getJSONObject("http").getInt("count"));
+        assertEquals(1, otherData.getJSONObject("categories").getJSONObject("job").getInt("count"));
+    }
+}